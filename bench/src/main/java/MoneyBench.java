@@ -0,0 +1,125 @@
+import java.util.function.IntFunction;
+
+/**
+ * Order totals for the JMH benchmark pizzastore.bench.OrderTotalsBench: the
+ * former double path (Double.parseDouble on the price text, a double sum,
+ * String.format) against Money (text straight to cents, a long sum,
+ * Money.format).  Both render the total once and use that text for display
+ * and for SQL, so they do the same rendering work.  JMH refuses benchmark
+ * classes in the default package, which Money cannot be imported from, so
+ * the benchmark gets the two paths from here as functions of the order
+ * number.
+ *
+ *    java -jar bench/target/pizzastore-bench.jar [JMH options]
+ *    java -jar bench/target/pizzastore-bench.jar check
+ *
+ * "check" instead verifies Money.parse and Money.format on edge cases
+ * (rounding, signs, missing digits, bad input), shows where the double path
+ * goes wrong, and exits with status 1 if any case is wrong; the bench module
+ * runs it in the test phase of "mvn package".
+ *
+ */
+public class MoneyBench {
+
+   public static void main(String[] args) throws Exception {
+      if (args.length == 1 && args[0].equals("check")) {
+         int failures = check();
+         double d = 0;
+         long cents = 0;
+         for (int i = 0; i < 10; i++) {
+            d += Double.parseDouble("0.10");
+            cents += Money.parse("0.10");
+         }
+         System.out.println("ten times 0.10: double gives " + d + " in SQL, Money gives " + Money.format(cents));
+         System.out.println(failures == 0 ? "Money: all checks passed" : "Money: " + failures + " checks failed");
+         if (failures > 0) System.exit(1);
+         return;
+      }
+      org.openjdk.jmh.Main.main(args);
+   }//end main
+
+   /**
+    * 64 menu prices as the database returns them.
+    */
+   public static String[] prices() {
+      String[] prices = new String[64];
+      for (int i = 0; i < prices.length; i++)
+         prices[i] = Money.format(99 + i * 137L % 2500);
+      return prices;
+   }//end prices
+
+   /**
+    * The SQL of order o, totalled with double.
+    */
+   public static IntFunction<String> doublePath(final String[] prices, final int linesPerOrder) {
+      return o -> {
+         double total = 0.0;
+         for (int l = 0; l < linesPerOrder; l++) {
+            double price = Double.parseDouble(prices[(o + l) & 63]);
+            total += price * (l + 1);
+         }
+         String text = String.format("%.2f", total);
+         return "VALUES (" + text + ")";
+      };
+   }//end doublePath
+
+   /**
+    * The SQL of order o, totalled with Money.
+    */
+   public static IntFunction<String> moneyPath(final String[] prices, final int linesPerOrder) {
+      return o -> {
+         long total = 0;
+         for (int l = 0; l < linesPerOrder; l++) {
+            long price = Money.parse(prices[(o + l) & 63]);
+            total += price * (l + 1);
+         }
+         String text = Money.format(total);
+         return "VALUES (" + text + ")";
+      };
+   }//end moneyPath
+
+   /*
+    * Runs the parse and format cases; returns the number that failed.
+    */
+   static int check() {
+      String[][] parses = {
+         // text, expected cents
+         { "12.50", "1250" }, { "12.5", "1250" }, { "12", "1200" }, { "12.", "1200" }, { ".5", "50" },
+         { "0.05", "5" }, { "-0.05", "-5" }, { "+3", "300" }, { "-3", "-300" }, { "  7.25  ", "725" },
+         { "1.005", "101" }, { "1.004", "100" }, { "1.999", "200" }, { "-1.005", "-101" }, { "0.0049", "0" },
+         { "99999999.99", "9999999999" }, { "00012.30", "1230" } };
+      String[] rejected = { "", " ", ".", "-", "+", "abc", "1.2.3", "1,50", "12a", "--1", "12345678901234567" };
+      // cents, formatted; parse(format(cents)) must give them back
+      long[] formats = { 0, 5, -5, 50, 100, 1250, -1250, 9999999999L, 7 };
+      String[] formatted = { "0.00", "0.05", "-0.05", "0.50", "1.00", "12.50", "-12.50", "99999999.99", "0.07" };
+
+      int failures = 0;
+      for (String[] c : parses) {
+         try {
+            long got = Money.parse(c[0]);
+            if (got != Long.parseLong(c[1])) failures += fail("parse(\"" + c[0] + "\") = " + got + ", expected " + c[1]);
+         } catch (NumberFormatException e) {
+            failures += fail("parse(\"" + c[0] + "\") threw " + e.getMessage());
+         }
+      }
+      for (String text : rejected) {
+         try {
+            failures += fail("parse(\"" + text + "\") = " + Money.parse(text) + ", expected NumberFormatException");
+         } catch (NumberFormatException e) {
+            // expected.
+         }
+      }
+      for (int i = 0; i < formats.length; i++) {
+         String got = Money.format(formats[i]);
+         if (!got.equals(formatted[i])) failures += fail("format(" + formats[i] + ") = " + got + ", expected " + formatted[i]);
+         else if (Money.parse(got) != formats[i]) failures += fail("parse(format(" + formats[i] + ")) = " + Money.parse(got));
+      }
+      return failures;
+   }//end check
+
+   private static int fail(String message) {
+      System.out.println("FAILED " + message);
+      return 1;
+   }//end fail
+
+}//end MoneyBench
@@ -0,0 +1,60 @@
+package pizzastore.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per order of the double and the Money totals of MoneyBench; one
+ * operation totals and renders one order of linesPerOrder lines.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderTotalsBench {
+
+   @Param({ "1", "5", "20" })
+   public int linesPerOrder;
+
+   private IntFunction<String> doublePath;
+   private IntFunction<String> moneyPath;
+
+   // advances per order so consecutive orders use different prices
+   private int order = 0;
+
+   @Setup
+   @SuppressWarnings("unchecked")
+   public void setUp() throws ReflectiveOperationException {
+      // MoneyBench is in the default package, so it is reached by name
+      Class<?> bench = Class.forName("MoneyBench");
+      String[] prices = (String[]) bench.getMethod("prices").invoke(null);
+      doublePath = (IntFunction<String>) bench.getMethod("doublePath", String[].class, int.class).invoke(null, prices, linesPerOrder);
+      moneyPath = (IntFunction<String>) bench.getMethod("moneyPath", String[].class, int.class).invoke(null, prices, linesPerOrder);
+   }//end setUp
+
+   @Benchmark
+   public String doubleTotal() {
+      return doublePath.apply(order++);
+   }//end doubleTotal
+
+   @Benchmark
+   public String moneyTotal() {
+      return moneyPath.apply(order++);
+   }//end moneyTotal
+
+}//end OrderTotalsBench
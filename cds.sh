@@ -0,0 +1,20 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# Fast start for short kiosk sessions: run compile.sh once first.
+# Class-data sharing only archives classes loaded from jar files, which the
+# Maven build produces: the CLI jar lists the core jar and the driver in its
+# Class-Path.
+JAR=$DIR/cli/target/pizzastore-cli.jar
+JSA=$DIR/cli/target/pizzastore.jsa
+ARGS="$USER"_project_phase_3_DB" $PGPORT $USER"
+
+if [ ! -f $JSA ] || [ $JAR -nt $JSA ]; then
+   rm -f $JSA
+
+   # record the classes loaded by a short session into a dynamic archive (JDK 13+)
+   (sleep 2; echo 9) | java -XX:ArchiveClassesAtExit=$JSA -Dpizzastore.fastStart=true -jar $JAR $ARGS > /dev/null
+fi
+
+# run with the archive, background connect and warm-up, C1 compiler only
+java -XX:SharedArchiveFile=$JSA -XX:TieredStopAtLevel=1 -Dpizzastore.fastStart=true -jar $JAR $ARGS
@@ -0,0 +1,1750 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.SQLException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays; 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Console user interface of the pizza store: the menus, the keyboard input
+ * and the flow behind each menu option.  Every database access goes through
+ * PizzaStore in the core module.
+ *
+ */
+public class PizzaStoreCli {
+
+    static String authorisedUser = null;
+    // Users.userID of the logged-in user; FoodOrder references users by it
+    static int authorisedUserID = -1;
+    // favoriteItems of the logged-in user, used for order-time suggestions
+    static String authorisedFavorites = null;
+    // status changes of the logged-in user's orders, shown before the next menu
+    static final ConcurrentLinkedQueue<String> pendingOrderUpdates = new ConcurrentLinkedQueue<String>();
+    static final OrderEvents.Listener orderUpdates = (orderID, login, status) ->
+        pendingOrderUpdates.add("Order " + orderID + " is now " + status);
+
+   // place orders through the place_order stored procedure (ServerOrders)
+   static final boolean SERVER_ORDERS = Boolean.getBoolean("pizzastore.serverOrders");
+
+   // handling the keyboard inputs through a BufferedReader
+   // This variable can be global for convenience.
+   static BufferedReader in = new BufferedReader(
+                                new InputStreamReader(System.in));
+
+   /**
+    * The main execution method
+    *
+    * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
+    */
+   public static void main (String[] args) {
+      if (args.length != 3) {
+         System.err.println (
+            "Usage: " +
+            "java [-classpath <classpath>] " +
+            PizzaStoreCli.class.getName () +
+            " <dbname> <port> <user>");
+         return;
+      }//end if
+
+      Greeting();
+      QueryMetrics.register();
+      PizzaStore esql = null;
+      try{
+         // instantiate the PizzaStore object and creates a physical
+         // connection; the postgres JDBC driver is loaded on first connect.
+         // With -Dpizzastore.fastStart=true the connection and warm-up run in
+         // the background while the menu is shown.
+         String dbname = args[0];
+         String dbport = args[1];
+         String user = args[2];
+         esql = new PizzaStore (dbname, dbport, user, "", Boolean.getBoolean("pizzastore.fastStart"));
+
+         boolean keepon = true;
+         while(keepon) {
+            // These are sample SQL statements
+            System.out.println("MAIN MENU");
+            System.out.println("---------");
+            System.out.println("1. Create user");
+            System.out.println("2. Log in");
+            System.out.println("9. < EXIT");
+            String authorisedUser = null;
+            switch (readChoice()){
+               case 1: QueryMetrics.setOperation("CreateUser"); CreateUser(esql); break;
+               case 2: QueryMetrics.setOperation("LogIn"); authorisedUser = LogIn(esql); break;
+               case 9: keepon = false; break;
+               default : System.out.println("Unrecognized choice!"); break;
+            }//end switch
+            printShedNotice();
+            if (authorisedUser != null) {
+              boolean usermenu = true;
+              while(usermenu) {
+                System.out.println("MAIN MENU");
+                System.out.println("---------");
+                System.out.println("1. View Profile");
+                System.out.println("2. Update Profile");
+                System.out.println("3. View Menu");
+                System.out.println("4. Place Order"); //make sure user specifies which store
+                System.out.println("5. View Full Order ID History");
+                System.out.println("6. View Past 5 Order IDs");
+                System.out.println("7. View Order Information"); //user should specify orderID and then be able to see detailed information about the order
+                System.out.println("8. View Stores"); 
+                System.out.println("12. Reorder a Past Order");
+                System.out.println("13. Watch My Orders");
+
+                //**the following functionalities should only be able to be used by drivers & managers**
+                System.out.println("9. Update Order Status");
+                System.out.println("16. Kitchen Queue");
+
+                //**the following functionalities should ony be able to be used by managers**
+                System.out.println("10. Update Menu");
+                System.out.println("11. Update User");
+                System.out.println("14. View Audit Log");
+                System.out.println("15. View Delivery Times");
+
+                System.out.println(".........................");
+                System.out.println("20. Log out");
+                printOrderUpdates();
+
+                switch (readChoice()){
+                   case 1: QueryMetrics.setOperation("viewProfile"); viewProfile(esql); break;
+                   case 2: QueryMetrics.setOperation("updateProfile"); updateProfile(esql); break;
+                   case 3: QueryMetrics.setOperation("viewMenu"); viewMenu(esql); break;
+                   case 4: QueryMetrics.setOperation("placeOrder"); placeOrder(esql); break;
+                   case 5: QueryMetrics.setOperation("viewAllOrders"); viewAllOrders(esql); break;
+                   case 6: QueryMetrics.setOperation("viewRecentOrders"); viewRecentOrders(esql); break;
+                   case 7: QueryMetrics.setOperation("viewOrderInfo"); viewOrderInfo(esql); break;
+                   case 8: QueryMetrics.setOperation("viewStores"); viewStores(esql); break;
+                   case 9: QueryMetrics.setOperation("updateOrderStatus"); updateOrderStatus(esql); break;
+                   case 10: QueryMetrics.setOperation("updateMenu"); updateMenu(esql); break;
+                   case 11: QueryMetrics.setOperation("updateUser"); updateUser(esql); break;
+                   case 12: QueryMetrics.setOperation("reorder"); reorder(esql); break;
+                   case 13: QueryMetrics.setOperation("watchOrders"); watchOrders(esql); break;
+                   case 14: QueryMetrics.setOperation("viewAuditLog"); viewAuditLog(esql); break;
+                   case 15: QueryMetrics.setOperation("viewDeliveryTimes"); viewDeliveryTimes(esql); break;
+                   case 16: QueryMetrics.setOperation("viewKitchenQueue"); viewKitchenQueue(esql); break;
+
+
+
+                   case 20: OrderEvents.get().unsubscribe(authorisedUser, orderUpdates); usermenu = false; break;
+                   default : System.out.println("Unrecognized choice!"); break;
+                }
+                printShedNotice();
+              }
+            }
+         }
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+      }finally{
+         // make sure to cleanup the created table and close the connection.
+         try{
+            if(esql != null) {
+               System.out.print("Disconnecting from database...");
+               esql.cleanup ();
+               System.out.println("Done\n\nBye !");
+            }//end if
+         }catch (Exception e) {
+            // ignored.
+         }//end try
+      }//end try
+   }//end main
+
+   public static void Greeting(){
+      System.out.println(
+         "\n\n*******************************************************\n" +
+         "              User Interface      	               \n" +
+         "*******************************************************\n");
+   }//end Greeting
+
+   /*
+    * Reads the users choice given from the keyboard
+    * @int
+    **/
+   public static int readChoice() {
+      int input;
+      // returns only if a correct value is given.
+      do {
+         System.out.print("Please make your choice: ");
+         try { // read the integer, parse it and break.
+            input = Integer.parseInt(in.readLine());
+            break;
+         }catch (Exception e) {
+            System.out.println("Your input is invalid!");
+            continue;
+         }//end try
+      }while (true);
+      return input;
+   }//end readChoice
+
+   /*
+    * Prints the status changes pushed since the last menu was shown
+    **/
+   public static void printOrderUpdates() {
+      String update;
+      while ((update = pendingOrderUpdates.poll()) != null) {
+         System.out.println("🔔 " + update);
+      }//end while
+   }//end printOrderUpdates
+
+   /*
+    * Asks the user to try again when statements of the last operation were
+    * turned away by AdmissionController, or failed because the database was
+    * slow or unreachable (Resilience)
+    **/
+   public static void printShedNotice() {
+      if (AdmissionController.get().takeShed()) {
+         System.out.println("\n⚠ The store is very busy right now and your request could not be completed. Please try again in a moment.");
+      }//end if
+      String notice = Resilience.get().takeNotice();
+      if (notice != null) {
+         System.out.println("\n⚠ " + notice);
+      }//end if
+   }//end printShedNotice
+
+   /*
+    * Creates a new user
+    **/
+
+public static void CreateUser(PizzaStore esql) {
+    try {
+        System.out.println("\n*** New User Registration ***");
+
+        // Get login ID
+        System.out.print("Create login Username: ");
+        String login = in.readLine().trim();
+
+        // Check if login ID already exists
+        String checkUserSQL = "SELECT COUNT(*) FROM Users WHERE login = '" + login + "'";
+        List<List<String>> result = esql.executeQueryAndReturnResult(checkUserSQL);
+
+        int userExists = Integer.parseInt(result.get(0).get(0)); // Get the actual count
+
+        if (userExists > 0) {
+            System.out.println("Error: Login ID already exists. Try a different one.");
+            return;
+        }
+
+        // Get password (must be at least 6 characters)
+        System.out.print("Create password: ");
+        String password = in.readLine().trim();
+        if (password.length() < 6) {
+            System.out.println("Error: Password must be at least 6 characters long.");
+            return;
+        }
+
+        // Default role and favorite items
+        String role = Role.CUSTOMER.label;
+        String favoriteItems = "";
+
+        // Get phone number (must be exactly 10 digits)
+        System.out.print("Enter phone number: ");
+        String phoneNum = in.readLine().trim();
+        if (!phoneNum.matches("\\d{10}")) {
+            System.out.println("Error: Phone number must be exactly 10 digits.");
+            return;
+        }
+
+        // Insert new user into the database using string-based SQL query
+        String query = "INSERT INTO Users (login, password, role, favoriteItems, phoneNum) " +
+                       "VALUES ('" + login + "', '" + password + "', '" + role + "', '" +
+                       favoriteItems + "', '" + phoneNum + "')";
+        esql.executeUpdate(query);
+        esql.replicate("Users", "userID", "login = '" + login + "'");
+
+        System.out.println("✅ User created successfully!");
+
+    } catch (Exception e) {
+        System.out.println("Error while creating user: " + e.getMessage());
+    }
+}
+
+
+// LOGIN FUNCTION: Allows a user to log in by checking their credentials in the database.
+    public static String LogIn(PizzaStore esql) {
+    try {
+        System.out.println("\n*** User Login ***");
+        int attempts = 0;
+        final int MAX_ATTEMPTS = 3; // Maximum login attempts
+
+        while (attempts < MAX_ATTEMPTS) {
+            System.out.print("Enter Login ID: ");
+            String login = in.readLine().trim();
+
+            System.out.print("Enter Password: ");
+            String password = in.readLine().trim();
+
+            // Check if the login credentials exist in the database
+            String sql = "SELECT role, favoriteItems, userID FROM Users WHERE login = '" + login + "' AND password = '" + password + "'";
+            List<List<String>> result = esql.executeQueryAndReturnResult(sql);
+
+            if (!result.isEmpty()) {
+                String role = result.get(0).get(0);
+                System.out.println("\n✅ Login successful! Welcome, " + login + " (" + role + ")");
+                authorisedUser = login; // Store the logged-in user
+                authorisedFavorites = result.get(0).get(1);
+                authorisedUserID = Integer.parseInt(result.get(0).get(2));
+                Recommender.get().refreshAsync(esql); // Catch up on orders placed since the last session
+                OrderEvents.get().start(esql);
+                OrderEvents.get().subscribe(login, orderUpdates); // Status changes of the user's orders are pushed
+                return login; // Return username for session tracking
+            } else {
+                attempts++; // Increase the failed attempt counter
+                System.out.println("\nInvalid login credentials. Please try again.");
+                if (attempts < MAX_ATTEMPTS) {
+                    System.out.println("Attempts remaining: " + (MAX_ATTEMPTS - attempts));
+                } else {
+                    System.out.println("\nToo many failed attempts. Returning to the main menu...");
+                    return null; // Exit login process
+                }
+            }
+        }
+    } catch (Exception e) {
+        System.out.println("\nAn unexpected error occurred. Please try again later.");
+    }
+    return null; // If all attempts are used up, return null
+}
+
+
+
+// VIEW PROFILE FUNCTION: Allows a logged-in user to view their profile information
+public static void viewProfile(PizzaStore esql) {
+    try {
+        // Ensure the user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Fetch user details
+        String query = "SELECT favoriteItems, phoneNum FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> result = esql.executeQueryAndReturnResult(query);
+
+        if (result.isEmpty()) {
+            System.out.println("\nError: User not found.");
+            return;
+        }
+
+        // Extract user info
+        String favoriteItems = result.get(0).get(0).isEmpty() ? "None" : result.get(0).get(0);
+        String phoneNum = result.get(0).get(1);
+
+        // Display profile
+        System.out.println("\n========= YOUR PROFILE =========");
+        System.out.println(" User: " + authorisedUser);
+        System.out.println(" Phone Number: " + phoneNum);
+        System.out.println(" Favorite Items: " + favoriteItems);
+        System.out.println("================================");
+
+    } catch (Exception e) {
+        System.out.println("\nError retrieving profile. Please try again.");
+    }
+}
+
+
+  // UPDATE PROFILE FUNCTION - Allows the logged-in user to update their phone number, favorite item, or password
+public static void updateProfile(PizzaStore esql) {
+    try {
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        while (true) {
+            // Display update options
+            System.out.println("\n==== UPDATE PROFILE ====");
+            System.out.println("1. Update Favorite Item");
+            System.out.println("2. Update Phone Number");
+            System.out.println("3. Update Password");
+            System.out.println("4. Go Back");
+            System.out.print("Choose an option: ");
+
+            int choice = readChoice();
+
+            if (choice == 4) {
+                System.out.println("\nReturning to main menu...");
+                break;
+            }
+
+            String column = "", newValue = "";
+
+            switch (choice) {
+                case 1:
+                    System.out.print("Enter new favorite item: ");
+                    column = "favoriteItems";
+                    newValue = in.readLine().trim();
+                    break;
+                case 2:
+                    do {
+                        System.out.print("Enter new phone number (10 digits): ");
+                        newValue = in.readLine().trim();
+                        if (!newValue.matches("\\d{10}")) {
+                            System.out.println("Invalid phone number! Must be exactly 10 digits.");
+                        }
+                    } while (!newValue.matches("\\d{10}"));
+                    column = "phoneNum";
+                    break;
+                case 3:
+                    do {
+                        System.out.print("Enter new password (at least 6 characters): ");
+                        newValue = in.readLine().trim();
+                        if (newValue.length() < 6) {
+                            System.out.println("Password must be at least 6 characters long.");
+                        }
+                    } while (newValue.length() < 6);
+                    column = "password";
+                    break;
+                default:
+                    System.out.println("Invalid choice! Please try again.");
+                    continue;
+            }
+
+            // Update user profile
+            String updateQuery = "UPDATE Users SET " + column + " = '" + newValue + "' WHERE login = '" + authorisedUser + "'";
+            esql.executeUpdate(updateQuery);
+            esql.replicate("Users", "userID", "userID = " + authorisedUserID);
+            if (column.equals("favoriteItems")) authorisedFavorites = newValue;
+            System.out.println("\n✅ Profile updated successfully!");
+        }
+    } catch (Exception e) {
+        System.out.println("\nError updating profile. Please try again.");
+    }
+}
+
+
+    // VIEW MENU FUNCTION - Allows users to browse and filter menu items
+    public static void viewMenu(PizzaStore esql) {
+    try {
+        while (true) {
+            // Display menu options
+            System.out.println("\n===== MENU OPTIONS =====");
+            System.out.println("1. View all menu items");
+            System.out.println("2. Filter by category (entree, drinks, sides)");
+            System.out.println("3. Filter by price range");
+            System.out.println("4. Sort by price (Low to High)");
+            System.out.println("5. Sort by price (High to Low)");
+            System.out.println("6. Search menu");
+            System.out.println("7. Go back");
+            System.out.print("Choose an option: ");
+
+            int choice = readChoice();
+
+            // The menu is served from MenuCache, filtered and sorted here
+            List<List<String>> results = new ArrayList<>();
+
+            switch (choice) {
+                case 1:
+                    results.addAll(MenuCache.items(esql));
+                    break;
+                case 2:
+                    System.out.print("Enter food type (entree, drinks, sides): ");
+                    String type = in.readLine().trim().toLowerCase();
+                    if (!Arrays.asList("entree", "drinks", "sides").contains(type)) {
+                        System.out.println("Invalid type! Please enter 'entree', 'drinks', or 'sides'.");
+                        continue;
+                    }
+                    for (List<String> row : MenuCache.items(esql)) {
+                        if (row.get(2).trim().equalsIgnoreCase(type)) results.add(row);
+                    }
+                    break;
+                case 3:
+                    System.out.print("Enter maximum price: ");
+                    long maxPrice = Money.parse(in.readLine());
+                    for (List<String> row : MenuCache.items(esql)) {
+                        if (Money.parse(row.get(1)) <= maxPrice) results.add(row);
+                    }
+                    break;
+                case 4:
+                    results.addAll(MenuCache.items(esql));
+                    results.sort((a, b) -> Long.compare(Money.parse(a.get(1)), Money.parse(b.get(1))));
+                    break;
+                case 5:
+                    results.addAll(MenuCache.items(esql));
+                    results.sort((a, b) -> Long.compare(Money.parse(b.get(1)), Money.parse(a.get(1))));
+                    break;
+                case 6:
+                    System.out.print("Search for (name, ingredient or description words): ");
+                    String text = in.readLine().trim();
+                    System.out.print("Must contain ingredients (comma-separated, optional): ");
+                    List<String> include = splitList(in.readLine());
+                    System.out.print("Must not contain ingredients (comma-separated, optional): ");
+                    List<String> exclude = splitList(in.readLine());
+                    results = MenuSearch.get().search(MenuCache.items(esql), text, include, exclude, 20);
+                    break;
+                case 7:
+                    System.out.println("\nReturning to main menu...");
+                    return;
+                default:
+                    System.out.println("Invalid choice! Please try again.");
+                    continue;
+            }
+
+            if (results.isEmpty()) {
+                System.out.println("\nNo items found.");
+                continue;
+            }
+
+            System.out.println("\n===== MENU ITEMS =====");
+            System.out.printf("%-20s %-10s %-10s %-30s\n", "Item Name", "Price", "Type", "Description");
+            System.out.println("-------------------------------------------------------------");
+
+            for (List<String> row : results) {
+                System.out.printf("%-20s $%-9s %-10s %-30s\n", row.get(0), row.get(1), row.get(2), row.get(3));
+            }
+        }
+
+    } catch (Exception e) {
+        System.out.println("Error while browsing the menu. Please try again.");
+    }
+}
+
+    // Splits a comma-separated answer into its trimmed, non-empty parts
+    private static List<String> splitList(String line) {
+        List<String> parts = new ArrayList<>();
+        for (String part : line.split(",")) {
+            if (!part.trim().isEmpty()) parts.add(part.trim());
+        }
+        return parts;
+    }
+
+    // PLACE ORDER FUNCTION - Allows a logged-in user to place an order from a selected store
+public static void placeOrder(PizzaStore esql) {
+    try {
+        // Step 1: Check if the user is logged in before placing an order
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Fetch the stores and the menu at the same time; both are
+        // usually answered from memory (StoreAvailability, MenuCache)
+        CompletableFuture<List<StoreAvailability.Store>> storesFuture = StoreAvailability.storesAsync(esql);
+        CompletableFuture<List<List<String>>> menuFuture = MenuCache.itemsAsync(esql);
+
+        // Show available stores to the user
+        List<StoreAvailability.Store> stores = storesFuture.join();
+        System.out.println("\n=== Available Stores ===");
+        System.out.println("storeid\taddress\tstatus\t");
+        for (StoreAvailability.Store store : stores) {
+            System.out.println(store.storeID + "\t" + store.address + "\t" + store.status() + "\t");
+        }
+
+        // Step 3: Ask the user which store they want to order from
+        System.out.print("\nEnter Store ID: ");
+        int storeID = Integer.parseInt(in.readLine().trim());
+
+        // Step 4: Find the store in the list already fetched
+        StoreAvailability.Store store = StoreAvailability.find(stores, storeID);
+
+        if (store == null) {
+            System.out.println("\nError: Store ID not found.");
+            return;
+        }
+
+        // A closed store takes no orders; offer an open one in the same city
+        if (!store.isOpenNow()) {
+            StoreAvailability.Store nearest = StoreAvailability.nearestOpen(stores, store);
+            if (nearest == null) {
+                System.out.println("\nError: Store " + storeID + " is closed and no other store in " + store.city + " is open. Order not placed.");
+                return;
+            }
+            System.out.print("\nStore " + storeID + " is closed. Order from store " + nearest.storeID + " (" + nearest.address + ") instead? (y/n): ");
+            if (!in.readLine().trim().equalsIgnoreCase("y")) {
+                System.out.println("\nOrder not placed.");
+                return;
+            }
+            store = nearest;
+            storeID = nearest.storeID;
+        }
+        String storeAddress = store.address;
+
+        // Step 5: Show menu items to the user
+        System.out.println("\n=== Menu Items ===");
+        List<List<String>> menu = menuFuture.join();
+        System.out.println("itemname\tprice\t");
+        for (List<String> item : menu) {
+            System.out.println(item.get(0) + "\t" + item.get(1) + "\t");
+        }
+
+        // Step 6: User selects items to order
+        List<OptimisticOrders.Line> orderLines = new ArrayList<>();
+        printRecommended(orderLines);
+
+        while (true) {
+            System.out.print("\nEnter item name (or type 'done' to finish): ");
+            String itemName = in.readLine().trim();
+            if (itemName.equalsIgnoreCase("done")) break; // Stop item selection
+
+            // Check the item against the cached menu; its price and version are
+            // re-checked when the order is committed
+            List<String> item = MenuSearch.get().find(menu, itemName);
+
+            if (item == null) {
+                System.out.println("\nError: Item '" + itemName + "' not found in the menu.");
+                List<List<String>> suggestions = MenuSearch.get().search(menu, itemName, new ArrayList<String>(), new ArrayList<String>(), 3);
+                if (!suggestions.isEmpty()) {
+                    System.out.print("Did you mean:");
+                    for (List<String> suggestion : suggestions) System.out.print(" '" + suggestion.get(0) + "'");
+                    System.out.println("?");
+                }
+                continue;
+            }
+
+            System.out.print("Enter quantity: ");
+            int quantity = Integer.parseInt(in.readLine().trim());
+
+            long itemPrice = Money.parse(item.get(1));
+            int version = Integer.parseInt(item.get(5));
+            orderLines.add(new OptimisticOrders.Line(item.get(0), quantity, itemPrice, version));
+            printRecommended(orderLines);
+        }
+
+        // Step 7: Ensure the user selected at least one valid item
+        if (orderLines.isEmpty()) {
+            System.out.println("\nError: No valid items selected. Order not placed.");
+            return;
+        }
+
+        // The store may have closed while the items were chosen
+        store = StoreAvailability.find(StoreAvailability.stores(esql), storeID);
+        if (store == null || !store.isOpenNow()) {
+            System.out.println("\nError: Store " + storeID + " has closed. Order not placed.");
+            return;
+        }
+
+        // Step 8: Insert FoodOrder and ItemsInOrder in one transaction, checking
+        // that no price changed since it was shown to the user
+        // on the database that owns the store's orders; with
+        // pizzastore.serverOrders the place_order procedure prices the order
+        OptimisticOrders.Placed placed;
+        esql.useStore(storeID);
+        try {
+            placed = SERVER_ORDERS ?
+                ServerOrders.place(esql, authorisedUser, storeID, orderLines) :
+                OptimisticOrders.place(esql, authorisedUserID, storeID, orderLines);
+        } finally {
+            esql.useHome();
+        }
+
+        // If an item was removed from the menu meanwhile
+        if (placed == null) {
+            System.out.println("\nError: An item was removed from the menu. Order not placed.");
+            return;
+        }
+
+        // Step 9: Display order confirmation including store address
+        System.out.println("\n✅ Order placed successfully!");
+        if (placed.repriced) {
+            System.out.println(" Note: menu prices changed while you were ordering; the current prices were used.");
+        }
+        System.out.println(" Order ID: " + placed.orderID);
+        System.out.println(" Store Location: " + storeAddress);
+        System.out.println(" Total Price: $" + Money.format(placed.totalPrice));
+
+        // Step 10: Show each ordered item stored in the ItemsInOrder table
+        List<String> orderedItems = new ArrayList<>();
+        for (OptimisticOrders.Line line : orderLines) {
+            System.out.println("Added: " + line.itemName + " | Quantity: " + line.quantity);
+            orderedItems.add(line.itemName);
+        }
+        Recommender.get().recordOrder(placed.orderID, orderedItems);
+        KitchenQueue.get().placed(placed.orderID, storeID, authorisedUser, Money.format(placed.totalPrice), OrderStatus.PROCESSING);
+
+        System.out.println("\nAll items added to order!");
+
+    } catch (SQLException e) {
+        // The database checks the store's hours again when the order is inserted
+        if (StoreAvailability.refused(e)) System.out.println("\nError: The store is not taking orders right now. Order not placed.");
+        else System.out.println("\nError placing order. Please try again.");
+    } catch (Exception e) {
+        System.out.println("\nError placing order. Please try again.");
+    }
+}
+
+
+    // Suggests items that go with the ones chosen so far and the user's favorites.
+    // Suggestions are precomputed in memory, no query is issued here
+    private static void printRecommended(List<OptimisticOrders.Line> orderLines) {
+        List<String> basket = new ArrayList<>();
+        for (OptimisticOrders.Line line : orderLines) basket.add(line.itemName);
+        List<String> recommended = Recommender.get().suggest(authorisedFavorites, basket, 3);
+        if (!recommended.isEmpty()) {
+            System.out.println((basket.isEmpty() ? "\nRecommended for you: " : "Goes well with your order: ") + String.join(", ", recommended));
+        }
+    }
+
+
+    // REORDER FUNCTION - Places a copy of one of the user's past orders (or their last one) at current prices
+public static void reorder(PizzaStore esql) {
+    try {
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 1: Ask which order to repeat; an empty answer means the most recent one
+        System.out.print("\nEnter the Order ID to reorder (press Enter for your last order): ");
+        String answer = in.readLine().trim();
+        String pickOrder = answer.isEmpty() ? "" : " AND orderID = " + Integer.parseInt(answer);
+
+        // Find the order first: its store must take orders, and with sharding
+        // the copy runs on the database that owns the store
+        String findOrder = "SELECT orderID, storeID, orderTimestamp FROM FoodOrder WHERE userID = " + authorisedUserID + pickOrder +
+            " ORDER BY orderTimestamp DESC LIMIT 1";
+        List<List<String>> source = esql.isSharded() ?
+            esql.executeQueryOnAllShards(findOrder, 2, true, 1) : esql.executeQueryAndReturnResult(findOrder);
+        if (source.isEmpty()) {
+            System.out.println("\nError: Order not found, or none of its items are still on the menu.");
+            return;
+        }
+        int sourceOrderID = Integer.parseInt(source.get(0).get(0).trim());
+        int sourceStoreID = Integer.parseInt(source.get(0).get(1).trim());
+
+        // A closed store takes no orders; offer an open one in the same city, as placeOrder does
+        int storeID = sourceStoreID;
+        List<StoreAvailability.Store> stores = StoreAvailability.stores(esql);
+        StoreAvailability.Store store = StoreAvailability.find(stores, storeID);
+        if (store == null || !store.isOpenNow()) {
+            StoreAvailability.Store nearest = store == null ? null : StoreAvailability.nearestOpen(stores, store);
+            if (nearest == null) {
+                System.out.println("\nError: Store " + storeID + " is closed and no other store nearby is open. Order not placed.");
+                return;
+            }
+            System.out.print("\nStore " + storeID + " is closed. Order from store " + nearest.storeID + " (" + nearest.address + ") instead? (y/n): ");
+            if (!in.readLine().trim().equalsIgnoreCase("y")) {
+                System.out.println("\nOrder not placed.");
+                return;
+            }
+            storeID = nearest.storeID;
+        }
+
+        // The items come from the source order, or, when another store takes
+        // the order, are read first since that store may be on another database
+        String lines = "SELECT o.itemName, o.quantity, i.price FROM ItemsInOrder o" +
+            " JOIN Items i ON i.itemName = o.itemName WHERE o.orderID = " + sourceOrderID;
+        if (storeID != sourceStoreID) {
+            List<List<String>> items;
+            esql.useStore(sourceStoreID);
+            try {
+                items = esql.executeQueryAndReturnResult("SELECT itemName, quantity FROM ItemsInOrder WHERE orderID = " + sourceOrderID);
+            } finally {
+                esql.useHome();
+            }
+            if (items.isEmpty()) {
+                System.out.println("\nError: Order not found, or none of its items are still on the menu.");
+                return;
+            }
+            String values = "";
+            for (List<String> item : items) {
+                values += (values.isEmpty() ? "" : ", ") + "('" + item.get(0).trim().replace("'", "''") + "', " + item.get(1).trim() + ")";
+            }
+            lines = "SELECT o.itemName, o.quantity, i.price FROM (VALUES " + values + ") AS o(itemName, quantity)" +
+                " JOIN Items i ON i.itemName = o.itemName";
+        }
+
+        // Step 2: Clone the order and its items with current prices in a single
+        // statement, which PostgreSQL runs as one transaction. Items no longer
+        // on the menu are left out.
+        String reorderQuery =
+            "WITH lines AS (" + lines +
+            "), new_order AS (" +
+            "  INSERT INTO FoodOrder (userID, storeID, totalPrice, orderStatus, orderTimestamp)" +
+            "  SELECT " + authorisedUserID + ", " + storeID + ", (SELECT SUM(price * quantity) FROM lines), '" + OrderStatus.PROCESSING.label + "', NOW()" +
+            "  WHERE EXISTS (SELECT 1 FROM lines)" +
+            "  RETURNING orderID, storeID, totalPrice" +
+            "), new_lines AS (" +
+            "  INSERT INTO ItemsInOrder (orderID, itemName, quantity)" +
+            "  SELECT new_order.orderID, lines.itemName, lines.quantity FROM new_order, lines" +
+            "  RETURNING itemName, quantity" +
+            ") " +
+            "SELECT new_order.orderID, new_order.storeID, new_order.totalPrice, new_lines.itemName, new_lines.quantity " +
+            "FROM new_order, new_lines";
+        List<List<String>> result;
+        esql.useStore(storeID);
+        try {
+            result = esql.executeQueryAndReturnResult(reorderQuery);
+        } finally {
+            esql.useHome();
+        }
+
+        if (result.isEmpty()) {
+            System.out.println("\nError: Order not found, or none of its items are still on the menu.");
+            return;
+        }
+
+        // Step 3: Display the confirmation
+        int orderID = Integer.parseInt(result.get(0).get(0));
+        System.out.println("\n✅ Order placed successfully!");
+        System.out.println(" Order ID: " + orderID);
+        System.out.println(" Store ID: " + result.get(0).get(1));
+        System.out.println(" Total Price: $" + result.get(0).get(2));
+
+        List<String> orderedItems = new ArrayList<>();
+        for (List<String> line : result) {
+            System.out.println("Added: " + line.get(3) + " | Quantity: " + line.get(4));
+            orderedItems.add(line.get(3));
+        }
+        Recommender.get().recordOrder(orderID, orderedItems);
+        KitchenQueue.get().placed(orderID, Integer.parseInt(result.get(0).get(1)), authorisedUser, result.get(0).get(2), OrderStatus.PROCESSING);
+
+    } catch (NumberFormatException e) {
+        System.out.println("\nError: Invalid Order ID format. Please enter a number.");
+    } catch (SQLException e) {
+        if (StoreAvailability.refused(e)) System.out.println("\nError: The store is not taking orders right now. Order not placed.");
+        else System.out.println("\nError placing order. Please try again.");
+    } catch (Exception e) {
+        System.out.println("\nError placing order. Please try again.");
+    }
+}
+
+
+    // WATCH ORDERS FUNCTION - Shows status changes of the user's orders as they happen, without querying
+public static void watchOrders(PizzaStore esql) {
+    if (authorisedUser == null) {
+        System.out.println("\nError: No user logged in. Please log in first.");
+        return;
+    }
+
+    // Changes are pushed by OrderEvents; print them as they arrive until Enter is pressed
+    OrderEvents.Listener live = (orderID, login, status) ->
+        System.out.println("🔔 Order " + orderID + " is now " + status);
+    OrderEvents.get().unsubscribe(authorisedUser, orderUpdates);
+    printOrderUpdates();
+    OrderEvents.get().subscribe(authorisedUser, live);
+    try {
+        System.out.println("\nWatching your orders for status changes. Press Enter to stop.");
+        in.readLine();
+    } catch (Exception e) {
+        System.out.println("\nError reading input.");
+    } finally {
+        OrderEvents.get().unsubscribe(authorisedUser, live);
+        OrderEvents.get().subscribe(authorisedUser, orderUpdates);
+    }
+}
+
+
+    // VIEW ALL ORDERS FUNCTION: Displays order history based on the user's role
+public static void viewAllOrders(PizzaStore esql) {
+    try {
+        // Step 1: Ensure a user is logged in before accessing order history
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Retrieve the user's role from the database
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty()) {
+            System.out.println("\nError: User role not found.");
+            return;
+        }
+
+        Role userRole = Role.parse(roleResult.get(0).get(0)); // Get the user's role
+
+        // Step 3: Define the SQL query based on user role
+        String orderQuery;
+        if (userRole.isStaff()) {
+            System.out.println("\n=== All Orders (Manager/Driver View) ===");
+            orderQuery = "SELECT f.orderID, u.login AS Customer, f.storeID, f.totalPrice, f.orderStatus, f.orderTimestamp " +
+                         "FROM FoodOrder f JOIN Users u ON u.userID = f.userID ORDER BY f.orderTimestamp DESC";
+        } else {
+            System.out.println("\n=== Your Order History ===");
+            orderQuery = "SELECT orderID, storeID, totalPrice, orderStatus, orderTimestamp FROM FoodOrder WHERE userID = " + authorisedUserID + " ORDER BY orderTimestamp DESC";
+        }
+
+        // Step 4: Fetch and display the orders, merged by timestamp across shards
+        boolean staffView = userRole.isStaff();
+        List<List<String>> orders = esql.executeQueryOnAllShards(orderQuery, staffView ? 5 : 4, true, -1);
+
+        if (orders.isEmpty()) {
+            System.out.println("\nNo orders found.");
+            return;
+        }
+
+        // Step 5: Print orders in a formatted way
+        if (userRole.isStaff()) {
+            System.out.printf("%-10s %-15s %-10s %-12s %-15s %-20s\n", "OrderID", "Customer", "StoreID", "Total Price", "Order Status", "Timestamp");
+        } else {
+            System.out.printf("%-10s %-10s %-12s %-15s %-20s\n", "OrderID", "StoreID", "Total Price", "Order Status", "Timestamp");
+        }
+        System.out.println("------------------------------------------------------------");
+
+        // Step 6: Display order details
+        for (List<String> order : orders) {
+            if (userRole.isStaff()) {
+                System.out.printf("%-10s %-15s %-10s $%-11s %-15s %-20s\n",
+                        order.get(0), order.get(1), order.get(2), order.get(3), order.get(4), order.get(5));
+            } else {
+                System.out.printf("%-10s %-10s $%-11s %-15s %-20s\n",
+                        order.get(0), order.get(1), order.get(2), order.get(3), order.get(4));
+            }
+        }
+
+    } catch (Exception e) {
+        System.out.println("\nError fetching order history. Please try again.");
+    }
+}
+
+
+    // VIEW RECENT 5 ORDERS - Displays the last 5 orders for customers and all users, including items in each order
+public static void viewRecentOrders(PizzaStore esql) {
+    try {
+        // Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 1: Get user role
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty()) {
+            System.out.println("\nError: User role not found.");
+            return;
+        }
+
+        Role userRole = Role.parse(roleResult.get(0).get(0));
+
+        // Step 2: Define SQL query based on user role
+        String orderQuery = userRole.isStaff() ?
+                "SELECT f.orderID, u.login AS Customer, f.storeID, f.totalPrice, f.orderStatus, f.orderTimestamp " +
+                "FROM FoodOrder f JOIN Users u ON u.userID = f.userID ORDER BY f.orderTimestamp DESC LIMIT 5" :
+                "SELECT orderID, storeID, totalPrice, orderStatus, orderTimestamp FROM FoodOrder WHERE userID = " + authorisedUserID + " ORDER BY orderTimestamp DESC LIMIT 5";
+
+        System.out.println(userRole.isStaff() ?
+                "\n=== 5 Most Recent Orders ===" : "\n=== Your 5 Most Recent Orders ===");
+
+        // Step 3: Fetch orders from the database, merged by timestamp across shards
+        boolean staffView = userRole.isStaff();
+        List<List<String>> orders = esql.executeQueryOnAllShards(orderQuery, staffView ? 5 : 4, true, 5);
+
+        if (orders.isEmpty()) {
+            System.out.println("\nNo recent orders found.");
+            return;
+        }
+
+        // Step 4: Print order history
+        System.out.printf(userRole.isStaff() ?
+                "%-10s %-15s %-10s %-12s %-15s %-20s\n" :
+                "%-10s %-10s %-12s %-15s %-20s\n",
+                "OrderID", userRole.isStaff() ? "Customer" : "StoreID", "StoreID", "Total Price", "Order Status", "Timestamp");
+
+        System.out.println("------------------------------------------------------------");
+
+        for (List<String> order : orders) {
+            if (userRole.isStaff()) {
+                System.out.printf("%-10s %-15s %-10s $%-11s %-15s %-20s\n",
+                        order.get(0), order.get(1), order.get(2), order.get(3), order.get(4), order.get(5));
+            } else {
+                System.out.printf("%-10s %-10s $%-11s %-15s %-20s\n",
+                        order.get(0), order.get(1), order.get(2), order.get(3), order.get(4));
+            }
+        }
+
+    } catch (Exception e) {
+        System.out.println("\nError retrieving recent orders. Please try again.");
+    }
+}
+
+
+    // VIEW ORDER INFO FUNCTION - Displays detailed information for a specific order (using the orderID)
+public static void viewOrderInfo(PizzaStore esql) {
+    try {
+        // Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 1: Get user role while the user types the Order ID
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        CompletableFuture<List<List<String>>> roleFuture = esql.executeQueryAsync(roleQuery);
+
+        // Step 2: Ask user for Order ID
+        System.out.print("\nEnter the Order ID to view details: ");
+        int orderID = Integer.parseInt(in.readLine().trim());
+
+        // Step 3: Fetch the order header and its items together; the
+        // permission check is applied to the header once the role is known
+        String orderQuery = "SELECT f.orderID, f.storeID, f.totalPrice, f.orderStatus, f.orderTimestamp, u.login AS Customer " +
+                            "FROM FoodOrder f JOIN Users u ON u.userID = f.userID WHERE f.orderID = " + orderID;
+        String itemQuery = "SELECT itemName, quantity FROM ItemsInOrder WHERE orderID = " + orderID;
+        CompletableFuture<List<List<String>>> orderFuture;
+        CompletableFuture<List<List<String>>> itemFuture;
+        if (esql.isSharded()) {
+            // only the shard owning the order returns rows
+            orderFuture = CompletableFuture.completedFuture(esql.executeQueryOnAllShards(orderQuery, -1, false, -1));
+            itemFuture = CompletableFuture.completedFuture(esql.executeQueryOnAllShards(itemQuery, -1, false, -1));
+        } else {
+            orderFuture = esql.executeQueryAsync(orderQuery);
+            itemFuture = esql.executeQueryAsync(itemQuery);
+        }
+
+        List<List<String>> roleResult = roleFuture.join();
+        if (roleResult.isEmpty()) {
+            System.out.println("\nError: User role not found.");
+            return;
+        }
+
+        Role userRole = Role.parse(roleResult.get(0).get(0));
+        boolean staff = userRole.isStaff();
+
+        List<List<String>> orderResult = orderFuture.join();
+        if (orderResult.isEmpty() || (!staff && !orderResult.get(0).get(5).equals(authorisedUser))) {
+            System.out.println("\nError: Order not found or you do not have permission to view it.");
+            return;
+        }
+
+        // Step 4: Extract order details with correctly matched labels
+        List<String> order = orderResult.get(0);
+
+        System.out.println("\n=========================================");
+        System.out.println(" Order ID:      " + order.get(0));
+        System.out.println(" Store ID:      " + order.get(1));
+        System.out.println(" Total Price:   $" + order.get(2));
+        System.out.println(" Status:        " + order.get(3));
+        System.out.println(" Ordered On:    " + order.get(4));
+
+        if (staff) {
+            System.out.println(" Customer:      " + order.get(5)); // Managers & Drivers can see customer name
+        }
+        System.out.println("=========================================");
+
+        // Step 5: Show items in the order
+        List<List<String>> itemResults = itemFuture.join();
+
+        System.out.println("\nItems in Order:");
+        if (itemResults.isEmpty()) {
+            System.out.println(" - No items found.");
+        } else {
+            for (List<String> item : itemResults) {
+                System.out.println(" - " + item.get(0) + " (x" + item.get(1) + ")");
+            }
+        }
+
+        System.out.println("=========================================");
+
+    } catch (Exception e) {
+        System.out.println("\nError retrieving order details. Please try again.");
+    }
+}
+
+    // VIEW STORES FUNCTION: Displays a list of all stores with their details
+public static void viewStores(PizzaStore esql) {
+    try {
+        // Ensure user is logged in before accessing store information
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 1: Fetch all stores, from memory unless they changed or expired
+        List<StoreAvailability.Store> stores = StoreAvailability.stores(esql);
+
+        // Step 2: Check if stores exist
+        if (stores.isEmpty()) {
+            System.out.println("\nNo stores available.");
+            return;
+        }
+
+        // Step 3: Display store details in a simple list format
+        System.out.println("\n================ STORES LIST ================");
+        for (StoreAvailability.Store store : stores) {
+            System.out.println("\nStore ID:      " + store.storeID);
+            System.out.println("Address:       " + store.address);
+            System.out.println("Review Score:  " + store.reviewScore);
+            System.out.println("Open Status:   " + store.status());
+            System.out.println("=============================================");
+        }
+
+    } catch (Exception e) {
+        System.out.println("\nError retrieving store information. Please try again.");
+    }
+}
+
+    // UPDATE ORDER STATUS FUNCTION: Allows managers & drivers to update order status
+public static void updateOrderStatus(PizzaStore esql) {
+    try {
+        // Step 1: Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Verify that the user is either a manager or a driver
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty()) {
+            System.out.println("\nError: User role not found.");
+            return;
+        }
+
+        Role userRole = Role.parse(roleResult.get(0).get(0));
+
+        if (!userRole.isStaff()) {
+            System.out.println("\nAccess Denied! Only managers or drivers can update order status.");
+            return;
+        }
+
+        // Step 3: Display all existing orders
+        System.out.println("\n========== ALL ORDERS ==========");
+        String viewOrdersQuery = "SELECT f.orderID, u.login AS Customer, f.storeID, f.totalPrice, f.orderStatus FROM FoodOrder f JOIN Users u ON u.userID = f.userID";
+        System.out.println("orderid\tcustomer\tstoreid\ttotalprice\torderstatus\t");
+        for (List<String> row : esql.executeQueryOnAllShards(viewOrdersQuery, -1, false, -1)) {
+            System.out.println(String.join("\t", row) + "\t");
+        }
+
+        // Step 4: Ask user for the Order ID to update
+        System.out.print("\nEnter the Order ID to update: ");
+        int orderID = Integer.parseInt(in.readLine().trim());
+
+        // Step 5: Check if the entered order ID exists, and where
+        String checkOrderQuery = "SELECT f.orderStatus, f.storeID, u.login FROM FoodOrder f JOIN Users u ON u.userID = f.userID WHERE f.orderID = " + orderID;
+        List<List<String>> orderResult = esql.executeQueryOnAllShards(checkOrderQuery, -1, false, -1);
+
+        if (orderResult.isEmpty()) {
+            System.out.println("\nError: Order ID not found.");
+            return;
+        }
+
+        // Step 6: Show possible status options
+        System.out.println("\nPossible Status Options:");
+        for (OrderStatus option : OrderStatus.values()) {
+            System.out.println(" - " + option.label);
+        }
+        System.out.print("\nEnter the new order status: ");
+        OrderStatus newStatus = OrderStatus.parse(in.readLine());
+
+        // Step 7: Validate input status
+        if (newStatus == null) {
+            System.out.println("\nError: Invalid status. Please enter a valid status.");
+            return;
+        }
+
+        // Step 8: Update order status in the database owning the order
+        String updateQuery = "UPDATE FoodOrder SET orderStatus = '" + newStatus.label + "' WHERE orderID = " + orderID;
+        esql.useStore(Integer.parseInt(orderResult.get(0).get(1)));
+        try {
+            esql.executeUpdate(updateQuery);
+        } finally {
+            esql.useHome();
+        }
+
+        OrderEvents.get().publish(orderID, orderResult.get(0).get(2), newStatus.label);
+        KitchenQueue.get().statusChanged(orderID, Integer.parseInt(orderResult.get(0).get(1)), newStatus);
+        System.out.println("\n✅ Order status updated successfully!");
+
+    } catch (NumberFormatException e) {
+        System.out.println("\nError: Invalid Order ID format. Please enter a number.");
+    } catch (Exception e) {
+        System.out.println("\nError updating order status. Please try again.");
+    }
+}
+
+    // UPDATE MENU FUNCTION: Allows managers to view, update, and add menu items
+public static void updateMenu(PizzaStore esql) {
+    try {
+        // Step 1: Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Verify that the user is a manager
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty() || Role.parse(roleResult.get(0).get(0)) != Role.MANAGER) {
+            System.out.println("\nAccess Denied! Only managers can modify the menu.");
+            return;
+        }
+
+        while (true) {
+            // Step 3: Display menu options for managers
+            System.out.println("\n===== MENU MANAGEMENT =====");
+            System.out.println("1. View Menu");
+            System.out.println("2. Update Menu Item");
+            System.out.println("3. Add New Menu Item");
+            System.out.println("4. Go Back");
+            System.out.print("Choose an option: ");
+            int choice = readChoice();
+
+            if (choice == 4) {
+                System.out.println("\nReturning to main menu...");
+                break;
+            }
+
+            switch (choice) {
+                case 1:
+                    // View all menu items
+                    System.out.println("\nDisplaying menu...");
+                    String viewQuery = "SELECT itemName, typeOfItem, price, description FROM Items";
+                    esql.executeQueryAndPrintResult(viewQuery);
+                    break;
+
+                case 2:
+                    // Update an existing menu item
+                    System.out.print("\nEnter the name of the item to update: ");
+                    String itemName = in.readLine().trim();
+
+                    // Check if the item exists
+                    String checkQuery = "SELECT * FROM Items WHERE itemName = '" + itemName + "'";
+                    List<List<String>> itemCheck = esql.executeQueryAndReturnResult(checkQuery);
+
+                    if (itemCheck.isEmpty()) {
+                        System.out.println("\nError: Item not found in the menu.");
+                        break;
+                    }
+
+                    // Ask what to update
+                    System.out.println("\nWhat would you like to update?");
+                    System.out.println("1. Price");
+                    System.out.println("2. Ingredients");
+                    System.out.println("3. Description");
+                    System.out.print("Choose an option: ");
+                    int updateChoice = readChoice();
+
+                    String column = "", newValue = "";
+
+                    switch (updateChoice) {
+                        case 1:
+                            System.out.print("\nEnter new price: ");
+                            newValue = Money.format(Money.parse(in.readLine()));
+                            column = "price";
+                            break;
+                        case 2:
+                            System.out.print("\nEnter new ingredients (comma-separated): ");
+                            newValue = "'" + in.readLine().trim() + "'";
+                            column = "ingredients";
+                            break;
+                        case 3:
+                            System.out.print("\nEnter new description: ");
+                            newValue = "'" + in.readLine().trim() + "'";
+                            column = "description";
+                            break;
+                        default:
+                            System.out.println("\nInvalid choice. Returning to menu.");
+                            continue;
+                    }
+
+                    // Execute the update query
+                    String updateQuery = "UPDATE Items SET " + column + " = " + newValue + " WHERE itemName = '" + itemName + "'";
+                    esql.executeUpdate(updateQuery);
+                    esql.replicate("Items", "itemName", "itemName = '" + itemName + "'");
+                    MenuCache.reload(esql, itemName);
+                    System.out.println("\n✅ Menu item updated successfully!");
+                    break;
+
+                case 3:
+                    // Add a new menu item
+                    System.out.print("\nEnter new item name: ");
+                    String newItemName = in.readLine().trim();
+
+                    // Check if item already exists
+                    String checkNewItemQuery = "SELECT * FROM Items WHERE itemName = '" + newItemName + "'";
+                    List<List<String>> newItemCheck = esql.executeQueryAndReturnResult(checkNewItemQuery);
+
+                    if (!newItemCheck.isEmpty()) {
+                        System.out.println("\nError: Item already exists in the menu.");
+                        break;
+                    }
+
+                    // Gather details
+                    System.out.print("Enter ingredients (comma-separated): ");
+                    String ingredients = in.readLine().trim();
+                    System.out.print("Enter type of item (Pizza, Burger, Drink, etc.): ");
+                    String typeOfItem = in.readLine().trim();
+                    System.out.print("Enter price: ");
+                    long price = Money.parse(in.readLine());
+                    System.out.print("Enter description: ");
+                    String description = in.readLine().trim();
+
+                    // Insert new item into the menu
+                    String addItemQuery = "INSERT INTO Items (itemName, ingredients, typeOfItem, price, description) " +
+                                          "VALUES ('" + newItemName + "', '" + ingredients + "', '" + typeOfItem + "', " + Money.format(price) + ", '" + description + "')";
+                    esql.executeUpdate(addItemQuery);
+                    esql.replicate("Items", "itemName", "itemName = '" + newItemName + "'");
+                    MenuCache.reload(esql, newItemName);
+                    System.out.println("\n✅ New menu item added successfully!");
+                    break;
+
+                default:
+                    System.out.println("\nInvalid choice. Try again.");
+            }
+        }
+    } catch (Exception e) {
+        System.out.println("\nError updating menu. Please try again.");
+    }
+}
+
+
+// UPDATE USER FUNCTION - Allows a manager to view users, update usernames, and change user roles
+public static void updateUser(PizzaStore esql) {
+    try {
+        // Step 1: Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Verify that the user is a manager
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty() || Role.parse(roleResult.get(0).get(0)) != Role.MANAGER) {
+            System.out.println("\nAccess Denied! Only managers can update user information.");
+            return;
+        }
+
+        while (true) {
+            // Step 3: Display user management options
+            System.out.println("\n===== USER MANAGEMENT =====");
+            System.out.println("1. View All Users");
+            System.out.println("2. Update a User’s Login ID");
+            System.out.println("3. Change a User’s Role");
+            System.out.println("4. Import Users from CSV");
+            System.out.println("5. Change Roles in Bulk");
+            System.out.println("6. Go Back");
+            System.out.print("Choose an option: ");
+            int choice = readChoice();
+
+            if (choice == 6) {
+                System.out.println("\nReturning to main menu...");
+                break;
+            }
+
+            switch (choice) {
+                case 1:
+                    // View all users
+                    System.out.println("\nDisplaying all users...");
+                    String viewUsersQuery = "SELECT login, role, phonenum, favoriteitems FROM Users";
+                    esql.executeQueryAndPrintResult(viewUsersQuery);
+                    break;
+
+                case 2:
+                    // Update a user's login ID
+                    System.out.print("\nEnter the current login ID: ");
+                    String oldLogin = in.readLine().trim();
+
+                    // Step 4: Check if the user exists
+                    String checkUserQuery = "SELECT login FROM Users WHERE login = '" + oldLogin + "'";
+                    List<List<String>> userCheck = esql.executeQueryAndReturnResult(checkUserQuery);
+
+                    if (userCheck.isEmpty()) {
+                        System.out.println("\nError: User not found.");
+                        break;
+                    }
+
+                    System.out.print("Enter the new login ID: ");
+                    String newLogin = in.readLine().trim();
+
+                    // Step 5: Ensure the new login ID is unique
+                    String checkNewUserQuery = "SELECT login FROM Users WHERE login = '" + newLogin + "'";
+                    List<List<String>> newUserCheck = esql.executeQueryAndReturnResult(checkNewUserQuery);
+
+                    if (!newUserCheck.isEmpty()) {
+                        System.out.println("\nError: This login ID is already taken. Please choose another.");
+                        break;
+                    }
+
+                    // Step 6: Update the login ID
+                    String updateQuery = "UPDATE Users SET login = '" + newLogin + "' WHERE login = '" + oldLogin + "'";
+                    esql.executeUpdate(updateQuery);
+                    esql.replicate("Users", "userID", "login = '" + newLogin + "'");
+                    System.out.println("\n✅ Username successfully updated!");
+                    break;
+
+                case 3:
+                    // Change a user's role
+                    System.out.print("\nEnter the login ID of the user: ");
+                    String userToChangeRole = in.readLine().trim();
+
+                    // Step 7: Check if the user exists
+                    String checkRoleUserQuery = "SELECT role FROM Users WHERE login = '" + userToChangeRole + "'";
+                    List<List<String>> roleUserCheck = esql.executeQueryAndReturnResult(checkRoleUserQuery);
+
+                    if (roleUserCheck.isEmpty()) {
+                        System.out.println("\nError: User not found.");
+                        break;
+                    }
+
+                    Role currentRole = Role.parse(roleUserCheck.get(0).get(0));
+
+                    System.out.print("\nEnter the new role (customer, driver, manager): ");
+                    Role newRole = Role.parse(in.readLine());
+
+                    // Step 8: Validate the new role
+                    if (newRole == null) {
+                        System.out.println("\nError: Invalid role! Role must be 'customer', 'driver', or 'manager'.");
+                        break;
+                    }
+
+                    if (currentRole == newRole) {
+                        System.out.println("\nThe user is already assigned the role: " + newRole);
+                        break;
+                    }
+
+                    // Step 9: Update the user's role
+                    String updateRoleSQL = "UPDATE Users SET role = '" + newRole.label + "' WHERE login = '" + userToChangeRole + "'";
+                    esql.executeUpdate(updateRoleSQL);
+                    esql.replicate("Users", "userID", "login = '" + userToChangeRole + "'");
+                    System.out.println("\n✅ User role successfully updated!");
+                    break;
+
+                case 4:
+                    // Import many users at once from a file in the users.csv layout
+                    System.out.print("\nEnter the path of the CSV file (login,password,role,favoriteItems,phoneNum): ");
+                    File importFile = new File(in.readLine().trim());
+                    if (!importFile.isFile()) {
+                        System.out.println("\nError: File not found.");
+                        break;
+                    }
+                    // gets the long statement timeout; the rest of updateUser keeps its own
+                    String importOperation = QueryMetrics.currentOperation();
+                    QueryMetrics.setOperation("bulkUsers");
+                    try {
+                        printBulkReport(BulkUsers.importCsv(esql, importFile));
+                    } finally {
+                        QueryMetrics.setOperation(importOperation);
+                    }
+                    break;
+
+                case 5:
+                    // Change many roles at once, from a file or typed lines of login,role
+                    System.out.print("\nEnter a file of login,role lines, or press Enter to type them: ");
+                    String roleFile = in.readLine().trim();
+                    List<String[]> changes = new ArrayList<String[]>();
+                    BufferedReader source = roleFile.isEmpty() ? in : new BufferedReader(new FileReader(roleFile));
+                    if (roleFile.isEmpty()) {
+                        System.out.println("Enter login,role per line; finish with an empty line:");
+                    }
+                    String roleLine;
+                    while ((roleLine = source.readLine()) != null && !(roleFile.isEmpty() && roleLine.trim().isEmpty())) {
+                        changes.add(roleLine.split(",", -1));
+                    }
+                    if (!roleFile.isEmpty()) {
+                        source.close();
+                    }
+                    String rolesOperation = QueryMetrics.currentOperation();
+                    QueryMetrics.setOperation("bulkUsers");
+                    try {
+                        printBulkReport(BulkUsers.changeRoles(esql, changes));
+                    } finally {
+                        QueryMetrics.setOperation(rolesOperation);
+                    }
+                    break;
+
+                default:
+                    System.out.println("\nInvalid choice. Try again.");
+            }
+        }
+    } catch (Exception e) {
+        System.out.println("\nError updating user. Please try again.");
+    }
+
+
+}//end PizzaStore
+
+// VIEW AUDIT LOG FUNCTION - Lets a manager read the order and role history kept by the audit triggers
+public static void viewAuditLog(PizzaStore esql) {
+    try {
+        // Step 1: Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Verify that the user is a manager
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty() || Role.parse(roleResult.get(0).get(0)) != Role.MANAGER) {
+            System.out.println("\nAccess Denied! Only managers can view the audit log.");
+            return;
+        }
+
+        while (true) {
+            // Step 3: Display audit options
+            System.out.println("\n===== AUDIT LOG =====");
+            System.out.println("1. Status Timeline of an Order");
+            System.out.println("2. Role Changes of a User");
+            System.out.println("3. Orders Placed in a Time Window");
+            System.out.println("4. Go Back");
+            System.out.print("Choose an option: ");
+            int choice = readChoice();
+
+            if (choice == 4) {
+                System.out.println("\nReturning to main menu...");
+                break;
+            }
+
+            // Step 4: Page through the records, each page continuing after the last row
+            // shown (keyset pagination) so every page is one short index range scan
+            switch (choice) {
+                case 1:
+                    System.out.print("\nEnter the Order ID: ");
+                    int orderID = Integer.parseInt(in.readLine().trim());
+                    List<List<String>> placed = esql.executeQueryOnAllShards(
+                        "SELECT login, storeID, totalPrice, orderStatus, placed_by, orderTimestamp FROM OrderLog WHERE orderID = " + orderID,
+                        -1, false, 1);
+                    if (!placed.isEmpty()) {
+                        List<String> p = placed.get(0);
+                        System.out.println("\n" + p.get(5) + "  placed by " + p.get(0) + " at store " + p.get(1) +
+                                           " ($" + p.get(2) + ", " + p.get(3).trim() + ")");
+                    }
+                    pageAuditLog(esql, new String[] { "Timestamp", "Old Status", "New Status", "Changed By" },
+                        "SELECT change_timestamp, old_status, new_status, changed_by, log_id FROM OrderStatusLog" +
+                        " WHERE orderID = " + orderID + " AND log_id > %s ORDER BY log_id LIMIT " + AUDIT_PAGE_SIZE,
+                        "0", true);
+                    break;
+
+                case 2:
+                    System.out.print("\nEnter the login ID of the user: ");
+                    String login = in.readLine().trim();
+                    pageAuditLog(esql, new String[] { "Timestamp", "Old Role", "New Role", "Changed By" },
+                        "SELECT change_timestamp, old_role, new_role, changed_by, log_id FROM RoleChangeLog" +
+                        " WHERE user_updated = '" + login + "' AND log_id > %s ORDER BY log_id LIMIT " + AUDIT_PAGE_SIZE,
+                        "0", false);
+                    break;
+
+                case 3:
+                    System.out.print("\nFrom (yyyy-mm-dd [hh:mm]): ");
+                    String from = java.sql.Timestamp.valueOf(toTimestamp(in.readLine())).toString();
+                    System.out.print("To (yyyy-mm-dd [hh:mm]): ");
+                    String to = java.sql.Timestamp.valueOf(toTimestamp(in.readLine())).toString();
+                    pageAuditLog(esql, new String[] { "Timestamp", "OrderID", "Customer", "StoreID", "Total Price" },
+                        "SELECT orderTimestamp, orderID, login, storeID, totalPrice, log_id FROM OrderLog" +
+                        " WHERE orderTimestamp < '" + to + "' AND (orderTimestamp, log_id) > %s" +
+                        " ORDER BY orderTimestamp, log_id LIMIT " + AUDIT_PAGE_SIZE,
+                        "('" + from + "', 0)", true);
+                    break;
+
+                default:
+                    System.out.println("\nInvalid choice. Try again.");
+            }
+        }
+    } catch (Exception e) {
+        System.out.println("\nError reading the audit log. Please try again.");
+    }
+}
+
+    // rows per page of the audit log
+    static final int AUDIT_PAGE_SIZE = 20;
+
+    // Prints an audit query page by page.  The query's last column is log_id and %s stands
+    // for the position after the previous page: the log_id alone, or "(timestamp, log_id)"
+    // when the query is ordered by its first column.  log_ids are numbered per database,
+    // so with allShards each database keeps its own position and the rows are merged on
+    // (timestamp, database, log_id).
+    static void pageAuditLog(PizzaStore esql, String[] headers, String query, String start, boolean allShards) throws Exception {
+        boolean byTime = start.startsWith("(");
+        String[] after = new String[allShards ? esql.databaseCount() : 1];
+        Arrays.fill(after, start);
+        for (int page = 1; ; page++) {
+            String[] pageQueries = new String[after.length];
+            for (int d = 0; d < after.length; d++) pageQueries[d] = String.format(query, after[d]);
+            List<List<List<String>>> parts = allShards ?
+                esql.executeQueryOnEachShard(pageQueries) :
+                Arrays.asList(esql.executeQueryAndReturnResult(pageQueries[0]));
+
+            // Merge the databases' rows, remembering which database each came from
+            List<int[]> merged = new ArrayList<int[]>();
+            boolean more = false;
+            for (int d = 0; d < parts.size(); d++) {
+                for (int i = 0; i < parts.get(d).size(); i++) merged.add(new int[] { d, i });
+                if (parts.get(d).size() >= AUDIT_PAGE_SIZE) more = true;
+            }
+            if (byTime) {
+                merged.sort((a, b) -> {
+                    int c = String.valueOf(parts.get(a[0]).get(a[1]).get(0)).compareTo(String.valueOf(parts.get(b[0]).get(b[1]).get(0)));
+                    return c != 0 ? c : a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]);
+                });
+            }
+            if (merged.size() > AUDIT_PAGE_SIZE) {
+                merged = merged.subList(0, AUDIT_PAGE_SIZE);
+                more = true;
+            }
+            List<List<String>> rows = new ArrayList<List<String>>();
+            for (int[] at : merged) {
+                List<String> row = parts.get(at[0]).get(at[1]);
+                rows.add(row);
+                // Each database continues after the last of its rows shown
+                String logID = row.get(row.size() - 1).trim();
+                after[at[0]] = byTime ? "('" + row.get(0).trim() + "', " + logID + ")" : logID;
+            }
+            if (rows.isEmpty()) {
+                System.out.println(page == 1 ? "\nNo audit records found." : "\nNo more records.");
+                return;
+            }
+
+            StringBuilder format = new StringBuilder("%-28s");
+            for (int i = 1; i < headers.length; i++) format.append(" %-20s");
+            System.out.printf("\n" + format + "\n", (Object[]) headers);
+            System.out.println("------------------------------------------------------------");
+            for (List<String> row : rows) {
+                Object[] values = new Object[headers.length];
+                for (int i = 0; i < headers.length; i++) values[i] = row.get(i) == null ? "" : row.get(i).trim();
+                System.out.printf(format + "\n", values);
+            }
+
+            if (!more) return;
+            System.out.print("\nPress Enter for the next page, or q to stop: ");
+            if (in.readLine().trim().equalsIgnoreCase("q")) return;
+        }
+    }
+
+    // Accepts "yyyy-mm-dd" or "yyyy-mm-dd hh:mm" and returns it in JDBC timestamp format
+    static String toTimestamp(String text) {
+        text = text.trim();
+        if (text.length() == 10) return text + " 00:00:00";
+        if (text.length() == 16) return text + ":00";
+        return text;
+    }
+
+// DELIVERY TIMES FUNCTION - Shows, per store, how long orders spend in each status and which are stuck
+public static void viewDeliveryTimes(PizzaStore esql) {
+    try {
+        // Step 1: Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Verify that the user is a manager
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty() || Role.parse(roleResult.get(0).get(0)) != Role.MANAGER) {
+            System.out.println("\nAccess Denied! Only managers can view delivery times.");
+            return;
+        }
+
+        // Step 3: Fold in the status changes logged since the last report
+        DeliverySlaTracker tracker = DeliverySlaTracker.get();
+        tracker.refresh(esql);
+
+        // Step 4: Print time spent per store and status
+        System.out.println("\n===== TIME IN STATUS (minutes) =====");
+        List<String[]> report = tracker.percentiles();
+        if (report.isEmpty()) {
+            System.out.println("No status changes recorded yet.");
+        } else {
+            System.out.printf("%-10s %-20s %-10s %-10s %-10s %-10s\n", "StoreID", "Status", "Orders", "p50", "p95", "p99");
+            System.out.println("------------------------------------------------------------------------");
+            for (String[] row : report) {
+                System.out.printf("%-10s %-20s %-10s %-10.1f %-10.1f %-10.1f\n", row[0], row[1], row[2],
+                        Long.parseLong(row[3]) / 60.0, Long.parseLong(row[4]) / 60.0, Long.parseLong(row[5]) / 60.0);
+            }
+        }
+
+        // Step 5: Print orders stuck in a status
+        List<String[]> stuck = tracker.stuck(System.currentTimeMillis());
+        System.out.println("\n===== STUCK ORDERS =====");
+        if (stuck.isEmpty()) {
+            System.out.println("None.");
+        } else {
+            System.out.printf("%-10s %-10s %-20s %-10s\n", "OrderID", "StoreID", "Status", "Minutes");
+            System.out.println("------------------------------------------------------");
+            for (String[] row : stuck) {
+                System.out.printf("%-10s %-10s %-20s %-10s\n", row[0], row[1], row[2], row[3]);
+            }
+        }
+
+    } catch (Exception e) {
+        System.out.println("\nError computing delivery times. Please try again.");
+    }
+}
+
+// KITCHEN DISPLAY FUNCTION - Shows a store's open orders, oldest first, refreshed from memory
+public static void viewKitchenQueue(PizzaStore esql) {
+    try {
+        // Step 1: Ensure user is logged in
+        if (authorisedUser == null) {
+            System.out.println("\nError: No user logged in. Please log in first.");
+            return;
+        }
+
+        // Step 2: Verify that the user is either a manager or a driver
+        String roleQuery = "SELECT role FROM Users WHERE login = '" + authorisedUser + "'";
+        List<List<String>> roleResult = esql.executeQueryAndReturnResult(roleQuery);
+
+        if (roleResult.isEmpty()) {
+            System.out.println("\nError: User role not found.");
+            return;
+        }
+
+        Role userRole = Role.parse(roleResult.get(0).get(0));
+
+        if (!userRole.isStaff()) {
+            System.out.println("\nAccess Denied! Only managers or drivers can view the kitchen queue.");
+            return;
+        }
+
+        // Step 3: Ask for the store
+        System.out.print("\nEnter the Store ID: ");
+        int storeID = Integer.parseInt(in.readLine().trim());
+
+        // Step 4: Show the queue until the user quits; each refresh reads KitchenQueue only
+        while (true) {
+            int[] notShown = new int[1];
+            List<KitchenQueue.Ticket> tickets = KitchenQueue.get().snapshot(esql, storeID, notShown);
+            long now = System.currentTimeMillis();
+
+            System.out.println("\n===== KITCHEN QUEUE - STORE " + storeID + " =====");
+            if (tickets.isEmpty()) {
+                System.out.println("No open orders.");
+            } else {
+                System.out.printf("%-5s %-10s %-15s %-12s %-18s %-10s\n", "#", "OrderID", "Customer", "Total Price", "Order Status", "Waiting");
+                System.out.println("------------------------------------------------------------------------");
+                int position = 1;
+                for (KitchenQueue.Ticket t : tickets) {
+                    System.out.printf("%-5d %-10d %-15s $%-11s %-18s %d min\n", position++, t.orderID, t.login,
+                            t.totalPrice, t.status, Math.max(0, now - t.placedAt) / 60000);
+                }
+            }
+            if (notShown[0] > 0) {
+                System.out.println("(+" + notShown[0] + " newer open orders not shown)");
+            }
+
+            System.out.print("\nPress Enter to refresh, or q to go back: ");
+            if (in.readLine().trim().equalsIgnoreCase("q")) break;
+        }
+
+    } catch (NumberFormatException e) {
+        System.out.println("\nError: Invalid Store ID format. Please enter a number.");
+    } catch (Exception e) {
+        System.out.println("\nError loading the kitchen queue. Please try again.");
+    }
+}
+
+    // Prints the outcome of a bulk user operation, including every rejected row
+    static void printBulkReport(BulkUsers.Report report) {
+        System.out.println("\n✅ Bulk update done: " + report.inserted + " users added, " + report.updated +
+                           " updated, " + report.roleChanges + " role changes.");
+        if (!report.errors.isEmpty()) {
+            System.out.println("\n" + report.errors.size() + " rows were rejected or replaced:");
+            for (String error : report.errors) {
+                System.out.println(" - " + error);
+            }
+        }
+    }
+
+}
@@ -2,10 +2,11 @@
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
 
-# compile the java program
-javac -d $DIR/../classes $DIR/../src/PizzaStore.java
+# build the modules; Maven fetches the JDBC driver (pgjdbc 42.x) and copies
+# it next to the CLI jar
+mvn -q -B -f $DIR/pom.xml package || exit 1
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar PizzaStore $USER"_project_phase_3_DB" $PGPORT $USER
+java -jar $DIR/cli/target/pizzastore-cli.jar $USER"_project_phase_3_DB" $PGPORT $USER
 
@@ -0,0 +1,427 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class limits how many statements run against the database at once.
+ * Every statement issued through the PizzaStore execute methods, and every
+ * transaction as a whole, first takes a slot in the lane of the running
+ * operation:
+ *
+ *    ORDERS   placeOrder, reorder, updateOrderStatus, viewKitchenQueue
+ *    REPORTS  viewAllOrders, viewAuditLog, viewDeliveryTimes
+ *    READS    everything else (menu, stores, profile, ...)
+ *
+ * Each lane has its own limit and all lanes share pizzastore.admitCapacity
+ * slots (default 8).  A statement that finds no slot waits in its lane's
+ * queue, at most pizzastore.admitQueue deep (default 32) and at most
+ * pizzastore.admitTimeoutMs (default 3000); otherwise it is rejected and the
+ * user is asked to retry.  Freed slots go to waiting orders first, then
+ * reads, then reports, so analytics never delay an order.
+ *
+ * Limits: pizzastore.admitOrders (default 8), pizzastore.admitReads
+ * (default 6) and pizzastore.admitReports (default 2).
+ *
+ * These limits only bound one process.  With pizzastore.sharedAdmission=true
+ * a statement admitted here also takes one of its lane's shared slots on the
+ * home database, to bound the load of all terminals together: session
+ * advisory locks, taken by admission_acquire() on a connection of their own
+ * and given back by admission_release().  Every process sees the same
+ * slots, so at most pizzastore.sharedOrders (default 32),
+ * pizzastore.sharedReads (default 24) and pizzastore.sharedReports (default
+ * 4) statements run at once across all terminals; a terminal that dies frees
+ * its slots with its connection.  This costs two round trips per statement
+ * on one connection, so it is off by default.  Everything on that
+ * connection, including waiting for it, ends at the statement's admission
+ * deadline (admitTimeoutMs), so a stalled round trip rejects statements
+ * instead of holding up every thread.  If the slots cannot be reached
+ * (functions missing, database down) the local limits alone apply until
+ * pizzastore.sharedRetryMs (default 30000) has passed.
+ *
+ */
+public class AdmissionController {
+
+   /**
+    * Lanes in priority order.
+    */
+   public enum Lane { ORDERS, READS, REPORTS }
+
+   private static final List<String> ORDER_OPERATIONS =
+      Arrays.asList("placeOrder", "reorder", "updateOrderStatus", "viewKitchenQueue");
+   private static final List<String> REPORT_OPERATIONS =
+      Arrays.asList("viewAllOrders", "viewAuditLog", "viewDeliveryTimes");
+
+   private static final AdmissionController INSTANCE = new AdmissionController();
+
+   /**
+    * Thrown instead of running a statement when its lane is overloaded.
+    */
+   public static class Rejected extends SQLException {
+      private static final long serialVersionUID = 1L;
+
+      Rejected(String message) {
+         // too_many_connections, as the server would answer
+         super(message, "53300");
+      }
+   }//end Rejected
+
+   private final ReentrantLock lock = new ReentrantLock();
+   private final Condition[] turn = new Condition[Lane.values().length];
+   private final int capacity = Integer.getInteger("pizzastore.admitCapacity", 8);
+   private final int queueLimit = Integer.getInteger("pizzastore.admitQueue", 32);
+   private final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("pizzastore.admitTimeoutMs", 3000L));
+   private final int[] limit = {
+      Integer.getInteger("pizzastore.admitOrders", 8),
+      Integer.getInteger("pizzastore.admitReads", 6),
+      Integer.getInteger("pizzastore.admitReports", 2) };
+
+   // all guarded by lock
+   private final int[] running = new int[Lane.values().length];
+   private final int[] queued = new int[Lane.values().length];
+   private final long[] admitted = new long[Lane.values().length];
+   private final long[] rejected = new long[Lane.values().length];
+   private final long[] maxWaitNanos = new long[Lane.values().length];
+   private int runningTotal = 0;
+
+   // the lane whose slot this thread holds, so nested statements pass
+   private final ThreadLocal<Lane> held = new ThreadLocal<Lane>();
+   private final AtomicBoolean shed = new AtomicBoolean(false);
+
+   // shared slots; the connection, the held flags and the generation are
+   // guarded by sharedLock, which is only ever waited for until a deadline
+   private final boolean sharedEnabled = Boolean.getBoolean("pizzastore.sharedAdmission");
+   private final long sharedRetryMs = Long.getLong("pizzastore.sharedRetryMs", 30000L);
+   private final int[] sharedLimit = {
+      Integer.getInteger("pizzastore.sharedOrders", 32),
+      Integer.getInteger("pizzastore.sharedReads", 24),
+      Integer.getInteger("pizzastore.sharedReports", 4) };
+   private final ReentrantLock sharedLock = new ReentrantLock();
+   private final boolean[][] sharedHeld = {
+      new boolean[sharedLimit[0]], new boolean[sharedLimit[1]], new boolean[sharedLimit[2]] };
+   private volatile Callable<Connection> sharedSource = null;
+   private Connection sharedConn = null;
+   private volatile long sharedDownUntil = 0;
+   // bumped whenever the shared connection is dropped, with the slots it held
+   private int sharedGeneration = 0;
+   // the shared slot this thread holds and its generation; null when none
+   private final ThreadLocal<int[]> heldSlot = new ThreadLocal<int[]>();
+   // lane, slot and generation of slots handed back while sharedLock was
+   // busy; whoever holds it next releases them
+   private final ConcurrentLinkedQueue<int[]> sharedReleases = new ConcurrentLinkedQueue<int[]>();
+
+   private AdmissionController() {
+      for (int i = 0; i < turn.length; i++)
+         turn[i] = lock.newCondition();
+   }//end AdmissionController
+
+   public static AdmissionController get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Lets admission take shared slots on connections from source, which
+    * should open a new connection to the home database.
+    */
+   public void share(Callable<Connection> source) {
+      if (sharedEnabled) sharedSource = source;
+   }//end share
+
+   /**
+    * Takes a slot for the current operation, waiting if needed.  A thread
+    * that already holds a slot (inside a transaction) passes straight
+    * through.
+    *
+    * @return the lane to hand back to exit(), or null if nothing was taken
+    * @throws Rejected when the lane's queue is full or the wait timed out
+    */
+   public Lane enter() throws Rejected {
+      if (held.get() != null) return null;
+      Lane lane = laneOf(QueryMetrics.currentOperation());
+      int l = lane.ordinal();
+      long waitStart = System.nanoTime();
+      lock.lock();
+      try {
+         if (!canRun(l)) {
+            if (queued[l] >= queueLimit) throw reject(l, "queue full");
+            queued[l]++;
+            try {
+               long remaining = timeoutNanos;
+               while (!canRun(l)) {
+                  if (remaining <= 0) throw reject(l, "timed out");
+                  remaining = turn[l].awaitNanos(remaining);
+               }
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw reject(l, "interrupted");
+            } finally {
+               queued[l]--;
+            }
+         }
+         running[l]++;
+         runningTotal++;
+         admitted[l]++;
+         maxWaitNanos[l] = Math.max(maxWaitNanos[l], System.nanoTime() - waitStart);
+      } finally {
+         lock.unlock();
+      }
+      held.set(lane);
+      try {
+         heldSlot.set(acquireShared(l, waitStart + timeoutNanos));
+      } catch (Rejected e) {
+         exit(lane);
+         throw e;
+      }
+      return lane;
+   }//end enter
+
+   /**
+    * Gives back a slot taken by enter().
+    *
+    * @param lane the value enter() returned; null is ignored
+    */
+   public void exit(Lane lane) {
+      if (lane == null) return;
+      held.remove();
+      int[] slot = heldSlot.get();
+      heldSlot.remove();
+      if (slot != null) releaseShared(lane.ordinal(), slot);
+      lock.lock();
+      try {
+         running[lane.ordinal()]--;
+         runningTotal--;
+         for (int i = 0; i < turn.length; i++)
+            if (queued[i] > 0) turn[i].signalAll();
+      } finally {
+         lock.unlock();
+      }
+   }//end exit
+
+   /**
+    * @return true once after any statement was rejected, so the user can be
+    *         told to retry
+    */
+   public boolean takeShed() {
+      return shed.getAndSet(false);
+   }//end takeShed
+
+   /**
+    * @return one line per lane: running, queued, admitted and rejected
+    *         statements and the longest wait for a slot
+    */
+   public String[] summaries() {
+      List<String> lines = new ArrayList<String>();
+      lock.lock();
+      try {
+         for (Lane lane : Lane.values()) {
+            int l = lane.ordinal();
+            lines.add(String.format("%-8s running=%d/%d queued=%d/%d admitted=%d rejected=%d maxWait=%dms",
+                  lane, running[l], limit[l], queued[l], queueLimit, admitted[l], rejected[l],
+                  TimeUnit.NANOSECONDS.toMillis(maxWaitNanos[l])));
+         }
+         lines.add(String.format("capacity running=%d/%d", runningTotal, capacity));
+         lines.add("shared   " + (sharedSource == null ? "off" :
+            System.currentTimeMillis() < sharedDownUntil ? "unreachable, local limits only" :
+            "orders=" + sharedLimit[0] + " reads=" + sharedLimit[1] + " reports=" + sharedLimit[2]));
+      } finally {
+         lock.unlock();
+      }
+      return lines.toArray(new String[0]);
+   }//end summaries
+
+   /**
+    * @return statements rejected in all lanes
+    */
+   public long rejectedCount() {
+      lock.lock();
+      try {
+         long total = 0;
+         for (long r : rejected) total += r;
+         return total;
+      } finally {
+         lock.unlock();
+      }
+   }//end rejectedCount
+
+   static Lane laneOf(String operation) {
+      if (ORDER_OPERATIONS.contains(operation)) return Lane.ORDERS;
+      if (REPORT_OPERATIONS.contains(operation)) return Lane.REPORTS;
+      return Lane.READS;
+   }//end laneOf
+
+   /*
+    * A lane may run when it is under its own limit, a shared slot is free,
+    * and no higher-priority lane is waiting for one it could use.  Caller
+    * holds the lock.
+    */
+   private boolean canRun(int l) {
+      if (running[l] >= limit[l] || runningTotal >= capacity) return false;
+      for (int h = 0; h < l; h++)
+         if (queued[h] > 0 && running[h] < limit[h]) return false;
+      return true;
+   }//end canRun
+
+   /*
+    * Takes a shared slot of lane l, waiting until deadline (System.nanoTime).
+    * Returns the slot and its generation, or null when shared slots are off
+    * or unreachable.
+    */
+   private int[] acquireShared(int l, long deadline) throws Rejected {
+      if (sharedSource == null || System.currentTimeMillis() < sharedDownUntil) return null;
+      long pause = 5;
+      while (true) {
+         try {
+            if (!sharedLock.tryLock(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+               throw rejectShared(l, "shared slots not answering");
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejectShared(l, "interrupted");
+         }
+         int[] taken = null;
+         boolean down = false;
+         try {
+            releasePending();
+            StringBuilder mine = new StringBuilder();
+            for (int s = 0; s < sharedHeld[l].length; s++)
+               if (sharedHeld[l][s]) mine.append(mine.length() == 0 ? "" : ",").append(s);
+            int slot = (int) number("SELECT admission_acquire(" + l + ", " + sharedLimit[l] +
+                                    ", ARRAY[" + mine + "]::int[])", deadline);
+            if (slot >= 0) {
+               sharedHeld[l][slot] = true;
+               taken = new int[] { slot, sharedGeneration };
+            }
+         } catch (SQLException e) {
+            sharedDown(e);
+            down = true;
+         } finally {
+            sharedLock.unlock();
+         }
+         drainReleases();
+         if (taken != null || down) return taken;
+
+         if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause) > deadline)
+            throw rejectShared(l, "all shared slots busy");
+         try {
+            Thread.sleep(pause);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejectShared(l, "interrupted");
+         }
+         pause = Math.min(pause * 2, 100);
+      }
+   }//end acquireShared
+
+   /*
+    * Hands a shared slot back.  When another thread holds sharedLock the
+    * release is left to it instead of waiting.
+    */
+   private void releaseShared(int l, int[] slot) {
+      sharedReleases.add(new int[] { l, slot[0], slot[1] });
+      drainReleases();
+   }//end releaseShared
+
+   // releases queued slots unless another thread holds sharedLock, which
+   // then does it; checked again after unlocking so none is left behind
+   private void drainReleases() {
+      while (!sharedReleases.isEmpty() && sharedLock.tryLock()) {
+         try {
+            releasePending();
+         } finally {
+            sharedLock.unlock();
+         }
+      }
+   }//end drainReleases
+
+   // caller holds sharedLock
+   private void releasePending() {
+      int[] r;
+      while ((r = sharedReleases.poll()) != null) {
+         if (r[2] != sharedGeneration) continue; // the lock went with its connection
+         sharedHeld[r[0]][r[1]] = false;
+         try {
+            number("SELECT admission_release(" + r[0] + ", " + r[1] + ")::int", System.nanoTime() + timeoutNanos);
+         } catch (SQLException e) {
+            sharedDown(e);
+         }
+      }
+   }//end releasePending
+
+   /*
+    * Runs a one-value query on the shared connection, giving up at deadline
+    * (System.nanoTime); caller holds sharedLock.
+    */
+   private long number(String sql, long deadline) throws SQLException {
+      if (sharedConn == null) {
+         try {
+            sharedConn = sharedSource.call();
+         } catch (SQLException e) {
+            throw e;
+         } catch (Exception e) {
+            throw new SQLException(String.valueOf(e.getMessage()), "08001", e);
+         }
+         try {
+            // a dead network ends a round trip as well, not only a slow server
+            sharedConn.setNetworkTimeout(Runnable::run, (int) TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + 1000);
+         } catch (SQLException e) {
+            // the query timeout still applies.
+         }
+      }
+      Statement stmt = sharedConn.createStatement();
+      try {
+         // whole seconds only; a stalled round trip drops the connection below
+         long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+         stmt.setQueryTimeout((int) Math.max(1, (remainingMs + 999) / 1000));
+         ResultSet rs = stmt.executeQuery(sql);
+         rs.next();
+         return rs.getLong(1);
+      } finally {
+         stmt.close();
+      }
+   }//end number
+
+   /*
+    * Falls back to local limits for a while; closing the connection frees
+    * every shared slot it held.  Caller holds sharedLock.
+    */
+   private void sharedDown(SQLException cause) {
+      System.err.println("[admission] shared slots unavailable, using local limits only: " + cause.getMessage());
+      sharedDownUntil = System.currentTimeMillis() + sharedRetryMs;
+      sharedGeneration++;
+      for (boolean[] slots : sharedHeld)
+         Arrays.fill(slots, false);
+      if (sharedConn != null) {
+         try {
+            sharedConn.close();
+         } catch (SQLException e) {
+            // ignored.
+         }
+      }
+      sharedConn = null;
+   }//end sharedDown
+
+   private Rejected rejectShared(int l, String why) {
+      lock.lock();
+      try {
+         return reject(l, why);
+      } finally {
+         lock.unlock();
+      }
+   }//end rejectShared
+
+   // caller holds the lock
+   private Rejected reject(int l, String why) {
+      rejected[l]++;
+      shed.set(true);
+      return new Rejected("Too busy to run " + Lane.values()[l] + " statements right now (" + why + ")");
+   }//end reject
+
+}//end AdmissionController
@@ -0,0 +1,139 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs independent SELECT statements concurrently.  Each worker
+ * thread owns one pooled connection, opened on first use, so statements that
+ * do not depend on each other are sent at the same time and a flow waits for
+ * the slowest one instead of the sum of all of them.
+ *
+ * Only use it for reads that do not need to see the caller's uncommitted
+ * work: the statements do not run on the caller's connection, and those of
+ * read-only operations may be answered by a replica.
+ *
+ */
+public class AsyncQueries {
+
+   private final PizzaStore esql;
+   private final ExecutorService pool;
+   private final List<Connection> connections = new ArrayList<Connection>();
+   private final ThreadLocal<Connection> workerConnection = new ThreadLocal<Connection>();
+
+   /**
+    * @param esql supplies the connection parameters
+    * @param poolSize the number of worker threads and connections
+    */
+   public AsyncQueries(PizzaStore esql, int poolSize) {
+      this.esql = esql;
+      final AtomicInteger count = new AtomicInteger();
+      this.pool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "pizzastore-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }//end AsyncQueries
+
+   /**
+    * Issues a query on a pooled connection.  The statement is admitted and
+    * recorded in QueryMetrics under the caller's operation tag.
+    *
+    * @param query the input query string
+    * @return the query result as a list of records
+    */
+   public CompletableFuture<List<List<String>>> query(final String query) {
+      final String tag = QueryMetrics.currentOperation();
+      return CompletableFuture.supplyAsync(() -> {
+         QueryMetrics.setOperation(tag);
+         long start = QueryMetrics.start();
+         List<List<String>> result = null;
+         SQLException error = null;
+         AdmissionController.Lane lane = null;
+         try {
+            lane = AdmissionController.get().enter();
+            result = Resilience.get().run(true, false, this::dropConnection, () -> {
+               List<List<String>> rows = esql.queryReplica(query);
+               return rows != null ? rows : PizzaStore.returnResult(connection(), query);
+            });
+            return result;
+         } catch (SQLException e) {
+            error = e;
+            throw new CompletionException(e);
+         } finally {
+            AdmissionController.get().exit(lane);
+            QueryMetrics.record(query, start, result == null ? 0 : result.size(), error);
+         }
+      }, pool);
+   }//end query
+
+   /**
+    * Issues several queries at once.
+    *
+    * @return the results in the order of the queries
+    */
+   public CompletableFuture<List<List<List<String>>>> all(String... queries) {
+      final List<CompletableFuture<List<List<String>>>> parts = new ArrayList<CompletableFuture<List<List<String>>>>();
+      for (String q : queries)
+         parts.add(query(q));
+      return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+         List<List<List<String>>> results = new ArrayList<List<List<String>>>();
+         for (CompletableFuture<List<List<String>>> part : parts)
+            results.add(part.join());
+         return results;
+      });
+   }//end all
+
+   private Connection connection() throws SQLException {
+      Connection conn = workerConnection.get();
+      if (conn == null) {
+         conn = esql.openConnection();
+         workerConnection.set(conn);
+         synchronized (connections) {
+            connections.add(conn);
+         }
+      }
+      return conn;
+   }//end connection
+
+   // forgets this worker's connection after it was lost
+   private void dropConnection() {
+      Connection conn = workerConnection.get();
+      if (conn == null) return;
+      workerConnection.remove();
+      synchronized (connections) {
+         connections.remove(conn);
+      }
+      try {
+         conn.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+   }//end dropConnection
+
+   /**
+    * Stops the workers and closes their connections.
+    */
+   public void shutdown() {
+      pool.shutdownNow();
+      synchronized (connections) {
+         for (Connection conn : connections) {
+            try {
+               conn.close();
+            } catch (SQLException e) {
+               // ignored.
+            }
+         }
+         connections.clear();
+      }
+   }//end shutdown
+
+}//end AsyncQueries
@@ -0,0 +1,201 @@
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class applies user changes in bulk: importing a file in the users.csv
+ * layout (login,password,role,favoriteItems,phoneNum) and changing the roles
+ * of many users at once.
+ *
+ * Rows are validated in Java first and every rejected row is reported with
+ * its line number.  The accepted rows are loaded into a temporary table and
+ * applied with one set-based statement per step, all in one transaction.
+ * Role changes are logged by trg_log_role_change as for any other update,
+ * inside the same statement.  With sharding the changed users are copied to
+ * every shard after the commit.
+ *
+ */
+public class BulkUsers {
+
+   // rows per INSERT into the temporary table
+   private static final int CHUNK = 1000;
+
+   /**
+    * Outcome of a bulk operation.
+    */
+   public static class Report {
+      public int inserted = 0;
+      public int updated = 0;
+      public int roleChanges = 0;
+      public final List<String> errors = new ArrayList<String>();
+   }//end Report
+
+   /**
+    * Inserts the users of a CSV file and updates the ones that already exist.
+    *
+    * @param esql the database connection
+    * @param file a file in the users.csv layout, with a header row
+    * @return the counts and the rejected rows
+    */
+   public static Report importCsv(PizzaStore esql, File file) throws Exception {
+      final Report report = new Report();
+      // login -> row; a later row for the same login replaces the earlier one
+      final Map<String, String[]> rows = new LinkedHashMap<String, String[]>();
+      final int[] line = { 1 };
+      SeedCsvReader.read(file, true, new SeedCsvReader.RowHandler() {
+         public void row(ByteBuffer buf, int[] starts, int[] ends, int fieldCount) {
+            line[0]++;
+            if (fieldCount != 5) {
+               report.errors.add("line " + line[0] + ": expected 5 fields, found " + fieldCount);
+               return;
+            }
+            String[] user = new String[5];
+            for (int i = 0; i < 5; i++)
+               user[i] = SeedCsvReader.text(buf, starts[i], ends[i]).trim();
+            String error = validate(user);
+            if (error != null) {
+               report.errors.add("line " + line[0] + " (" + user[0] + "): " + error);
+               return;
+            }
+            if (rows.put(user[0], user) != null)
+               report.errors.add("line " + line[0] + " (" + user[0] + "): duplicate login, this row replaces the earlier one");
+         }
+      });
+      if (rows.isEmpty()) return report;
+
+      esql.beginTransaction(Connection.TRANSACTION_READ_COMMITTED);
+      try {
+         esql.executeUpdate("CREATE TEMP TABLE user_import (login varchar(50) PRIMARY KEY, password varchar(30), " +
+                            "role user_role, favoriteItems text, phoneNum varchar(20)) ON COMMIT DROP");
+         loadChunks(esql, "user_import (login, password, role, favoriteItems, phoneNum)", new ArrayList<String[]>(rows.values()));
+
+         List<List<String>> counts = esql.executeQueryAndReturnResult(
+            "SELECT COUNT(u.login), COUNT(*) - COUNT(u.login)" +
+            " FROM user_import i LEFT JOIN Users u ON u.login = i.login");
+         report.updated = Integer.parseInt(counts.get(0).get(0));
+         report.inserted = Integer.parseInt(counts.get(0).get(1));
+         report.roleChanges = countRoleChanges(esql, "user_import");
+         esql.executeUpdate(
+            "INSERT INTO Users (login, password, role, favoriteItems, phoneNum)" +
+            " SELECT login, password, role, favoriteItems, phoneNum FROM user_import" +
+            " ON CONFLICT (login) DO UPDATE SET password = EXCLUDED.password, role = EXCLUDED.role," +
+            " favoriteItems = EXCLUDED.favoriteItems, phoneNum = EXCLUDED.phoneNum");
+         esql.commit();
+      } catch (Exception e) {
+         esql.rollback();
+         throw e;
+      }
+      replicate(esql, rows.keySet());
+      return report;
+   }//end importCsv
+
+   /**
+    * Changes the roles of many users.
+    *
+    * @param esql the database connection
+    * @param changes login and new role pairs, one per input line
+    * @return the counts and the rejected rows
+    */
+   public static Report changeRoles(PizzaStore esql, List<String[]> changes) throws Exception {
+      Report report = new Report();
+      Map<String, String[]> rows = new LinkedHashMap<String, String[]>();
+      for (int i = 0; i < changes.size(); i++) {
+         String[] change = changes.get(i);
+         if (change.length != 2 || change[0].trim().isEmpty()) {
+            report.errors.add("line " + (i + 1) + ": expected login,role");
+            continue;
+         }
+         String login = change[0].trim();
+         Role role = Role.parse(change[1]);
+         if (role == null) {
+            report.errors.add("line " + (i + 1) + " (" + login + "): invalid role '" + change[1].trim() + "'");
+            continue;
+         }
+         rows.put(login, new String[] { login, role.label });
+      }
+      if (rows.isEmpty()) return report;
+
+      esql.beginTransaction(Connection.TRANSACTION_READ_COMMITTED);
+      try {
+         esql.executeUpdate("CREATE TEMP TABLE role_change (login varchar(50) PRIMARY KEY, role user_role) ON COMMIT DROP");
+         loadChunks(esql, "role_change (login, role)", new ArrayList<String[]>(rows.values()));
+
+         for (List<String> missing : esql.executeQueryAndReturnResult(
+               "SELECT c.login FROM role_change c LEFT JOIN Users u ON u.login = c.login WHERE u.login IS NULL ORDER BY c.login"))
+            report.errors.add(missing.get(0).trim() + ": user not found");
+         report.roleChanges = countRoleChanges(esql, "role_change");
+         report.updated = report.roleChanges;
+         esql.executeUpdate(
+            "UPDATE Users u SET role = c.role FROM role_change c" +
+            " WHERE u.login = c.login AND u.role::text IS DISTINCT FROM c.role::text");
+         esql.commit();
+      } catch (Exception e) {
+         esql.rollback();
+         throw e;
+      }
+      replicate(esql, rows.keySet());
+      return report;
+   }//end changeRoles
+
+   /*
+    * Counts the users whose role the staged rows change; trg_log_role_change
+    * logs each of them.  Must run before Users is updated.
+    */
+   private static int countRoleChanges(PizzaStore esql, String staged) throws SQLException {
+      // compared as text, so this also runs while EnumColumnMigration is in progress
+      return Integer.parseInt(esql.executeQueryAndReturnResult(
+         "SELECT COUNT(*) FROM " + staged + " s JOIN Users u ON u.login = s.login" +
+         " WHERE u.role::text IS DISTINCT FROM s.role::text").get(0).get(0));
+   }//end countRoleChanges
+
+   // copies the users to every shard, CHUNK logins per statement
+   private static void replicate(PizzaStore esql, Collection<String> logins) {
+      if (!esql.isSharded()) return;
+      List<String> all = new ArrayList<String>(logins);
+      for (int from = 0; from < all.size(); from += CHUNK) {
+         StringBuilder in = new StringBuilder();
+         for (int r = from; r < Math.min(all.size(), from + CHUNK); r++)
+            in.append(r > from ? ", " : "").append(quote(all.get(r)));
+         esql.replicate("Users", "userID", "login IN (" + in + ")");
+      }
+   }//end replicate
+
+   private static void loadChunks(PizzaStore esql, String target, List<String[]> rows) throws SQLException {
+      for (int from = 0; from < rows.size(); from += CHUNK) {
+         StringBuilder sql = new StringBuilder("INSERT INTO ").append(target).append(" VALUES ");
+         for (int r = from; r < Math.min(rows.size(), from + CHUNK); r++) {
+            String[] row = rows.get(r);
+            sql.append(r > from ? ", (" : "(");
+            for (int i = 0; i < row.length; i++)
+               sql.append(i > 0 ? ", " : "").append(quote(row[i]));
+            sql.append(')');
+         }
+         esql.executeUpdate(sql.toString());
+      }
+   }//end loadChunks
+
+   /*
+    * Returns the reason a users.csv row is rejected, or null after
+    * normalising its role label.
+    */
+   private static String validate(String[] user) {
+      if (user[0].isEmpty() || user[0].length() > 50) return "login must be 1 to 50 characters";
+      if (user[1].length() < 6 || user[1].length() > 30) return "password must be 6 to 30 characters";
+      Role role = Role.parse(user[2]);
+      if (role == null) return "invalid role '" + user[2] + "'";
+      user[2] = role.label;
+      if (!user[4].replace("-", "").matches("\\d{10}")) return "phone number must have 10 digits";
+      return null;
+   }//end validate
+
+   private static String quote(String value) {
+      return "'" + value.replace("'", "''") + "'";
+   }//end quote
+
+}//end BulkUsers
@@ -0,0 +1,284 @@
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class measures how long orders spend in each status, per store.  It
+ * follows OrderLog (placements) and OrderStatusLog (transitions) from a
+ * log_id watermark, so every refresh only reads rows added since the last
+ * one and a report never rescans the logs.  With sharding it reads the home
+ * database and every shard at once; log_ids are numbered per database, so
+ * each database keeps its own watermarks.
+ *
+ * Durations go into fixed-size log-linear histograms (16 sub-buckets per
+ * power of two of seconds, at most 1/16 relative error), so memory per store
+ * and status is constant however many orders are seen.  Orders not yet
+ * Delivered or Cancelled are kept with the time they entered their current
+ * status, to flag the ones stuck longer than pizzastore.slaStuckMinutes
+ * (default 45).  Open orders that entered their status more than
+ * pizzastore.slaRetentionHours ago (default 24) are dropped as abandoned,
+ * and placements that old are not kept at all, so loaded history never
+ * shows up as stuck; at most pizzastore.slaMaxOpen (default 50000) are
+ * kept, the oldest going first.
+ *
+ */
+public class DeliverySlaTracker {
+
+   private static final long STUCK_MS = Long.getLong("pizzastore.slaStuckMinutes", 45L) * 60000L;
+   private static final long RETENTION_MS = Long.getLong("pizzastore.slaRetentionHours", 24L) * 3600000L;
+   private static final int MAX_OPEN = Integer.getInteger("pizzastore.slaMaxOpen", 50000);
+
+   // rows read per statement while catching up
+   private static final int BATCH = 10000;
+
+   private static final DeliverySlaTracker INSTANCE = new DeliverySlaTracker();
+
+   /**
+    * Log-linear histogram of durations in seconds, fixed size.
+    */
+   static final class Histogram {
+      private static final int SUB_BITS = 4;
+      private static final int SUB = 1 << SUB_BITS;
+      // covers durations up to 2^31 seconds
+      private static final int SIZE = (31 - SUB_BITS + 1) * SUB;
+
+      private final long[] counts = new long[SIZE];
+      private long total = 0;
+      private long max = 0;
+
+      void record(long seconds) {
+         long v = Math.max(0, seconds);
+         counts[index(v)]++;
+         total++;
+         max = Math.max(max, v);
+      }
+
+      long count() {
+         return total;
+      }
+
+      /**
+       * @return the p-th percentile in seconds, or -1 if empty
+       */
+      long percentile(double p) {
+         if (total == 0) return -1;
+         long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+         long seen = 0;
+         for (int i = 0; i < SIZE; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+         }
+         return max;
+      }
+
+      static int index(long v) {
+         if (v < SUB) return (int) v;
+         v = Math.min(v, (1L << 31) - 1);
+         int exponent = 63 - Long.numberOfLeadingZeros(v);
+         int sub = (int) (v >> (exponent - SUB_BITS)) & (SUB - 1);
+         return (exponent - SUB_BITS + 1) * SUB + sub;
+      }
+
+      static long upperBound(int index) {
+         if (index < SUB) return index;
+         int exponent = index / SUB + SUB_BITS - 1;
+         long sub = index % SUB;
+         return ((SUB + sub + 1) << (exponent - SUB_BITS)) - 1;
+      }
+   }//end Histogram
+
+   /*
+    * An order that has not reached a terminal status.
+    */
+   private static final class Open {
+      final int storeID;
+      String status;
+      long enteredAt;
+
+      Open(int storeID, String status, long enteredAt) {
+         this.storeID = storeID;
+         this.status = status;
+         this.enteredAt = enteredAt;
+      }
+   }//end Open
+
+   // storeID -> status -> histogram
+   private final Map<Integer, Map<String, Histogram>> histograms = new TreeMap<Integer, Map<String, Histogram>>();
+   private final Map<Integer, Open> open = new HashMap<Integer, Open>();
+   // last log_id read from each database: home first, then the shards
+   private long[] placementsSeen = new long[0];
+   private long[] transitionsSeen = new long[0];
+
+   public static DeliverySlaTracker get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Reads the placements and transitions logged since the last refresh on
+    * every database holding orders.
+    *
+    * @param esql the database connection
+    * @return the number of log rows consumed
+    */
+   public synchronized long refresh(PizzaStore esql) throws SQLException {
+      int databases = esql.databaseCount();
+      if (placementsSeen.length != databases) {
+         placementsSeen = Arrays.copyOf(placementsSeen, databases);
+         transitionsSeen = Arrays.copyOf(transitionsSeen, databases);
+      }
+      long now = System.currentTimeMillis();
+      long consumed = 0;
+      boolean more;
+      do {
+         String[] queries = new String[databases];
+         for (int d = 0; d < databases; d++)
+            queries[d] = "SELECT log_id, orderID, storeID, orderStatus, orderTimestamp FROM OrderLog" +
+                         " WHERE log_id > " + placementsSeen[d] + " ORDER BY log_id LIMIT " + BATCH;
+         List<List<List<String>>> parts = esql.executeQueryOnEachShard(queries);
+         more = false;
+         for (int d = 0; d < parts.size(); d++) {
+            for (List<String> row : parts.get(d)) {
+               placementsSeen[d] = Long.parseLong(row.get(0));
+               String status = status(row.get(3));
+               int orderID = Integer.parseInt(row.get(1));
+               long placedAt = millis(row.get(4));
+               if (!terminal(status) && now - placedAt < RETENTION_MS && !open.containsKey(orderID))
+                  open.put(orderID, new Open(Integer.parseInt(row.get(2)), status, placedAt));
+            }
+            consumed += parts.get(d).size();
+            if (parts.get(d).size() == BATCH) more = true;
+         }
+      } while (more);
+
+      do {
+         String[] queries = new String[databases];
+         for (int d = 0; d < databases; d++)
+            queries[d] = "SELECT l.log_id, l.orderID, f.storeID, l.old_status, l.new_status, l.change_timestamp, f.orderTimestamp" +
+                         " FROM OrderStatusLog l JOIN FoodOrder f ON f.orderID = l.orderID" +
+                         " WHERE l.log_id > " + transitionsSeen[d] + " ORDER BY l.log_id LIMIT " + BATCH;
+         List<List<List<String>>> parts = esql.executeQueryOnEachShard(queries);
+         more = false;
+         for (int d = 0; d < parts.size(); d++) {
+            for (List<String> row : parts.get(d)) {
+               transitionsSeen[d] = Long.parseLong(row.get(0));
+               transition(Integer.parseInt(row.get(1)), Integer.parseInt(row.get(2)), status(row.get(3)),
+                          status(row.get(4)), millis(row.get(5)), millis(row.get(6)));
+            }
+            consumed += parts.get(d).size();
+            if (parts.get(d).size() == BATCH) more = true;
+         }
+      } while (more);
+      expire(now);
+      return consumed;
+   }//end refresh
+
+   /*
+    * Drops open orders past the retention window, then the oldest ones
+    * while more than MAX_OPEN are kept.
+    */
+   private void expire(long now) {
+      for (Iterator<Open> it = open.values().iterator(); it.hasNext(); ) {
+         if (now - it.next().enteredAt >= RETENTION_MS) it.remove();
+      }
+      if (open.size() <= MAX_OPEN) return;
+      List<Map.Entry<Integer, Open>> oldest = new ArrayList<Map.Entry<Integer, Open>>(open.entrySet());
+      Collections.sort(oldest, (a, b) -> Long.compare(a.getValue().enteredAt, b.getValue().enteredAt));
+      List<Integer> drop = new ArrayList<Integer>();
+      for (int i = 0; i < oldest.size() - MAX_OPEN; i++) drop.add(oldest.get(i).getKey());
+      for (Integer orderID : drop) open.remove(orderID);
+   }//end expire
+
+   /*
+    * Closes the time spent in the old status and opens the new one.  The
+    * first transition of an order we never saw placed is timed from its
+    * orderTimestamp, unless that lies beyond the retention window (loaded
+    * history, or an order already dropped).
+    */
+   private void transition(int orderID, int storeID, String oldStatus, String newStatus, long at, long placedAt) {
+      Open o = open.get(orderID);
+      long enteredAt = o != null ? o.enteredAt : placedAt;
+      boolean timed = o != null || at - placedAt < RETENTION_MS;
+      if (timed && !oldStatus.isEmpty() && !terminal(oldStatus))
+         histogram(storeID, oldStatus).record((at - enteredAt) / 1000);
+      if (terminal(newStatus)) {
+         open.remove(orderID);
+      } else if (o == null) {
+         open.put(orderID, new Open(storeID, newStatus, at));
+      } else {
+         o.status = newStatus;
+         o.enteredAt = at;
+      }
+   }//end transition
+
+   private Histogram histogram(int storeID, String status) {
+      Map<String, Histogram> byStatus = histograms.get(storeID);
+      if (byStatus == null) {
+         byStatus = new TreeMap<String, Histogram>();
+         histograms.put(storeID, byStatus);
+      }
+      Histogram h = byStatus.get(status);
+      if (h == null) {
+         h = new Histogram();
+         byStatus.put(status, h);
+      }
+      return h;
+   }//end histogram
+
+   /**
+    * @return rows of storeID, status, count, and p50, p95, p99 in seconds,
+    *         by store and status
+    */
+   public synchronized List<String[]> percentiles() {
+      List<String[]> report = new ArrayList<String[]>();
+      for (Map.Entry<Integer, Map<String, Histogram>> store : histograms.entrySet()) {
+         for (Map.Entry<String, Histogram> e : store.getValue().entrySet()) {
+            Histogram h = e.getValue();
+            report.add(new String[] { String.valueOf(store.getKey()), e.getKey(), String.valueOf(h.count()),
+                                      String.valueOf(h.percentile(50)), String.valueOf(h.percentile(95)),
+                                      String.valueOf(h.percentile(99)) });
+         }
+      }
+      return report;
+   }//end percentiles
+
+   /**
+    * @return orders in a non-terminal status for longer than the threshold,
+    *         longest first, as orderID, storeID, status, minutes
+    */
+   public synchronized List<String[]> stuck(long now) {
+      List<Object[]> found = new ArrayList<Object[]>();
+      for (Map.Entry<Integer, Open> e : open.entrySet()) {
+         long age = now - e.getValue().enteredAt;
+         if (age > STUCK_MS) found.add(new Object[] { e.getKey(), e.getValue(), age });
+      }
+      Collections.sort(found, (a, b) -> Long.compare((Long) b[2], (Long) a[2]));
+      List<String[]> rows = new ArrayList<String[]>();
+      for (Object[] f : found) {
+         Open o = (Open) f[1];
+         rows.add(new String[] { String.valueOf(f[0]), String.valueOf(o.storeID), o.status, String.valueOf((Long) f[2] / 60000) });
+      }
+      return rows;
+   }//end stuck
+
+   private static String status(String s) {
+      return s == null ? "" : s.trim();
+   }//end status
+
+   // log rows written before the order_status type may hold older labels
+   private static boolean terminal(String status) {
+      OrderStatus s = OrderStatus.parse(status);
+      return s != null && s.isTerminal();
+   }//end terminal
+
+   private static long millis(String timestamp) {
+      return timestamp == null ? 0 : Timestamp.valueOf(timestamp).getTime();
+   }//end millis
+
+}//end DeliverySlaTracker
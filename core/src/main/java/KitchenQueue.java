@@ -0,0 +1,282 @@
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps, for every store, the orders the kitchen still has to
+ * handle (neither Delivered nor Cancelled) in arrival order.  It is loaded
+ * from FoodOrder once and then kept current by the new orders and status
+ * changes OrderEvents reads from every database, so orders taken on other
+ * terminals show up too and kitchen screens refresh from memory.  Changes
+ * made by this process are also applied directly by placeOrder, reorder and
+ * updateOrderStatus.  Events that arrive while the queue is being loaded are
+ * applied after it, in order.
+ *
+ * Each store holds at most pizzastore.kitchenQueueMax orders (default 500),
+ * the oldest ones.  A store that overflowed counts the orders it left out
+ * and reloads its oldest orders from the database once it has room again.
+ * Stores are locked individually, readers shared and writers exclusive.
+ *
+ */
+public class KitchenQueue {
+
+   private static final int MAX_PER_STORE = Integer.getInteger("pizzastore.kitchenQueueMax", 500);
+
+   private static final String OPEN_ORDERS =
+      "SELECT f.orderID, f.storeID, u.login, f.totalPrice, f.orderStatus, f.orderTimestamp" +
+      " FROM FoodOrder f JOIN Users u ON u.userID = f.userID" +
+      " WHERE f.orderStatus NOT IN ('Delivered', 'Cancelled')";
+
+   private static final KitchenQueue INSTANCE = new KitchenQueue();
+
+   /**
+    * An open order as shown on a kitchen screen.
+    */
+   public static final class Ticket {
+      public final int orderID;
+      public final int storeID;
+      public final String login;
+      public final String totalPrice;
+      public final long placedAt;
+      public volatile String status;
+
+      Ticket(int orderID, int storeID, String login, String totalPrice, String status, long placedAt) {
+         this.orderID = orderID;
+         this.storeID = storeID;
+         this.login = login;
+         this.totalPrice = totalPrice;
+         this.status = status;
+         this.placedAt = placedAt;
+      }
+   }//end Ticket
+
+   /*
+    * The queue of one store, ordered by placement time then orderID.
+    */
+   private static final class Store {
+      final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+      final TreeMap<long[], Ticket> queue = new TreeMap<long[], Ticket>((a, b) ->
+         a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+      final Map<Integer, long[]> keys = new HashMap<Integer, long[]>();
+      // open orders left out because the store was full
+      int overflow = 0;
+   }//end Store
+
+   private final ConcurrentHashMap<Integer, Store> stores = new ConcurrentHashMap<Integer, Store>();
+   private volatile boolean seeded = false;
+
+   // events received while seeding, applied once the seed is in; guarded by feedLock
+   private final Object feedLock = new Object();
+   private List<Runnable> pending = null;
+
+   // recently finished orders, so a late placement event does not bring one back
+   private final Set<Integer> finished = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+      protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+         return size() > 10000;
+      }
+   });
+
+   private final OrderEvents.StoreListener feed = new OrderEvents.StoreListener() {
+      public void placed(int orderID, int storeID, String login, String totalPrice, long placedAt) {
+         apply(() -> add(new Ticket(orderID, storeID, login, totalPrice, OrderStatus.PROCESSING.label, placedAt)));
+      }
+
+      public void statusChanged(int orderID, int storeID, String status) {
+         OrderStatus parsed = OrderStatus.parse(status);
+         if (parsed != null) apply(() -> change(orderID, storeID, parsed));
+      }
+   };
+
+   public static KitchenQueue get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Loads the open orders of every store, once.
+    *
+    * @param esql the database connection
+    */
+   public void ensureSeeded(PizzaStore esql) throws SQLException {
+      if (seeded) return;
+      synchronized (this) {
+         if (seeded) return;
+         // follow the databases before reading them, so nothing committed meanwhile is missed
+         synchronized (feedLock) {
+            pending = new ArrayList<Runnable>();
+         }
+         OrderEvents.get().follow(feed);
+         try {
+            seed(esql.executeQueryOnAllShards(OPEN_ORDERS + " ORDER BY orderTimestamp, orderID", -1, false, -1));
+         } finally {
+            synchronized (feedLock) {
+               pending = null;
+            }
+         }
+      }
+   }//end ensureSeeded
+
+   /**
+    * Loads open orders from rows of OPEN_ORDERS, oldest first, then applies
+    * the events received meanwhile.
+    */
+   synchronized void seed(List<List<String>> rows) {
+      if (seeded) return;
+      for (List<String> row : rows)
+         add(ticket(row));
+      synchronized (feedLock) {
+         if (pending != null)
+            for (Runnable event : pending)
+               event.run();
+         pending = null;
+         seeded = true;
+      }
+   }//end seed
+
+   /**
+    * Adds a newly placed order.  Ignored until the queue is seeded, since the
+    * seed will contain it.
+    */
+   public void placed(int orderID, int storeID, String login, String totalPrice, OrderStatus status) {
+      if (!seeded) return;
+      add(new Ticket(orderID, storeID, login, totalPrice, status.label, System.currentTimeMillis()));
+   }//end placed
+
+   /**
+    * Applies a status change; terminal statuses remove the order.  Ignored
+    * until the queue is seeded.
+    */
+   public void statusChanged(int orderID, int storeID, OrderStatus status) {
+      if (!seeded) return;
+      change(orderID, storeID, status);
+   }//end statusChanged
+
+   /*
+    * Runs an event from OrderEvents now, or after the seed if it is loading.
+    */
+   private void apply(Runnable event) {
+      synchronized (feedLock) {
+         if (!seeded) {
+            if (pending != null) pending.add(event);
+            return;
+         }
+      }
+      event.run();
+   }//end apply
+
+   private void change(int orderID, int storeID, OrderStatus status) {
+      if (status.isTerminal()) {
+         synchronized (finished) {
+            finished.add(orderID);
+         }
+      }
+      Store store = store(storeID);
+      store.lock.writeLock().lock();
+      try {
+         long[] key = store.keys.get(orderID);
+         if (key == null) return;
+         if (status.isTerminal()) {
+            store.queue.remove(key);
+            store.keys.remove(orderID);
+         } else {
+            store.queue.get(key).status = status.label;
+         }
+      } finally {
+         store.lock.writeLock().unlock();
+      }
+   }//end change
+
+   /**
+    * Returns a store's open orders, oldest first.  A store that had to leave
+    * orders out reloads its oldest orders first once it has room for them.
+    *
+    * @param esql used only to reload an overflowed store
+    * @return the tickets, and how many open orders are not among them
+    */
+   public List<Ticket> snapshot(PizzaStore esql, int storeID, int[] notShown) throws SQLException {
+      ensureSeeded(esql);
+      Store store = store(storeID);
+      store.lock.readLock().lock();
+      boolean reload;
+      try {
+         reload = store.overflow > 0 && store.queue.size() < MAX_PER_STORE;
+      } finally {
+         store.lock.readLock().unlock();
+      }
+      if (reload) {
+         List<List<String>> rows = esql.executeQueryOnAllShards(OPEN_ORDERS + " AND storeID = " + storeID +
+            " ORDER BY orderTimestamp, orderID LIMIT " + (MAX_PER_STORE + 1), -1, false, -1);
+         store.lock.writeLock().lock();
+         try {
+            store.queue.clear();
+            store.keys.clear();
+            store.overflow = 0;
+            for (List<String> row : rows)
+               add(store, ticket(row));
+         } finally {
+            store.lock.writeLock().unlock();
+         }
+      }
+
+      store.lock.readLock().lock();
+      try {
+         notShown[0] = store.overflow;
+         return new ArrayList<Ticket>(store.queue.values());
+      } finally {
+         store.lock.readLock().unlock();
+      }
+   }//end snapshot
+
+   private void add(Ticket ticket) {
+      synchronized (finished) {
+         if (finished.contains(ticket.orderID)) return;
+      }
+      Store store = store(ticket.storeID);
+      store.lock.writeLock().lock();
+      try {
+         add(store, ticket);
+      } finally {
+         store.lock.writeLock().unlock();
+      }
+   }//end add
+
+   /*
+    * Inserts a ticket, evicting the newest one if the store is full.  Caller
+    * holds the store's write lock.
+    */
+   private static void add(Store store, Ticket ticket) {
+      if (store.keys.containsKey(ticket.orderID)) return;
+      long[] key = { ticket.placedAt, ticket.orderID };
+      store.queue.put(key, ticket);
+      store.keys.put(ticket.orderID, key);
+      if (store.queue.size() > MAX_PER_STORE) {
+         Map.Entry<long[], Ticket> newest = store.queue.pollLastEntry();
+         store.keys.remove(newest.getValue().orderID);
+         store.overflow++;
+      }
+   }//end add
+
+   private Store store(int storeID) {
+      Store store = stores.get(storeID);
+      if (store == null) {
+         Store created = new Store();
+         store = stores.putIfAbsent(storeID, created);
+         if (store == null) store = created;
+      }
+      return store;
+   }//end store
+
+   private static Ticket ticket(List<String> row) {
+      return new Ticket(Integer.parseInt(row.get(0)), Integer.parseInt(row.get(1)), row.get(2).trim(), row.get(3),
+                        row.get(4), Timestamp.valueOf(row.get(5)).getTime());
+   }//end ticket
+
+}//end KitchenQueue
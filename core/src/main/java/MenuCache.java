@@ -0,0 +1,106 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class keeps the Items table in memory so that browsing the menu does
+ * not cost a round trip.  It is filled at start-up by the warm-up thread,
+ * reloaded after it expires (pizzastore.menuCacheTtlMs, default one minute)
+ * and patched item by item whenever this process changes the menu.
+ *
+ * Every row is: itemName, price, typeOfItem, description, ingredients,
+ * version.  Prices taken from here are safe to order with because
+ * OptimisticOrders re-checks the version at commit time.
+ *
+ */
+public class MenuCache {
+
+   public static final String QUERY =
+      "SELECT itemName, price, typeOfItem, description, ingredients, version FROM Items ORDER BY itemName";
+
+   private static final long TTL_MS = Long.getLong("pizzastore.menuCacheTtlMs", 60000L);
+
+   private static volatile List<List<String>> items = null;
+   private static volatile long loadedAt = 0;
+
+   /**
+    * Returns the cached menu, loading it through esql if it is missing or
+    * has expired.
+    *
+    * @param esql the database connection
+    * @return an unmodifiable list of Items rows
+    * @throws java.sql.SQLException when the menu cannot be loaded
+    */
+   public static List<List<String>> items(PizzaStore esql) throws SQLException {
+      List<List<String>> cached = items;
+      if (cached == null || System.currentTimeMillis() - loadedAt > TTL_MS) {
+         cached = fill(esql.executeQueryAndReturnResult(QUERY));
+      }
+      return cached;
+   }//end items
+
+   /**
+    * Like items(), but a missing or expired menu is loaded on a pooled
+    * connection so the caller can issue other statements meanwhile.
+    *
+    * @param esql the database connection
+    * @return the menu, once loaded
+    */
+   public static CompletableFuture<List<List<String>>> itemsAsync(PizzaStore esql) {
+      List<List<String>> cached = items;
+      if (cached != null && System.currentTimeMillis() - loadedAt <= TTL_MS)
+         return CompletableFuture.completedFuture(cached);
+      return esql.executeQueryAsync(QUERY).thenApply(rows -> fill(rows));
+   }//end itemsAsync
+
+   /**
+    * Replaces the cached menu with the result of QUERY.
+    *
+    * @return the newly cached menu
+    */
+   public static List<List<String>> fill(List<List<String>> rows) {
+      List<List<String>> menu = Collections.unmodifiableList(rows);
+      items = menu;
+      loadedAt = System.currentTimeMillis();
+      return menu;
+   }//end fill
+
+   /**
+    * Re-reads one item after this process changed it and patches it into
+    * the cached menu and the search index.
+    *
+    * @param esql the database connection
+    * @param itemName the item that was added or updated
+    * @throws java.sql.SQLException when the item cannot be read
+    */
+   public static void reload(PizzaStore esql, String itemName) throws SQLException {
+      List<List<String>> rows = esql.executeQueryAndReturnResult(
+            "SELECT itemName, price, typeOfItem, description, ingredients, version FROM Items WHERE itemName = '" + itemName + "'");
+      synchronized (MenuCache.class) {
+         List<List<String>> cached = items;
+         if (cached == null || rows.isEmpty()) {
+            invalidate();
+            return;
+         }
+         List<List<String>> patched = new ArrayList<List<String>>();
+         for (List<String> row : cached) {
+            if (!row.get(0).equals(itemName)) patched.add(row);
+         }
+         patched.add(rows.get(0));
+         patched.sort((a, b) -> a.get(0).compareTo(b.get(0)));
+         List<List<String>> menu = Collections.unmodifiableList(patched);
+         items = menu;
+         MenuSearch.get().upsert(rows.get(0), menu);
+      }
+   }//end reload
+
+   /**
+    * Forgets the cached menu; the next read goes to the database.
+    */
+   public static void invalidate() {
+      items = null;
+   }//end invalidate
+
+}//end MenuCache
@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is an in-memory search index over the menu.  Words of
+ * itemName, ingredients and description go into an inverted index (token to
+ * the set of items containing it) and every distinct token also goes into a
+ * trigram index, which is used to correct misspelled query words.
+ *
+ * The index mirrors MenuCache: it is rebuilt when the cache is reloaded and
+ * updated item by item when a manager changes the menu.
+ *
+ */
+public class MenuSearch {
+
+   // weight of a token by the field it appears in
+   private static final int NAME_WEIGHT = 3;
+   private static final int INGREDIENT_WEIGHT = 2;
+   private static final int DESCRIPTION_WEIGHT = 1;
+
+   // minimum trigram similarity for a vocabulary word to stand in for a typo
+   private static final double MIN_SIMILARITY = 0.4;
+
+   private static final MenuSearch INSTANCE = new MenuSearch();
+
+   /*
+    * One indexed menu item.
+    */
+   private static class Doc {
+      final List<String> row;
+      final Map<String, Integer> weights = new HashMap<String, Integer>();
+      final Set<String> ingredientTokens = new HashSet<String>();
+
+      Doc(List<String> row) {
+         this.row = row;
+      }
+   }//end Doc
+
+   private final List<Doc> docs = new ArrayList<Doc>();          // slot -> item, null when free
+   private final Map<String, Integer> slots = new HashMap<String, Integer>();
+   private final Map<String, BitSet> postings = new HashMap<String, BitSet>();
+   private final Map<String, Set<String>> trigrams = new HashMap<String, Set<String>>();
+
+   // the MenuCache list the index was last synchronised with
+   private List<List<String>> source = null;
+
+   public static MenuSearch get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Searches the menu.
+    *
+    * @param menu the current MenuCache contents; the index is rebuilt if they changed
+    * @param text free text matched against name, ingredients and description (may be empty)
+    * @param include ingredients every result must contain
+    * @param exclude ingredients no result may contain
+    * @param limit maximum number of results
+    * @return the matching Items rows, best match first
+    */
+   public synchronized List<List<String>> search(List<List<String>> menu, String text,
+                                                 List<String> include, List<String> exclude, int limit) {
+      if (menu != source) rebuild(menu);
+
+      final Map<Integer, Double> scores = new HashMap<Integer, Double>();
+      List<String> words = tokenize(text);
+      if (words.isEmpty()) {
+         for (int slot = 0; slot < docs.size(); slot++)
+            if (docs.get(slot) != null) scores.put(slot, 0.0);
+      }
+      for (String word : words) {
+         // best contribution of this query word per item
+         Map<Integer, Double> best = new HashMap<Integer, Double>();
+         for (Map.Entry<String, Double> match : expand(word).entrySet()) {
+            BitSet items = postings.get(match.getKey());
+            for (int slot = items.nextSetBit(0); slot >= 0; slot = items.nextSetBit(slot + 1)) {
+               double score = docs.get(slot).weights.get(match.getKey()) * match.getValue();
+               Double prev = best.get(slot);
+               if (prev == null || score > prev) best.put(slot, score);
+            }
+         }
+         for (Map.Entry<Integer, Double> e : best.entrySet()) {
+            Double prev = scores.get(e.getKey());
+            scores.put(e.getKey(), (prev == null ? 0.0 : prev) + e.getValue());
+         }
+      }
+
+      List<Integer> hits = new ArrayList<Integer>();
+      for (Integer slot : scores.keySet()) {
+         Doc doc = docs.get(slot);
+         if (containsAll(doc, include) && containsNone(doc, exclude)) hits.add(slot);
+      }
+      Collections.sort(hits, (a, b) -> {
+         int c = Double.compare(scores.get(b), scores.get(a));
+         return c != 0 ? c : docs.get(a).row.get(0).compareToIgnoreCase(docs.get(b).row.get(0));
+      });
+
+      List<List<String>> results = new ArrayList<List<String>>();
+      for (int i = 0; i < hits.size() && i < limit; i++)
+         results.add(docs.get(hits.get(i)).row);
+      return results;
+   }//end search
+
+   /**
+    * Finds the menu row whose itemName matches name ignoring case.
+    *
+    * @return the row, or null if there is no such item
+    */
+   public synchronized List<String> find(List<List<String>> menu, String name) {
+      if (menu != source) rebuild(menu);
+      for (Map.Entry<String, Integer> e : slots.entrySet()) {
+         if (e.getKey().equalsIgnoreCase(name.trim())) return docs.get(e.getValue()).row;
+      }
+      return null;
+   }//end find
+
+   /**
+    * Adds or replaces one item without touching the rest of the index.
+    *
+    * @param row the item's MenuCache row
+    * @param menu the MenuCache list the row now belongs to
+    */
+   public synchronized void upsert(List<String> row, List<List<String>> menu) {
+      if (source == null) return; // never built, nothing to keep in sync
+      remove(row.get(0));
+      add(row);
+      source = menu;
+   }//end upsert
+
+   private void rebuild(List<List<String>> menu) {
+      docs.clear();
+      slots.clear();
+      postings.clear();
+      trigrams.clear();
+      for (List<String> row : menu)
+         add(row);
+      source = menu;
+   }//end rebuild
+
+   private void add(List<String> row) {
+      Doc doc = new Doc(row);
+      index(doc, row.get(0), NAME_WEIGHT);
+      // ingredients are stored as a comma-separated list
+      for (String ingredient : row.get(4).split(",")) {
+         for (String token : tokenize(ingredient)) {
+            doc.ingredientTokens.add(token);
+            index(doc, token, INGREDIENT_WEIGHT);
+         }
+      }
+      if (row.get(3) != null) index(doc, row.get(3), DESCRIPTION_WEIGHT);
+
+      int slot = docs.indexOf(null);
+      if (slot < 0) {
+         slot = docs.size();
+         docs.add(doc);
+      } else {
+         docs.set(slot, doc);
+      }
+      slots.put(row.get(0), slot);
+      for (String token : doc.weights.keySet()) {
+         BitSet items = postings.get(token);
+         if (items == null) {
+            items = new BitSet();
+            postings.put(token, items);
+            for (String gram : grams(token)) {
+               Set<String> words = trigrams.get(gram);
+               if (words == null) {
+                  words = new HashSet<String>();
+                  trigrams.put(gram, words);
+               }
+               words.add(token);
+            }
+         }
+         items.set(slot);
+      }
+   }//end add
+
+   private void remove(String itemName) {
+      Integer slot = slots.remove(itemName);
+      if (slot == null) return;
+      Doc doc = docs.get(slot);
+      docs.set(slot, null);
+      for (String token : doc.weights.keySet()) {
+         BitSet items = postings.get(token);
+         items.clear(slot);
+         if (items.isEmpty()) {
+            postings.remove(token);
+            for (String gram : grams(token)) {
+               Set<String> words = trigrams.get(gram);
+               words.remove(token);
+               if (words.isEmpty()) trigrams.remove(gram);
+            }
+         }
+      }
+   }//end remove
+
+   private static void index(Doc doc, String text, int weight) {
+      for (String token : tokenize(text)) {
+         Integer prev = doc.weights.get(token);
+         if (prev == null || weight > prev) doc.weights.put(token, weight);
+      }
+   }//end index
+
+   /*
+    * Maps a query word to the indexed words it may stand for, with a
+    * similarity between 0 and 1: the word itself, words it is a prefix of,
+    * and words sharing enough trigrams with it.
+    */
+   private Map<String, Double> expand(String word) {
+      Map<String, Double> matches = new HashMap<String, Double>();
+      if (postings.containsKey(word)) matches.put(word, 1.0);
+
+      Set<String> grams = grams(word);
+      Map<String, Integer> shared = new HashMap<String, Integer>();
+      for (String gram : grams) {
+         Set<String> words = trigrams.get(gram);
+         if (words == null) continue;
+         for (String w : words) {
+            Integer n = shared.get(w);
+            shared.put(w, n == null ? 1 : n + 1);
+         }
+      }
+      for (Map.Entry<String, Integer> e : shared.entrySet()) {
+         String candidate = e.getKey();
+         if (candidate.equals(word)) continue;
+         double similarity = candidate.startsWith(word) && word.length() >= 3 ? 0.8
+               : (double) e.getValue() / (grams.size() + grams(candidate).size() - e.getValue());
+         // short words share few trigrams, so also accept one or two edits
+         int edits = editDistance(word, candidate);
+         if (edits <= (word.length() >= 7 ? 2 : 1) && word.length() >= 4)
+            similarity = Math.max(similarity, 1.0 - (double) edits / Math.max(word.length(), candidate.length()));
+         if (similarity >= MIN_SIMILARITY) matches.put(candidate, similarity);
+      }
+      return matches;
+   }//end expand
+
+   private static int editDistance(String a, String b) {
+      int[] prev = new int[b.length() + 1];
+      int[] curr = new int[b.length() + 1];
+      for (int j = 0; j <= b.length(); j++) prev[j] = j;
+      for (int i = 1; i <= a.length(); i++) {
+         curr[0] = i;
+         for (int j = 1; j <= b.length(); j++) {
+            int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+            curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+         }
+         int[] t = prev; prev = curr; curr = t;
+      }
+      return prev[b.length()];
+   }//end editDistance
+
+   /*
+    * True when, for every wanted ingredient, each of its words (or a close
+    * spelling of it) appears among the item's ingredients.
+    */
+   private boolean containsAll(Doc doc, List<String> include) {
+      for (String ingredient : include) {
+         if (!hasIngredient(doc, ingredient)) return false;
+      }
+      return true;
+   }//end containsAll
+
+   private boolean containsNone(Doc doc, List<String> exclude) {
+      for (String ingredient : exclude) {
+         if (hasIngredient(doc, ingredient)) return false;
+      }
+      return true;
+   }//end containsNone
+
+   private boolean hasIngredient(Doc doc, String ingredient) {
+      List<String> words = tokenize(ingredient);
+      if (words.isEmpty()) return true;
+      for (String word : words) {
+         boolean found = false;
+         for (String candidate : expand(word).keySet()) {
+            if (doc.ingredientTokens.contains(candidate)) { found = true; break; }
+         }
+         if (!found) return false;
+      }
+      return true;
+   }//end hasIngredient
+
+   private static List<String> tokenize(String text) {
+      List<String> tokens = new ArrayList<String>();
+      if (text == null) return tokens;
+      for (String t : text.toLowerCase().split("[^a-z0-9]+")) {
+         if (!t.isEmpty()) tokens.add(t);
+      }
+      return tokens;
+   }//end tokenize
+
+   private static Set<String> grams(String token) {
+      String padded = "$" + token + "$";
+      Set<String> grams = new HashSet<String>();
+      for (int i = 0; i + 3 <= padded.length(); i++)
+         grams.add(padded.substring(i, i + 3));
+      if (grams.isEmpty()) grams.add(padded);
+      return grams;
+   }//end grams
+
+}//end MenuSearch
@@ -0,0 +1,74 @@
+/**
+ * Money as a long number of cents.  Prices and totals are decimal(10,2) in
+ * the database; parsing their text straight into cents (no double, no
+ * BigDecimal) keeps sums exact and allocation-free, and the text written
+ * back into SQL is always exactly two decimals.
+ *
+ */
+public final class Money {
+
+   // more integer digits than this cannot come from a decimal(10,2)
+   private static final int MAX_DIGITS = 16;
+
+   private Money() {
+   }//end Money
+
+   /**
+    * Parses a decimal amount such as "12.5", "12.50" or "-3".  Digits past
+    * the second decimal are rounded half up.
+    *
+    * @param amount the text of the amount, surrounding spaces allowed
+    * @return the amount in cents
+    * @throws NumberFormatException if the text is not a decimal amount
+    */
+   public static long parse(String amount) {
+      int i = 0;
+      int end = amount.length();
+      while (i < end && amount.charAt(i) == ' ') i++;
+      while (end > i && amount.charAt(end - 1) == ' ') end--;
+      boolean negative = i < end && amount.charAt(i) == '-';
+      if (negative || (i < end && amount.charAt(i) == '+')) i++;
+
+      long units = 0;
+      int digits = 0;
+      for (; i < end && amount.charAt(i) != '.'; i++, digits++) {
+         int d = amount.charAt(i) - '0';
+         if (d < 0 || d > 9 || digits == MAX_DIGITS) throw new NumberFormatException("Not an amount: " + amount);
+         units = units * 10 + d;
+      }
+      long cents = 0;
+      int decimals = 0;
+      if (i < end) {
+         for (i++; i < end; i++, decimals++) {
+            int d = amount.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Not an amount: " + amount);
+            if (decimals < 2) cents = cents * 10 + d;
+            else if (decimals == 2 && d >= 5) cents++;
+         }
+      }
+      if (digits == 0 && decimals == 0) throw new NumberFormatException("Not an amount: " + amount);
+      if (decimals == 0) cents *= 100;
+      else if (decimals == 1) cents *= 10;
+
+      long total = units * 100 + cents;
+      return negative ? -total : total;
+   }//end parse
+
+   /**
+    * @param cents an amount in cents
+    * @return the amount with two decimals, e.g. "12.50"; also valid as an
+    *         SQL numeric literal
+    */
+   public static String format(long cents) {
+      StringBuilder text = new StringBuilder(16);
+      if (cents < 0) {
+         text.append('-');
+         cents = -cents;
+      }
+      long fraction = cents % 100;
+      text.append(cents / 100).append('.');
+      if (fraction < 10) text.append('0');
+      return text.append(fraction).toString();
+   }//end format
+
+}//end Money
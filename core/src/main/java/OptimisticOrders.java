@@ -0,0 +1,185 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class places orders without holding locks on Items.  The customer's
+ * prices are read outside any transaction together with the row version; at
+ * commit time the versions are checked again inside the order transaction.
+ * When a price changed in between (or the database reports a serialization
+ * failure) the transaction is rolled back, the prices are re-read and the
+ * order is retried after a short randomized backoff.
+ *
+ */
+public class OptimisticOrders {
+
+   private static final int MAX_ATTEMPTS = 4;
+   private static final long BASE_BACKOFF_MS = 20;
+
+   // number of stale price versions detected at commit time
+   private static final AtomicLong conflicts = new AtomicLong();
+   // number of order transactions that were started again
+   private static final AtomicLong retries = new AtomicLong();
+
+   /**
+    * A priced order line as seen by the customer; price is in cents.
+    */
+   public static class Line {
+      public final String itemName;
+      public final int quantity;
+      public long price;
+      public int version;
+
+      public Line(String itemName, int quantity, long price, int version) {
+         this.itemName = itemName;
+         this.quantity = quantity;
+         this.price = price;
+         this.version = version;
+      }
+   }//end Line
+
+   /**
+    * Outcome of a successful placement; totalPrice is in cents.
+    */
+   public static class Placed {
+      public final int orderID;
+      public final long totalPrice;
+      public final boolean repriced;
+
+      Placed(int orderID, long totalPrice, boolean repriced) {
+         this.orderID = orderID;
+         this.totalPrice = totalPrice;
+         this.repriced = repriced;
+      }
+   }//end Placed
+
+   /**
+    * Inserts the FoodOrder and its ItemsInOrder rows in one transaction,
+    * provided every line's price version is still current.
+    *
+    * @param esql the database connection
+    * @param userID the Users.userID of the customer placing the order
+    * @param storeID the store the order is placed at
+    * @param lines the order lines with the price and version the customer saw
+    * @return the new order, or null when an item disappeared from the menu
+    * @throws java.sql.SQLException when the order could not be placed
+    */
+   public static Placed place(PizzaStore esql, int userID, int storeID, List<Line> lines) throws SQLException {
+      boolean repriced = false;
+      for (int attempt = 0; ; attempt++) {
+         if (attempt > 0) {
+            retries.incrementAndGet();
+            backoff(attempt);
+         }
+         try {
+            esql.beginTransaction(Connection.TRANSACTION_SERIALIZABLE);
+
+            // Re-read every version in the transaction's snapshot
+            Map<String, List<String>> current = currentPrices(esql, lines);
+            boolean stale = false;
+            for (Line line : lines) {
+               List<String> row = current.get(line.itemName);
+               if (row == null) {
+                  esql.rollback();
+                  return null;
+               }
+               int version = Integer.parseInt(row.get(2));
+               if (version != line.version) {
+                  line.price = Money.parse(row.get(1));
+                  line.version = version;
+                  stale = true;
+               }
+            }
+            if (stale) {
+               conflicts.incrementAndGet();
+               repriced = true;
+               esql.rollback();
+               if (attempt + 1 >= MAX_ATTEMPTS)
+                  throw new SQLException("Menu prices kept changing, order not placed");
+               continue;
+            }
+
+            long totalPrice = 0;
+            for (Line line : lines)
+               totalPrice += line.price * line.quantity;
+
+            String insertOrderQuery = "INSERT INTO FoodOrder (userID, storeID, totalPrice, orderStatus, orderTimestamp) " +
+                                      "VALUES (" + userID + ", " + storeID + ", " + Money.format(totalPrice) + ", '" + OrderStatus.PROCESSING.label + "', NOW()) RETURNING orderID";
+            List<List<String>> orderResult = esql.executeQueryAndReturnResult(insertOrderQuery);
+            int orderID = Integer.parseInt(orderResult.get(0).get(0));
+
+            StringBuilder insertItems = new StringBuilder("INSERT INTO ItemsInOrder (orderID, itemName, quantity) VALUES ");
+            for (int i = 0; i < lines.size(); i++) {
+               if (i > 0) insertItems.append(", ");
+               insertItems.append("(").append(orderID).append(", '").append(lines.get(i).itemName)
+                          .append("', ").append(lines.get(i).quantity).append(")");
+            }
+            esql.executeUpdate(insertItems.toString());
+
+            esql.commit();
+            return new Placed(orderID, totalPrice, repriced);
+         } catch (SQLException e) {
+            esql.rollback();
+            if (!isSerializationFailure(e) || attempt + 1 >= MAX_ATTEMPTS)
+               throw e;
+            conflicts.incrementAndGet();
+         }
+      }
+   }//end place
+
+   /*
+    * Fetches itemName, price and version for every line in one statement.
+    */
+   private static Map<String, List<String>> currentPrices(PizzaStore esql, List<Line> lines) throws SQLException {
+      StringBuilder names = new StringBuilder();
+      for (Line line : lines) {
+         if (names.length() > 0) names.append(", ");
+         names.append("'").append(line.itemName).append("'");
+      }
+      List<List<String>> rows = esql.executeQueryAndReturnResult(
+            "SELECT itemName, price, version FROM Items WHERE itemName IN (" + names + ")");
+      Map<String, List<String>> byName = new HashMap<String, List<String>>();
+      for (List<String> row : rows)
+         byName.put(row.get(0), row);
+      return byName;
+   }//end currentPrices
+
+   /*
+    * SQLSTATE 40001 / 40P01; older drivers only report the message text.
+    */
+   private static boolean isSerializationFailure(SQLException e) {
+      String state = e.getSQLState();
+      if (state != null)
+         return state.equals("40001") || state.equals("40P01");
+      String msg = e.getMessage();
+      return msg != null && (msg.contains("could not serialize") || msg.contains("deadlock detected"));
+   }//end isSerializationFailure
+
+   private static void backoff(int attempt) {
+      long ceiling = BASE_BACKOFF_MS << Math.min(attempt, 6);
+      try {
+         Thread.sleep(ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1));
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }//end backoff
+
+   /**
+    * @return the number of stale price versions or serialization failures seen
+    */
+   public static long getConflictCount() {
+      return conflicts.get();
+   }//end getConflictCount
+
+   /**
+    * @return the number of times an order transaction was retried
+    */
+   public static long getRetryCount() {
+      return retries.get();
+   }//end getRetryCount
+
+}//end OptimisticOrders
@@ -0,0 +1,344 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class pushes order status changes to the sessions waiting on them, so
+ * customers no longer re-run viewRecentOrders or viewOrderInfo to see if
+ * their order moved.
+ *
+ * trg_log_order_status_change publishes every change on the order_status
+ * channel with pg_notify (payload orderID|status|storeID|login), and
+ * trg_log_order_placement every new order on order_placed (payload
+ * orderID|storeID|totalPrice|orderTimestamp|login).  One listener thread per
+ * process LISTENs on the home database and on every shard and hands status
+ * changes to the subscribers of the order's login, and both kinds of event
+ * to the followers of all stores (KitchenQueue), whichever terminal made
+ * them.  The same thread LISTENs on StoreAvailability.CHANNEL and drops the
+ * store cache when a store changes.  Changes made by this process are also
+ * published directly, so they arrive without the database round trip; each
+ * change is delivered once to a login's subscribers.
+ *
+ * Notifications are read with pgjdbc's blocking getNotifications(timeout)
+ * on PGConnection, so waiting customers cause no queries at all.
+ *
+ * Polling is a degradation, used only when a database refuses LISTEN, and it
+ * is logged when it starts: every pizzastore.notifyPollMs the listener then
+ * reads the OrderLog and OrderStatusLog rows past the last log_id it saw on
+ * each database.  Both logs carry the order's storeID and login, so FoodOrder
+ * is never read.  The last POLL_OVERLAP log_ids are read again, so a row
+ * whose transaction committed after a higher log_id is not missed; rows are
+ * delivered once.  Store changes then reach StoreAvailability only through
+ * its expiry.
+ *
+ */
+public class OrderEvents {
+
+   public static final String CHANNEL = "order_status";
+
+   public static final String PLACED_CHANNEL = "order_placed";
+
+   private static final int POLL_MS = Integer.getInteger("pizzastore.notifyPollMs", 500);
+
+   // log_ids read again by every poll of a log table
+   private static final long POLL_OVERLAP = 256;
+
+   private static final String STATUS_LOG =
+      "SELECT l.log_id, l.orderID, l.new_status, l.login, l.storeID FROM OrderStatusLog l";
+
+   private static final String ORDER_LOG =
+      "SELECT l.log_id, l.orderID, l.storeID, l.totalPrice, l.orderTimestamp, l.login FROM OrderLog l";
+
+   private static final OrderEvents INSTANCE = new OrderEvents();
+
+   /**
+    * Receives status changes.  Called on the listener thread, or on the
+    * thread that made the change.
+    */
+   public interface Listener {
+      void statusChanged(int orderID, String login, String status);
+   }//end Listener
+
+   /**
+    * Receives the new orders and status changes of every store, from all
+    * terminals.  Called on the listener thread; the same event may arrive
+    * more than once.
+    */
+   public interface StoreListener {
+      void placed(int orderID, int storeID, String login, String totalPrice, long placedAt);
+      void statusChanged(int orderID, int storeID, String status);
+   }//end StoreListener
+
+   private final Map<String, List<Listener>> subscribers = new HashMap<String, List<Listener>>();
+   private final CopyOnWriteArrayList<StoreListener> followers = new CopyOnWriteArrayList<StoreListener>();
+
+   // last status delivered per order, so a change is not delivered twice
+   private final Map<Integer, String> delivered = new LinkedHashMap<Integer, String>() {
+      protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+         return size() > 10000;
+      }
+   };
+
+   /*
+    * Position of the poller in one log table of one database.
+    */
+   private static final class LogCursor {
+      final Connection conn;
+      final String table;
+      long lastLogID;
+      final Set<Long> seen = new HashSet<Long>();
+
+      LogCursor(Connection conn, String table) {
+         this.conn = conn;
+         this.table = table;
+      }
+   }//end LogCursor
+
+   private Thread listener = null;
+   private final List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+   // set when changes are read from the log tables instead of notifications
+   private final List<LogCursor> cursors = new CopyOnWriteArrayList<LogCursor>();
+   private volatile boolean polling = false;
+
+   public static OrderEvents get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Starts listening, once per process.  If LISTEN fails the log tables
+    * are polled instead; if the connections cannot be opened, only
+    * in-process changes are delivered.
+    *
+    * @param esql opens the listening connections
+    */
+   public synchronized void start(PizzaStore esql) {
+      if (listener != null) return;
+      try {
+         connections.addAll(esql.openListenConnections());
+         for (Connection conn : connections) {
+            if (!polling) {
+               try {
+                  conn.unwrap(PGConnection.class);
+                  Statement stmt = conn.createStatement();
+                  stmt.execute("LISTEN " + CHANNEL);
+                  stmt.execute("LISTEN " + PLACED_CHANNEL);
+                  stmt.execute("LISTEN " + StoreAvailability.CHANNEL);
+                  stmt.close();
+               } catch (SQLException e) {
+                  System.err.println("[events] cannot LISTEN (" + e.getMessage() + "); degrading to polling OrderLog" +
+                                     " and OrderStatusLog every " + POLL_MS + " ms on each database");
+                  polling = true;
+               }
+            }
+         }
+         if (polling) {
+            for (Connection conn : connections) {
+               // nothing reads notifications now, so the driver must not queue them
+               Statement stmt = conn.createStatement();
+               stmt.execute("UNLISTEN *");
+               stmt.close();
+               cursors.add(cursor(conn, "OrderLog"));
+               cursors.add(cursor(conn, "OrderStatusLog"));
+            }
+         }
+      } catch (SQLException e) {
+         System.err.println("[events] cannot follow order status changes: " + e.getMessage());
+         stop();
+         return;
+      }
+      listener = new Thread(this::listen, "pizzastore-order-events");
+      listener.setDaemon(true);
+      listener.start();
+   }//end start
+
+   /**
+    * Subscribes to the status changes of a user's orders.
+    */
+   public synchronized void subscribe(String login, Listener l) {
+      List<Listener> list = subscribers.get(login);
+      if (list == null) {
+         list = new CopyOnWriteArrayList<Listener>();
+         subscribers.put(login, list);
+      }
+      list.add(l);
+   }//end subscribe
+
+   /**
+    * Follows the orders of every store.  A listener is added once.
+    */
+   public void follow(StoreListener l) {
+      followers.addIfAbsent(l);
+   }//end follow
+
+   public synchronized void unsubscribe(String login, Listener l) {
+      List<Listener> list = subscribers.get(login);
+      if (list == null) return;
+      list.remove(l);
+      if (list.isEmpty()) subscribers.remove(login);
+   }//end unsubscribe
+
+   /**
+    * Delivers a status change to the subscribers of login, unless it was
+    * already delivered.
+    */
+   public void publish(int orderID, String login, String status) {
+      List<Listener> list;
+      synchronized (this) {
+         String trimmed = status == null ? "" : status.trim();
+         if (trimmed.equals(delivered.get(orderID))) return;
+         delivered.put(orderID, trimmed);
+         list = subscribers.get(login.trim());
+         if (list == null) return;
+         status = trimmed;
+      }
+      for (Listener l : list) {
+         try {
+            l.statusChanged(orderID, login.trim(), status);
+         } catch (RuntimeException e) {
+            System.err.println("[events] listener failed: " + e);
+         }
+      }
+   }//end publish
+
+   private void listen() {
+      try {
+         while (!Thread.currentThread().isInterrupted()) {
+            if (polling) {
+               for (LogCursor cursor : cursors) {
+                  try {
+                     pollLog(cursor);
+                  } catch (SQLException e) {
+                     // retried on the next round
+                     System.err.println("[events] cannot read " + cursor.table + ": " + e.getMessage());
+                  }
+               }
+               Thread.sleep(POLL_MS);
+               continue;
+            }
+            for (Connection conn : connections) {
+               int waitMs = Math.max(1, connections.size() == 1 ? POLL_MS : POLL_MS / connections.size());
+               PGNotification[] notifications = conn.unwrap(PGConnection.class).getNotifications(waitMs);
+               for (int i = 0; notifications != null && i < notifications.length; i++)
+                  dispatch(notifications[i]);
+            }
+         }
+      } catch (InterruptedException e) {
+         // stopped.
+      } catch (Exception e) {
+         System.err.println("[events] stopped listening: " + e.getMessage());
+      }
+   }//end listen
+
+   // starts a poller at the end of a database's OrderLog or OrderStatusLog
+   private static LogCursor cursor(Connection conn, String table) throws SQLException {
+      LogCursor cursor = new LogCursor(conn, table);
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery("SELECT log_id FROM " + table + " WHERE log_id >" +
+         " (SELECT COALESCE(MAX(log_id), 0) FROM " + table + ") - " + POLL_OVERLAP);
+      while (rs.next()) {
+         cursor.seen.add(rs.getLong(1));
+         cursor.lastLogID = Math.max(cursor.lastLogID, rs.getLong(1));
+      }
+      rs.close();
+      stmt.close();
+      return cursor;
+   }//end cursor
+
+   /*
+    * Delivers the log rows not seen yet.
+    */
+   private void pollLog(LogCursor cursor) throws SQLException {
+      long from = cursor.lastLogID - POLL_OVERLAP;
+      boolean placements = cursor.table.equals("OrderLog");
+      Statement stmt = cursor.conn.createStatement();
+      ResultSet rs = stmt.executeQuery((placements ? ORDER_LOG : STATUS_LOG) +
+         " WHERE l.log_id > " + from + " ORDER BY l.log_id");
+      while (rs.next()) {
+         long logID = rs.getLong(1);
+         if (!cursor.seen.add(logID)) continue;
+         cursor.lastLogID = Math.max(cursor.lastLogID, logID);
+         if (placements) {
+            placed(rs.getInt(2), rs.getInt(3), rs.getString(6), rs.getString(4), rs.getTimestamp(5).getTime());
+         } else if (rs.getString(4) != null) {
+            // rows logged before OrderStatusLog had login and storeID are skipped
+            publish(rs.getInt(2), rs.getString(4), rs.getString(3));
+            changed(rs.getInt(2), rs.getInt(5), rs.getString(3));
+         }
+      }
+      rs.close();
+      stmt.close();
+      cursor.seen.removeIf(id -> id <= cursor.lastLogID - POLL_OVERLAP);
+   }//end pollLog
+
+   private void dispatch(PGNotification notification) {
+      String channel = notification.getName();
+      if (StoreAvailability.CHANNEL.equals(channel)) StoreAvailability.invalidate();
+      if (!CHANNEL.equals(channel) && !PLACED_CHANNEL.equals(channel)) return;
+      String payload = notification.getParameter();
+      if (payload == null) return;
+      if (CHANNEL.equals(channel)) {
+         String[] parts = payload.split("\\|", 4);
+         if (parts.length < 4) return;
+         publish(Integer.parseInt(parts[0]), parts[3], parts[1]);
+         changed(Integer.parseInt(parts[0]), Integer.parseInt(parts[2]), parts[1]);
+      } else {
+         String[] parts = payload.split("\\|", 5);
+         if (parts.length < 5) return;
+         placed(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[4], parts[2],
+                Timestamp.valueOf(parts[3]).getTime());
+      }
+   }//end dispatch
+
+   // hands a new order to the followers of all stores
+   private void placed(int orderID, int storeID, String login, String totalPrice, long placedAt) {
+      for (StoreListener l : followers) {
+         try {
+            l.placed(orderID, storeID, login.trim(), totalPrice, placedAt);
+         } catch (RuntimeException e) {
+            System.err.println("[events] listener failed: " + e);
+         }
+      }
+   }//end placed
+
+   // hands a status change to the followers of all stores
+   private void changed(int orderID, int storeID, String status) {
+      for (StoreListener l : followers) {
+         try {
+            l.statusChanged(orderID, storeID, status.trim());
+         } catch (RuntimeException e) {
+            System.err.println("[events] listener failed: " + e);
+         }
+      }
+   }//end changed
+
+   /**
+    * Stops the listener and closes its connections.
+    */
+   public synchronized void stop() {
+      if (listener != null) listener.interrupt();
+      listener = null;
+      for (Connection conn : connections) {
+         try {
+            conn.close();
+         } catch (SQLException e) {
+            // ignored.
+         }
+      }
+      connections.clear();
+      cursors.clear();
+      polling = false;
+   }//end stop
+
+}//end OrderEvents
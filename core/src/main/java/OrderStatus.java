@@ -0,0 +1,41 @@
+/**
+ * The statuses an order goes through.  FoodOrder.orderStatus is the
+ * PostgreSQL enum type order_status with the same labels.
+ *
+ */
+public enum OrderStatus {
+
+   PROCESSING("Processing"),
+   OUT_FOR_DELIVERY("Out for Delivery"),
+   DELIVERED("Delivered"),
+   CANCELLED("Cancelled");
+
+   public final String label;
+
+   OrderStatus(String label) {
+      this.label = label;
+   }//end OrderStatus
+
+   /**
+    * @return true once the kitchen is done with the order
+    */
+   public boolean isTerminal() {
+      return this == DELIVERED || this == CANCELLED;
+   }//end isTerminal
+
+   /**
+    * @param label a status as stored or typed, in any case
+    * @return the status, or null if the label is not one
+    */
+   public static OrderStatus parse(String label) {
+      if (label == null) return null;
+      for (OrderStatus s : values())
+         if (s.label.equalsIgnoreCase(label.trim())) return s;
+      return null;
+   }//end parse
+
+   public String toString() {
+      return label;
+   }//end toString
+
+}//end OrderStatus
@@ -0,0 +1,732 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays; 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class defines a simple embedded SQL utility class that is designed to
+ * work with PostgreSQL JDBC drivers.
+ *
+ */
+public class PizzaStore {
+
+   // reference to physical database connection.
+   private Connection _connection = null;
+
+   // connection being established in the background (fast-start mode)
+   private FutureTask<Connection> _connecting = null;
+
+   // connection parameters, kept to open further connections
+   private String _url = null;
+   private String _user = null;
+   private String _passwd = null;
+
+   // pooled connections for independent lookups, created on first use
+   private AsyncQueries _async = null;
+
+   // read replicas for the read-only operations, null when none configured
+   private ReplicaRouter _replicas = null;
+
+   // databases holding the orders of store ranges, null when not sharded
+   private ShardRouter _shards = null;
+
+   // admission slot held by the open transaction, null when none
+   private AdmissionController.Lane _transactionLane = null;
+
+   // true between beginTransaction() and commit()/rollback(); statements of
+   // an open transaction are never retried by Resilience
+   private boolean _inTransaction = false;
+
+   // shard the session's statements currently go to, null for home
+   private ShardRouter.Shard _shard = null;
+
+   // operations that never write and may therefore read from a replica
+   static final List<String> READ_ONLY_OPERATIONS = Arrays.asList(
+      "viewMenu", "viewStores", "viewAllOrders", "viewRecentOrders", "viewOrderInfo", "viewAuditLog");
+
+   /**
+    * Creates a new instance of PizzaStore
+    *
+    * @param hostname the MySQL or PostgreSQL server hostname
+    * @param database the name of the database
+    * @param username the user name used to login to the database
+    * @param password the user login password
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public PizzaStore(String dbname, String dbport, String user, String passwd) throws SQLException {
+      this(dbname, dbport, user, passwd, false);
+   }//end PizzaStore
+
+   /**
+    * Creates a new instance of PizzaStore, optionally connecting in the
+    * background so the caller can render its menu while the handshake runs.
+    * In that case the first statement waits for the connection.
+    *
+    * @param fastStart true to connect and warm up in the background
+    */
+   public PizzaStore(String dbname, String dbport, String user, String passwd, boolean fastStart) throws SQLException {
+      // constructs the connection URL
+      this._url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+      this._user = user;
+      this._passwd = passwd;
+      this._replicas = ReplicaRouter.fromProperties(dbname, user, passwd);
+      this._shards = ShardRouter.fromProperties(user, passwd);
+      // admission limits shared by every terminal are kept on the home database
+      AdmissionController.get().share(this::openConnection);
+
+      this._connecting = new FutureTask<Connection>(new Callable<Connection>() {
+         public Connection call() throws SQLException {
+            return Resilience.get().connect(PizzaStore.this::openConnection);
+         }
+      });
+
+      if (fastStart){
+         Thread connector = new Thread(this._connecting, "pizzastore-connect");
+         connector.setDaemon(true);
+         connector.start();
+         warmUp();
+         return;
+      }//end if
+
+      System.out.print("Connecting to database...");
+      System.out.println ("Connection URL: " + this._url + "\n");
+      this._connecting.run();
+      try{
+         primary();
+      }catch (SQLException e){
+         throw new SQLException("Error - Unable to Connect to Database: " + e.getMessage() +
+                                "\nMake sure you started postgres on this machine", "08001", e);
+      }//end try
+      System.out.println("Done");
+   }//end PizzaStore
+
+   /**
+    * Method to open an additional physical connection with the parameters
+    * this instance was created with.  The JDBC driver is loaded on first use;
+    * the connection carries the timeouts of Resilience.
+    *
+    * @return a new connection, owned by the caller
+    * @throws java.sql.SQLException when failed to make a connection.
+    */
+   public Connection openConnection() throws SQLException {
+      return Resilience.open(this._url, this._user, this._passwd);
+   }//end openConnection
+
+   /**
+    * Opens a new connection to the home database and to every shard, for
+    * listening to notifications.
+    *
+    * @return the connections; the caller closes them
+    * @throws java.sql.SQLException when a database cannot be reached
+    */
+   public List<Connection> openListenConnections() throws SQLException {
+      List<Connection> conns = new ArrayList<Connection>();
+      conns.add(openConnection());
+      if (this._shards != null){
+         for (ShardRouter.Shard shard : this._shards.shards()){
+            conns.add(shard.open());
+         }//end for
+      }//end if
+      return conns;
+   }//end openListenConnections
+
+   /*
+    * Returns the connection statements currently go to: the selected shard's
+    * or the home database's.
+    */
+   private Connection connection() throws SQLException {
+      return this._shard != null ? this._shard.connection() : primary();
+   }//end connection
+
+   /*
+    * Returns the physical connection to the home database, waiting for a
+    * background connect to finish.  After a failed connect or a lost
+    * connection the next call connects again.
+    */
+   private Connection primary() throws SQLException {
+      if (this._connection == null){
+         if (this._connecting != null){
+            FutureTask<Connection> connecting = this._connecting;
+            this._connecting = null;
+            try{
+               this._connection = connecting.get();
+            }catch (ExecutionException e){
+               Throwable cause = e.getCause();
+               if (cause instanceof SQLException) throw (SQLException) cause;
+               throw new SQLException(String.valueOf(cause.getMessage()), "08001", cause);
+            }catch (InterruptedException e){
+               Thread.currentThread().interrupt();
+               throw new SQLException("Interrupted while connecting", "08001", e);
+            }//end try
+         }else{
+            this._connection = Resilience.get().connect(this::openConnection);
+         }//end if
+      }//end if
+      return this._connection;
+   }//end primary
+
+   /*
+    * Drops the connection the statement went to after it turned out to be
+    * dead, so the next statement opens a new one.
+    */
+   private void connectionLost() {
+      if (this._shard != null){
+         this._shard.close();
+         return;
+      }//end if
+      try{
+         if (this._connection != null) this._connection.close();
+      }catch (SQLException e){
+         // ignored.
+      }finally{
+         this._connection = null;
+      }//end try
+   }//end connectionLost
+
+   /*
+    * Runs the hot start-up queries on a second connection, in parallel with
+    * the main handshake: the menu is loaded into MenuCache and the stores
+    * into StoreAvailability.
+    */
+   private void warmUp() {
+      Thread warmer = new Thread(new Runnable() {
+         public void run() {
+            Connection conn = null;
+            try{
+               conn = openConnection();
+               MenuCache.fill(returnResult(conn, MenuCache.QUERY));
+               StoreAvailability.fill(returnResult(conn, StoreAvailability.QUERY));
+            }catch (Exception e){
+               // warm-up is best effort; the first real query reports errors.
+            }finally{
+               try{
+                  if (conn != null) conn.close();
+               }catch (SQLException e){
+                  // ignored.
+               }//end try
+            }//end try
+         }
+      }, "pizzastore-warmup");
+      warmer.setDaemon(true);
+      warmer.start();
+   }//end warmUp
+
+   /**
+    * Method to execute an update SQL statement.  Update SQL instructions
+    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+    *
+    * @param sql the input SQL string
+    * @throws java.sql.SQLException when update failed
+    */
+   public void executeUpdate (String sql) throws SQLException {
+      long start = QueryMetrics.start();
+      int rowCount = 0;
+      SQLException error = null;
+      AdmissionController.Lane lane = null;
+      try{
+         lane = AdmissionController.get().enter();
+         rowCount = Resilience.get().run(false, this._inTransaction, this::connectionLost, () -> {
+            // creates a statement object
+            Statement stmt = Resilience.limit(connection().createStatement ());
+
+            // issues the update instruction
+            int count = stmt.executeUpdate (sql);
+            noteWrite();
+
+            // close the instruction
+            stmt.close ();
+            return count;
+         });
+      }catch (SQLException e){
+         error = e;
+         throw e;
+      }finally{
+         AdmissionController.get().exit(lane);
+         QueryMetrics.record(sql, start, rowCount, error);
+      }//end try
+   }//end executeUpdate
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and outputs the results to
+    * standard out.
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndPrintResult (String query) throws SQLException {
+      long start = QueryMetrics.start();
+      int rowCount = 0;
+      SQLException error = null;
+      AdmissionController.Lane lane = null;
+      try{
+         lane = AdmissionController.get().enter();
+         rowCount = Resilience.get().run(Resilience.isReadOnly(query), this._inTransaction, this::connectionLost,
+                                         () -> printResult(query));
+         return rowCount;
+      }catch (SQLException e){
+         error = e;
+         throw e;
+      }finally{
+         AdmissionController.get().exit(lane);
+         QueryMetrics.record(query, start, rowCount, error);
+      }//end try
+   }//end executeQueryAndPrintResult
+
+   private int printResult (String query) throws SQLException {
+      // creates a statement object
+      Statement stmt = Resilience.limit(connection().createStatement ());
+
+      // issues the query instruction
+      ResultSet rs = stmt.executeQuery (query);
+
+      /*
+       ** obtains the metadata object for the returned result set.  The metadata
+       ** contains row and column info.
+       */
+      ResultSetMetaData rsmd = rs.getMetaData ();
+      int numCol = rsmd.getColumnCount ();
+      int rowCount = 0;
+
+      // iterates through the result set and output them to standard out.
+      boolean outputHeader = true;
+      while (rs.next()){
+		 if(outputHeader){
+			for(int i = 1; i <= numCol; i++){
+			System.out.print(rsmd.getColumnName(i) + "\t");
+			}
+			System.out.println();
+			outputHeader = false;
+		 }
+         for (int i=1; i<=numCol; ++i)
+            System.out.print (rs.getString (i) + "\t");
+         System.out.println ();
+         ++rowCount;
+      }//end while
+      stmt.close();
+      return rowCount;
+   }//end printResult
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results as
+    * a list of records. Each record in turn is a list of attribute values
+    *
+    * @param query the input query string
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
+      long start = QueryMetrics.start();
+      List<List<String>> result = null;
+      SQLException error = null;
+      AdmissionController.Lane lane = null;
+      try{
+         lane = AdmissionController.get().enter();
+         result = Resilience.get().run(Resilience.isReadOnly(query), this._inTransaction, this::connectionLost, () -> {
+            List<List<String>> rows = queryReplica(query);
+            if (rows == null){
+               rows = returnResult(connection(), query);
+               noteWrite();
+            }//end if
+            return rows;
+         });
+         return result;
+      }catch (SQLException e){
+         error = e;
+         throw e;
+      }finally{
+         AdmissionController.get().exit(lane);
+         QueryMetrics.record(query, start, result == null ? 0 : result.size(), error);
+      }//end try
+   }//end executeQueryAndReturnResult
+
+   static List<List<String>> returnResult (Connection conn, String query) throws SQLException {
+      // creates a statement object
+      Statement stmt = Resilience.limit(conn.createStatement ());
+
+      // issues the query instruction
+      ResultSet rs = stmt.executeQuery (query);
+
+      /*
+       ** obtains the metadata object for the returned result set.  The metadata
+       ** contains row and column info.
+       */
+      ResultSetMetaData rsmd = rs.getMetaData ();
+      int numCol = rsmd.getColumnCount ();
+      int rowCount = 0;
+
+      // iterates through the result set and saves the data returned by the query.
+      boolean outputHeader = false;
+      List<List<String>> result  = new ArrayList<List<String>>();
+      while (rs.next()){
+        List<String> record = new ArrayList<String>();
+		for (int i=1; i<=numCol; ++i)
+			record.add(rs.getString (i));
+        result.add(record);
+      }//end while
+      stmt.close ();
+      return result;
+   }//end returnResult
+
+   /**
+    * Runs a query on a read replica when the current operation is read-only
+    * and this session did not just write.  Read-only operations never open
+    * transactions, so their statements need not see the primary connection.
+    *
+    * @return the result, or null if the primary has to answer the query
+    */
+   List<List<String>> queryReplica (String query) throws SQLException {
+      if (this._replicas == null || this._shard != null || !READ_ONLY_OPERATIONS.contains(QueryMetrics.currentOperation())){
+         return null;
+      }//end if
+      return this._replicas.query(query);
+   }//end queryReplica
+
+   /*
+    * Keeps this session's reads on the primary for a while after a statement
+    * of a writing operation, so the user reads their own writes.
+    */
+   private void noteWrite () {
+      if (this._replicas != null && !READ_ONLY_OPERATIONS.contains(QueryMetrics.currentOperation())){
+         this._replicas.noteWrite();
+      }//end if
+   }//end noteWrite
+
+   /**
+    * Method to direct the following statements to the database that owns the
+    * orders of a store.  Without sharding this is the home database.  Call
+    * useHome() when done.
+    *
+    * @param storeID the store whose orders are about to be read or written
+    */
+   public void useStore (int storeID) {
+      this._shard = this._shards == null ? null : this._shards.forStore(storeID);
+   }//end useStore
+
+   /**
+    * Method to direct the following statements back to the home database.
+    */
+   public void useHome () {
+      this._shard = null;
+   }//end useHome
+
+   /**
+    * @return true when orders are spread over several databases
+    */
+   public boolean isSharded () {
+      return this._shards != null;
+   }//end isSharded
+
+   /**
+    * Method to copy rows of a reference table (Users, Items, Store) that
+    * were just written on the home database to every shard, so orders placed
+    * there see them.  Without sharding it does nothing.  A failed copy is
+    * reported but does not fail the caller, whose change is already
+    * committed; "ShardRebalancer ... sync" copies it later.
+    *
+    * @param table the table written
+    * @param keyColumn its primary key
+    * @param where selects the rows that were written
+    */
+   public void replicate (String table, String keyColumn, String where) {
+      if (this._shards == null) return;
+      try{
+         this._shards.replicate(primary(), table, keyColumn, where);
+      }catch (SQLException e){
+         System.err.println("[shard] could not copy " + table + " rows to every shard, run ShardRebalancer sync: " +
+                            QueryMetrics.normalize(e.getMessage()));
+      }//end try
+   }//end replicate
+
+   /**
+    * Method to execute a query over the orders of every store.  Without
+    * sharding this is executeQueryAndReturnResult; with sharding the query
+    * runs on the home database and every shard at once and the rows are
+    * merged on sortColumn.
+    *
+    * @param query the input query string, sorted by sortColumn if any
+    * @param sortColumn the column to merge on, or -1
+    * @param descending true if the query sorts descending
+    * @param limit maximum number of rows, or -1 for all
+    * @return the query result as a list of records
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public List<List<String>> executeQueryOnAllShards (String query, int sortColumn, boolean descending, int limit) throws SQLException {
+      if (this._shards == null){
+         return executeQueryAndReturnResult(query);
+      }//end if
+      long start = QueryMetrics.start();
+      List<List<String>> result = null;
+      SQLException error = null;
+      AdmissionController.Lane lane = null;
+      try{
+         lane = AdmissionController.get().enter();
+         result = Resilience.get().run(true, false, this::connectionLost,
+            () -> this._shards.gather(q -> returnResult(primary(), q), query, sortColumn, descending, limit));
+         return result;
+      }catch (SQLException e){
+         error = e;
+         throw e;
+      }finally{
+         AdmissionController.get().exit(lane);
+         QueryMetrics.record(query, start, result == null ? 0 : result.size(), error);
+      }//end try
+   }//end executeQueryOnAllShards
+
+   /**
+    * @return the number of databases holding orders: the home database and
+    *         every shard
+    */
+   public int databaseCount () {
+      return this._shards == null ? 1 : 1 + this._shards.shards().size();
+   }//end databaseCount
+
+   /**
+    * Method to execute one query on each database holding orders, at once.
+    *
+    * @param queries the home database's query, then one per shard
+    *        (databaseCount() in all)
+    * @return the query result of each database, in the same order
+    * @throws java.sql.SQLException when failed to execute a query
+    */
+   public List<List<List<String>>> executeQueryOnEachShard (String[] queries) throws SQLException {
+      if (this._shards == null){
+         List<List<List<String>>> results = new ArrayList<List<List<String>>>();
+         results.add(executeQueryAndReturnResult(queries[0]));
+         return results;
+      }//end if
+      long start = QueryMetrics.start();
+      List<List<List<String>>> result = null;
+      SQLException error = null;
+      AdmissionController.Lane lane = null;
+      try{
+         lane = AdmissionController.get().enter();
+         result = Resilience.get().run(true, false, this::connectionLost,
+            () -> this._shards.gatherEach(q -> returnResult(primary(), q), queries));
+         return result;
+      }catch (SQLException e){
+         error = e;
+         throw e;
+      }finally{
+         AdmissionController.get().exit(lane);
+         int rows = 0;
+         for (int i = 0; result != null && i < result.size(); i++) rows += result.get(i).size();
+         QueryMetrics.record(queries[0], start, rows, error);
+      }//end try
+   }//end executeQueryOnEachShard
+
+   /**
+    * Method to execute one query on each database holding orders without
+    * waiting for it.  The home database's query runs on a pooled connection,
+    * as with executeQueryAsync, so it does not see uncommitted work of this
+    * connection.
+    *
+    * @param queries the home database's query, then one per shard
+    *        (databaseCount() in all)
+    * @return the query result of each database, in the same order, once
+    *         available
+    */
+   public CompletableFuture<List<List<List<String>>>> executeQueryOnEachShardAsync (final String[] queries) {
+      final CompletableFuture<List<List<String>>> home = executeQueryAsync(queries[0]);
+      if (this._shards == null){
+         return home.thenApply(rows -> {
+            List<List<List<String>>> results = new ArrayList<List<List<String>>>();
+            results.add(rows);
+            return results;
+         });
+      }//end if
+      final ShardRouter shards = this._shards;
+      return CompletableFuture.supplyAsync(() -> {
+         try{
+            return shards.gatherEach(q -> home.join(), queries);
+         }catch (SQLException e){
+            throw new CompletionException(e);
+         }//end try
+      });
+   }//end executeQueryOnEachShardAsync
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) on a
+    * pooled connection without waiting for it.  Independent lookups issued
+    * this way run concurrently, so a flow pays one round trip for all of
+    * them.  The query does not see uncommitted work of this connection.
+    *
+    * @param query the input query string
+    * @return the query result as a list of records, once available
+    */
+   public CompletableFuture<List<List<String>>> executeQueryAsync (String query) {
+      synchronized (this){
+         if (this._async == null){
+            this._async = new AsyncQueries(this, Integer.getInteger("pizzastore.asyncPoolSize", 3));
+         }//end if
+      }//end synchronized
+      return this._async.query(query);
+   }//end executeQueryAsync
+
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the number of results
+    *
+    * @param query the input query string
+    * @return the number of rows returned
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQuery (String query) throws SQLException {
+       long start = QueryMetrics.start();
+       int rowCount = 0;
+       SQLException error = null;
+       AdmissionController.Lane lane = null;
+       try{
+          lane = AdmissionController.get().enter();
+          rowCount = Resilience.get().run(Resilience.isReadOnly(query), this._inTransaction, this::connectionLost, () -> {
+             // creates a statement object
+             Statement stmt = Resilience.limit(connection().createStatement ());
+
+             // issues the query instruction
+             ResultSet rs = stmt.executeQuery (query);
+
+             // iterates through the result set and count nuber of results.
+             int count = 0;
+             while (rs.next()){
+                count++;
+             }//end while
+             stmt.close ();
+             return count;
+          });
+          return rowCount;
+       }catch (SQLException e){
+          error = e;
+          throw e;
+       }finally{
+          AdmissionController.get().exit(lane);
+          QueryMetrics.record(query, start, rowCount, error);
+       }//end try
+   }
+
+   /**
+    * Method to fetch the last value from sequence. This
+    * method issues the query to the DBMS and returns the current
+    * value of sequence used for autogenerated keys
+    *
+    * @param sequence name of the DB sequence
+    * @return current value of a sequence
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int getCurrSeqVal(String sequence) throws SQLException {
+	Statement stmt = connection().createStatement ();
+
+	ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
+	if (rs.next())
+		return rs.getInt(1);
+	return -1;
+   }
+
+   /**
+    * Method to start a transaction on the physical connection.  Statements
+    * issued through the execute methods run inside it until commit() or
+    * rollback() is called.  The transaction holds one admission slot
+    * throughout, so its statements are never queued or rejected halfway.
+    *
+    * @param isolation one of the java.sql.Connection TRANSACTION_* levels
+    * @throws java.sql.SQLException when the transaction cannot be started
+    */
+   public void beginTransaction(int isolation) throws SQLException {
+      this._transactionLane = AdmissionController.get().enter();
+      try{
+         connection().setAutoCommit(false);
+         connection().setTransactionIsolation(isolation);
+         this._inTransaction = true;
+      }catch (SQLException e){
+         endTransaction();
+         throw e;
+      }//end try
+   }//end beginTransaction
+
+   private void endTransaction() {
+      this._inTransaction = false;
+      AdmissionController.get().exit(this._transactionLane);
+      this._transactionLane = null;
+   }//end endTransaction
+
+   /**
+    * Method to commit the current transaction and return to auto-commit.
+    *
+    * @throws java.sql.SQLException when the commit failed
+    */
+   public void commit() throws SQLException {
+      try{
+         connection().commit();
+         noteWrite();
+      }finally{
+         endTransaction();
+         connection().setAutoCommit(true);
+      }//end try
+   }//end commit
+
+   /**
+    * Method to roll back the current transaction, if any, and return to
+    * auto-commit.  Errors are ignored since the transaction is abandoned.
+    */
+   public void rollback(){
+      try{
+         if (!connection().getAutoCommit()){
+            connection().rollback();
+            connection().setAutoCommit(true);
+         }//end if
+      }catch (SQLException e){
+         // ignored.
+      }finally{
+         endTransaction();
+      }//end try
+   }//end rollback
+
+   /**
+    * Method to close the physical connection if it is open.
+    */
+   public void cleanup(){
+      try{
+         if (this._async != null){
+            this._async.shutdown();
+         }//end if
+         if (this._replicas != null){
+            this._replicas.shutdown();
+         }//end if
+         if (this._shards != null){
+            this._shards.shutdown();
+         }//end if
+         OrderEvents.get().stop();
+         if (this._connection == null && this._connecting != null && this._connecting.isDone()){
+            this._connection = this._connecting.get();
+         }//end if
+         if (this._connection != null){
+            this._connection.close ();
+         }//end if
+      }catch (Exception e){
+         // ignored.
+      }//end try
+   }//end cleanup
+
+}//end PizzaStore
@@ -0,0 +1,251 @@
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class records what every statement issued through the PizzaStore
+ * execute methods costs.  Statements are tagged with the operation that is
+ * running on the current thread (placeOrder, viewMenu, ...) and for every tag
+ * it keeps call, row and error counts plus a log2 latency histogram.
+ * Statements slower than the threshold and failed statements are logged on
+ * standard error, since the callers usually swallow the exception.  Only
+ * the normalized statement is logged, with every literal replaced by '?',
+ * so passwords and other user input never reach the log.
+ *
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+
+   public static final String OBJECT_NAME = "PizzaStore:type=QueryMetrics";
+
+   // bucket i counts latencies in [2^(i-1), 2^i) microseconds
+   private static final int BUCKETS = 40;
+
+   private static final QueryMetrics INSTANCE = new QueryMetrics();
+
+   // string literals (with '' escapes) and numbers that are not part of a name
+   private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'?");
+   private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.$])\\d+(?:\\.\\d+)?(?![\\w.])");
+   private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+   private static final int MAX_LOGGED_CHARS = 500;
+
+   private static final ThreadLocal<String> operation = new ThreadLocal<String>() {
+      @Override protected String initialValue() { return "main"; }
+   };
+
+   private final Map<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+   private final LongAdder slowStatements = new LongAdder();
+   private volatile long slowQueryThresholdMillis = Long.getLong("pizzastore.slowQueryMs", 200L);
+
+   /*
+    * Counters of a single operation tag.
+    */
+   private static class Stats {
+      final LongAdder calls = new LongAdder();
+      final LongAdder errors = new LongAdder();
+      final LongAdder rows = new LongAdder();
+      final LongAdder totalMicros = new LongAdder();
+      final AtomicLong maxMicros = new AtomicLong();
+      final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+      long percentile(double p) {
+         long count = 0;
+         for (int i = 0; i < BUCKETS; i++) count += histogram.get(i);
+         if (count == 0) return -1;
+         long rank = (long) Math.ceil(count * p / 100.0);
+         long seen = 0;
+         for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram.get(i);
+            if (seen >= Math.max(rank, 1)) return Math.min(1L << i, maxMicros.get());
+         }
+         return maxMicros.get();
+      }
+   }//end Stats
+
+   public static QueryMetrics get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Registers the metrics with the platform MBean server.  Failures are
+    * reported but never stop the application.
+    */
+   public static void register() {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = new ObjectName(OBJECT_NAME);
+         if (!server.isRegistered(name))
+            server.registerMBean(INSTANCE, name);
+      } catch (Exception e) {
+         System.err.println("Unable to register query metrics: " + e.getMessage());
+      }
+   }//end register
+
+   /**
+    * Tags every statement subsequently issued by this thread.
+    *
+    * @param tag the name of the user-facing operation, e.g. placeOrder
+    */
+   public static void setOperation(String tag) {
+      operation.set(tag);
+   }//end setOperation
+
+   public static String currentOperation() {
+      return operation.get();
+   }//end currentOperation
+
+   /**
+    * @return a start mark to pass to record()
+    */
+   public static long start() {
+      return System.nanoTime();
+   }//end start
+
+   /**
+    * Records one finished statement under the current operation tag.
+    *
+    * @param sql the statement text; only its normalized form is logged
+    * @param startNanos the value returned by start()
+    * @param rows rows returned or affected
+    * @param error the failure, or null on success
+    */
+   public static void record(String sql, long startNanos, long rows, Throwable error) {
+      INSTANCE.record(operation.get(), sql, (System.nanoTime() - startNanos) / 1000, rows, error);
+   }//end record
+
+   private void record(String tag, String sql, long micros, long rows, Throwable error) {
+      Stats s = stats.get(tag);
+      if (s == null) {
+         stats.putIfAbsent(tag, new Stats());
+         s = stats.get(tag);
+      }
+      s.calls.increment();
+      s.rows.add(rows);
+      s.totalMicros.add(micros);
+      s.histogram.incrementAndGet(bucket(micros));
+      long max;
+      while (micros > (max = s.maxMicros.get()) && !s.maxMicros.compareAndSet(max, micros)) { }
+
+      if (error != null) {
+         s.errors.increment();
+         String state = error instanceof SQLException ? ((SQLException) error).getSQLState() : null;
+         System.err.println("[query error] " + tag + " (" + (state == null ? error.getClass().getSimpleName() : state) + "): " +
+                            normalize(String.valueOf(error.getMessage())) + " -- " + normalize(sql));
+      }
+      if (micros / 1000 >= slowQueryThresholdMillis) {
+         slowStatements.increment();
+         System.err.println("[slow query] " + tag + " " + (micros / 1000) + " ms -- " + normalize(sql));
+      }
+   }//end record
+
+   /**
+    * Replaces every literal of a statement with '?' and collapses
+    * whitespace, e.g. "... WHERE login='bob' AND password='x'" becomes
+    * "... WHERE login=? AND password=?".
+    *
+    * @param sql the statement text
+    * @return the text to log
+    */
+   static String normalize(String sql) {
+      if (sql == null) return "";
+      String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+      s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+      s = WHITESPACE.matcher(s).replaceAll(" ").trim();
+      return s.length() > MAX_LOGGED_CHARS ? s.substring(0, MAX_LOGGED_CHARS) + "..." : s;
+   }//end normalize
+
+   private static int bucket(long micros) {
+      int b = 64 - Long.numberOfLeadingZeros(Math.max(micros, 0));
+      return Math.min(b, BUCKETS - 1);
+   }//end bucket
+
+   @Override
+   public String[] getOperationNames() {
+      return new TreeMap<String, Stats>(stats).keySet().toArray(new String[0]);
+   }
+
+   @Override
+   public String[] getOperationSummaries() {
+      List<String> lines = new ArrayList<String>();
+      for (Map.Entry<String, Stats> e : new TreeMap<String, Stats>(stats).entrySet()) {
+         Stats s = e.getValue();
+         long calls = s.calls.sum();
+         lines.add(String.format("%-18s calls=%d errors=%d rows=%d avg=%dus p50=%dus p95=%dus p99=%dus max=%dus",
+               e.getKey(), calls, s.errors.sum(), s.rows.sum(),
+               calls == 0 ? 0 : s.totalMicros.sum() / calls,
+               s.percentile(50), s.percentile(95), s.percentile(99), s.maxMicros.get()));
+      }
+      return lines.toArray(new String[0]);
+   }
+
+   @Override
+   public long getTotalStatements() {
+      long total = 0;
+      for (Stats s : stats.values()) total += s.calls.sum();
+      return total;
+   }
+
+   @Override
+   public long getTotalErrors() {
+      long total = 0;
+      for (Stats s : stats.values()) total += s.errors.sum();
+      return total;
+   }
+
+   @Override
+   public long getSlowStatements() {
+      return slowStatements.sum();
+   }
+
+   @Override
+   public long getSlowQueryThresholdMillis() {
+      return slowQueryThresholdMillis;
+   }
+
+   @Override
+   public void setSlowQueryThresholdMillis(long millis) {
+      slowQueryThresholdMillis = millis;
+   }
+
+   @Override
+   public long getOrderConflicts() {
+      return OptimisticOrders.getConflictCount();
+   }
+
+   @Override
+   public long getOrderRetries() {
+      return OptimisticOrders.getRetryCount();
+   }
+
+   @Override
+   public String[] getAdmissionSummaries() {
+      return AdmissionController.get().summaries();
+   }
+
+   @Override
+   public long getRejectedStatements() {
+      return AdmissionController.get().rejectedCount();
+   }
+
+   @Override
+   public long latencyPercentileMicros(String tag, double percentile) {
+      Stats s = stats.get(tag);
+      return s == null ? -1 : s.percentile(percentile);
+   }
+
+   @Override
+   public void reset() {
+      stats.clear();
+      slowStatements.reset();
+   }
+
+}//end QueryMetrics
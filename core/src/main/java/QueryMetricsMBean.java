@@ -0,0 +1,50 @@
+/**
+ * JMX management interface of QueryMetrics, registered under
+ * PizzaStore:type=QueryMetrics so that jconsole or any JMX client can read
+ * the per-operation statement statistics of a running PizzaStore.
+ *
+ */
+public interface QueryMetricsMBean {
+
+   /** @return the operation tags that issued at least one statement */
+   String[] getOperationNames();
+
+   /** @return one summary line per operation tag */
+   String[] getOperationSummaries();
+
+   /** @return statements issued by all operations */
+   long getTotalStatements();
+
+   /** @return failed statements across all operations */
+   long getTotalErrors();
+
+   /** @return statements slower than the slow-query threshold */
+   long getSlowStatements();
+
+   long getSlowQueryThresholdMillis();
+
+   void setSlowQueryThresholdMillis(long millis);
+
+   /** @return stale price versions seen while placing orders */
+   long getOrderConflicts();
+
+   /** @return order transactions that had to be retried */
+   long getOrderRetries();
+
+   /** @return one line per admission lane: running, queued, admitted, rejected */
+   String[] getAdmissionSummaries();
+
+   /** @return statements rejected by admission control */
+   long getRejectedStatements();
+
+   /**
+    * @param operation an operation tag, e.g. placeOrder
+    * @param percentile between 0 and 100
+    * @return the latency percentile in microseconds, or -1 if unknown
+    */
+   long latencyPercentileMicros(String operation, double percentile);
+
+   /** Clears all recorded statistics. */
+   void reset();
+
+}//end QueryMetricsMBean
@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class suggests menu items at order time.  It counts how often two
+ * items appear in the same order (from ItemsInOrder) and keeps, for every
+ * item, the list of items most often ordered with it.  Suggestions combine
+ * those lists with the customer's favoriteItems, so placeOrder never waits
+ * on the database for them.
+ *
+ * Items are numbered on first sight and all counts live in primitive arrays
+ * and open-addressing int maps.  The first refresh reads all of
+ * ItemsInOrder on the home database and every shard; later refreshes only
+ * fetch the orders whose OrderLog row is past the last log_id read on that
+ * database.  The last LOG_OVERLAP log_ids are read again, so an order whose
+ * transaction committed after one with a higher log_id is not skipped;
+ * orders are counted once.  Orders this session places are counted at once
+ * and skipped when a refresh reads them; a refresh started after the order
+ * was placed has read it, so it forgets the order either way.
+ *
+ */
+public class Recommender {
+
+   // partners remembered per item
+   private static final int TOP_N = 5;
+
+   // log_ids read again by every refresh of a database
+   private static final long LOG_OVERLAP = 256;
+
+   private static final Recommender INSTANCE = new Recommender();
+
+   private final Map<String, Integer> ids = new HashMap<String, Integer>();   // lower-case name -> id
+   private String[] names = new String[64];
+   private int[] popularity = new int[64];
+   private IntIntMap[] cooccurrence = new IntIntMap[64];
+   private int[][] top = new int[64][];
+   private int[] popular = new int[0];
+   private int itemCount = 0;
+   // per database: highest OrderLog log_id read, or -1 before the first refresh
+   private long[] lastLogID = new long[0];
+   // per database: the orders of the last LOG_OVERLAP log_ids read, by log_id
+   private final List<Map<Long, Integer>> recent = new ArrayList<Map<Long, Integer>>();
+   // orders counted by recordOrder that no refresh has read yet, with the
+   // number of refreshes started when they were recorded
+   private final Map<Integer, Integer> recordedLocally = new HashMap<Integer, Integer>();
+   private int refreshes = 0;
+   private CompletableFuture<Void> refreshing = null;
+
+   /*
+    * Open-addressing map from int to int, without boxing.
+    */
+   static final class IntIntMap {
+      private static final int FREE = Integer.MIN_VALUE;
+      int[] keys;
+      int[] values;
+      int size;
+
+      IntIntMap() {
+         keys = new int[8];
+         values = new int[8];
+         Arrays.fill(keys, FREE);
+      }
+
+      void add(int key, int delta) {
+         if ((size + 1) * 4 > keys.length * 3) grow();
+         int mask = keys.length - 1;
+         int i = mix(key) & mask;
+         while (keys[i] != FREE && keys[i] != key) i = (i + 1) & mask;
+         if (keys[i] == FREE) {
+            keys[i] = key;
+            size++;
+         }
+         values[i] += delta;
+      }
+
+      private void grow() {
+         int[] oldKeys = keys, oldValues = values;
+         keys = new int[oldKeys.length * 2];
+         values = new int[oldKeys.length * 2];
+         Arrays.fill(keys, FREE);
+         size = 0;
+         for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != FREE) add(oldKeys[i], oldValues[i]);
+      }
+
+      private static int mix(int key) {
+         int h = key * 0x9E3779B9;
+         return h ^ (h >>> 16);
+      }
+   }//end IntIntMap
+
+   public static Recommender get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Fetches orders placed since the last refresh from every database, on
+    * pooled connections, and folds them into the counts.  Only one refresh
+    * runs at a time.
+    *
+    * @param esql the database connection
+    */
+   public synchronized void refreshAsync(PizzaStore esql) {
+      if (refreshing != null && !refreshing.isDone()) return;
+      int databases = esql.databaseCount();
+      while (lastLogID.length < databases) {
+         lastLogID = Arrays.copyOf(lastLogID, lastLogID.length + 1);
+         lastLogID[lastLogID.length - 1] = -1;
+         recent.add(new HashMap<Long, Integer>());
+      }
+      String[] queries = new String[databases];
+      for (int d = 0; d < databases; d++) {
+         // orders loaded before the log triggers existed have no log_id
+         queries[d] = lastLogID[d] < 0 ?
+            "SELECT i.orderID, i.itemName, (SELECT MAX(l.log_id) FROM OrderLog l WHERE l.orderID = i.orderID)" +
+            " FROM ItemsInOrder i ORDER BY i.orderID" :
+            "SELECT l.orderID, i.itemName, l.log_id FROM OrderLog l JOIN ItemsInOrder i ON i.orderID = l.orderID" +
+            " WHERE l.log_id > " + (lastLogID[d] - LOG_OVERLAP) + " ORDER BY l.log_id";
+      }
+      final int generation = ++refreshes;
+      refreshing = esql.executeQueryOnEachShardAsync(queries).thenAccept(parts -> load(generation, parts));
+   }//end refreshAsync
+
+   /*
+    * Groups consecutive rows of the same order and counts each group not
+    * counted yet, then moves the watermarks and forgets the local orders
+    * this refresh has passed.
+    */
+   private synchronized void load(int generation, List<List<List<String>>> parts) {
+      for (int d = 0; d < parts.size(); d++) {
+         List<String> basket = new ArrayList<String>();
+         int current = Integer.MIN_VALUE;
+         long logID = -1;
+         long highest = Math.max(0, lastLogID[d]);
+         for (List<String> row : parts.get(d)) {
+            int orderID = Integer.parseInt(row.get(0));
+            if (orderID != current && !basket.isEmpty()) {
+               loaded(d, current, logID, basket);
+               basket.clear();
+            }
+            current = orderID;
+            logID = row.get(2) == null ? -1 : Long.parseLong(row.get(2));
+            highest = Math.max(highest, logID);
+            basket.add(row.get(1));
+         }
+         if (!basket.isEmpty()) loaded(d, current, logID, basket);
+         final long watermark = highest;
+         lastLogID[d] = watermark;
+         recent.get(d).keySet().removeIf(id -> id <= watermark - LOG_OVERLAP);
+      }
+      recordedLocally.values().removeIf(recordedAt -> recordedAt < generation);
+   }//end load
+
+   private void loaded(int database, int orderID, long logID, List<String> itemNames) {
+      if (logID >= 0 && recent.get(database).put(logID, orderID) != null) return; // read by an earlier refresh
+      if (recordedLocally.remove(orderID) == null) count(itemNames);
+   }//end loaded
+
+   /**
+    * Adds an order this session placed to the counts right away.  The next
+    * refresh does not count it again.
+    *
+    * @param orderID the order
+    * @param itemNames the items of the order
+    */
+   public synchronized void recordOrder(int orderID, List<String> itemNames) {
+      for (Map<Long, Integer> orders : recent)
+         if (orders.containsValue(orderID)) return; // already read from the database
+      if (recordedLocally.put(orderID, refreshes) == null) count(itemNames);
+   }//end recordOrder
+
+   /*
+    * Adds one order to the counts and recomputes the partner lists of the
+    * items it contains.
+    */
+   private void count(List<String> itemNames) {
+      int[] basket = new int[itemNames.size()];
+      for (int i = 0; i < basket.length; i++) {
+         basket[i] = id(itemNames.get(i));
+         popularity[basket[i]]++;
+      }
+      for (int i = 0; i < basket.length; i++)
+         for (int j = 0; j < basket.length; j++)
+            if (basket[i] != basket[j]) cooccurrence[basket[i]].add(basket[j], 1);
+      for (int item : basket)
+         top[item] = best(cooccurrence[item].keys, cooccurrence[item].values, TOP_N);
+      popular = null;
+   }//end count
+
+   /**
+    * Suggests items for a customer.
+    *
+    * @param favoriteItems the customer's free-text favoriteItems, comma-separated
+    * @param basket items already chosen, which are never suggested
+    * @param n the number of suggestions
+    * @return item names, best first
+    */
+   public synchronized List<String> suggest(String favoriteItems, List<String> basket, int n) {
+      List<Integer> seeds = new ArrayList<Integer>();
+      if (favoriteItems != null) {
+         for (String favorite : favoriteItems.split(",")) {
+            Integer id = ids.get(favorite.trim().toLowerCase());
+            if (id != null) seeds.add(id);
+         }
+      }
+      boolean[] chosen = new boolean[itemCount];
+      for (String name : basket) {
+         Integer id = ids.get(name.toLowerCase());
+         if (id != null) {
+            chosen[id] = true;
+            seeds.add(id);
+         }
+      }
+
+      // favorites score highest, then their partners by co-occurrence rank
+      double[] score = new double[itemCount];
+      for (int seed : seeds) {
+         score[seed] += TOP_N + 1;
+         int[] partners = top[seed];
+         for (int r = 0; partners != null && r < partners.length; r++)
+            score[partners[r]] += TOP_N - r;
+      }
+      if (popular == null) popular = best(null, popularity, itemCount);
+      for (int r = 0; r < popular.length && r < TOP_N; r++)
+         score[popular[r]] += 0.5 * (TOP_N - r) / TOP_N;
+
+      List<String> suggestions = new ArrayList<String>();
+      int[] ranked = best(null, toCounts(score), n + basket.size());
+      for (int item : ranked) {
+         if (suggestions.size() == n) break;
+         if (!chosen[item] && score[item] > 0) suggestions.add(names[item]);
+      }
+      return suggestions;
+   }//end suggest
+
+   private int id(String name) {
+      String key = name.trim().toLowerCase();
+      Integer id = ids.get(key);
+      if (id != null) return id;
+      if (itemCount == names.length) {
+         int size = names.length * 2;
+         names = Arrays.copyOf(names, size);
+         popularity = Arrays.copyOf(popularity, size);
+         cooccurrence = Arrays.copyOf(cooccurrence, size);
+         top = Arrays.copyOf(top, size);
+      }
+      names[itemCount] = name.trim();
+      cooccurrence[itemCount] = new IntIntMap();
+      ids.put(key, itemCount);
+      return itemCount++;
+   }//end id
+
+   /*
+    * Returns up to n keys with the largest values, largest first.  With
+    * keys == null the array index is the key.
+    */
+   private int[] best(int[] keys, int[] values, int n) {
+      int[] bestKeys = new int[n];
+      int[] bestValues = new int[n];
+      int found = 0;
+      int length = keys == null ? Math.min(values.length, itemCount) : keys.length;
+      for (int i = 0; i < length; i++) {
+         if (keys != null && keys[i] == IntIntMap.FREE) continue;
+         int key = keys == null ? i : keys[i];
+         int value = values[i];
+         if (value <= 0) continue;
+         int pos = found < n ? found++ : n;
+         while (pos > 0 && bestValues[pos - 1] < value) {
+            if (pos < n) { bestKeys[pos] = bestKeys[pos - 1]; bestValues[pos] = bestValues[pos - 1]; }
+            pos--;
+         }
+         if (pos < n) { bestKeys[pos] = key; bestValues[pos] = value; }
+      }
+      return Arrays.copyOf(bestKeys, found);
+   }//end best
+
+   private static int[] toCounts(double[] score) {
+      int[] counts = new int[score.length];
+      for (int i = 0; i < score.length; i++)
+         counts[i] = (int) Math.round(score[i] * 100);
+      return counts;
+   }//end toCounts
+
+}//end Recommender
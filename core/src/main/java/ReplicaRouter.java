@@ -0,0 +1,170 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class sends read-only statements to PostgreSQL read replicas.
+ * Replicas are listed in the pizzastore.replicas system property as
+ * host:port pairs (same database, user and password as the primary) and are
+ * probed in the background every pizzastore.replicaCheckMs milliseconds; a
+ * replica that fails a probe or a statement is skipped until it answers again.
+ *
+ * After this session writes to the primary, reads stay on the primary for
+ * pizzastore.readYourWritesMs milliseconds so the user sees their own change
+ * even if the replicas lag behind.
+ *
+ */
+public class ReplicaRouter {
+
+   private static final long CHECK_MS = Long.getLong("pizzastore.replicaCheckMs", 5000L);
+   private static final long STICKY_MS = Long.getLong("pizzastore.readYourWritesMs", 5000L);
+
+   /*
+    * One replica endpoint and its connection.  All use of the connection is
+    * synchronized on the Replica.
+    */
+   private static class Replica {
+      final String url;
+      Connection conn = null;
+      volatile boolean healthy = false;
+
+      Replica(String url) {
+         this.url = url;
+      }
+   }//end Replica
+
+   private final List<Replica> replicas = new ArrayList<Replica>();
+   private final String user;
+   private final String passwd;
+   private final AtomicInteger next = new AtomicInteger();
+   private final ScheduledExecutorService checker;
+   private volatile long lastWriteAt = 0;
+
+   /**
+    * Builds a router from the pizzastore.replicas property.
+    *
+    * @return the router, or null when no replica is configured
+    */
+   public static ReplicaRouter fromProperties(String dbname, String user, String passwd) {
+      String list = System.getProperty("pizzastore.replicas", "").trim();
+      if (list.isEmpty()) return null;
+      List<String> urls = new ArrayList<String>();
+      for (String endpoint : list.split(",")) {
+         if (!endpoint.trim().isEmpty())
+            urls.add("jdbc:postgresql://" + endpoint.trim() + "/" + dbname);
+      }
+      return urls.isEmpty() ? null : new ReplicaRouter(urls, user, passwd);
+   }//end fromProperties
+
+   public ReplicaRouter(List<String> urls, String user, String passwd) {
+      this.user = user;
+      this.passwd = passwd;
+      for (String url : urls)
+         replicas.add(new Replica(url));
+      checker = Executors.newSingleThreadScheduledExecutor(r -> {
+         Thread t = new Thread(r, "pizzastore-replica-check");
+         t.setDaemon(true);
+         return t;
+      });
+      checker.scheduleWithFixedDelay(this::checkAll, 0, CHECK_MS, TimeUnit.MILLISECONDS);
+   }//end ReplicaRouter
+
+   /**
+    * Records that this session wrote to the primary.
+    */
+   public void noteWrite() {
+      lastWriteAt = System.currentTimeMillis();
+   }//end noteWrite
+
+   /**
+    * @return true while reads must stay on the primary after a write
+    */
+   public boolean sticky() {
+      return System.currentTimeMillis() - lastWriteAt < STICKY_MS;
+   }//end sticky
+
+   /**
+    * Runs a read-only query on a healthy replica.
+    *
+    * @param query the input query string
+    * @return the result, or null when no replica could serve it and the
+    *         caller should use the primary
+    * @throws java.sql.SQLException when the replica is fine but the query failed
+    */
+   public List<List<String>> query(String query) throws SQLException {
+      if (sticky()) return null;
+      int n = replicas.size();
+      int start = Math.floorMod(next.getAndIncrement(), n);
+      for (int i = 0; i < n; i++) {
+         Replica replica = replicas.get((start + i) % n);
+         if (!replica.healthy) continue;
+         synchronized (replica) {
+            if (replica.conn == null) continue;
+            try {
+               return PizzaStore.returnResult(replica.conn, query);
+            } catch (SQLException e) {
+               if (probe(replica)) throw e;
+               // the replica went away; try the next one
+            }
+         }
+      }
+      return null;
+   }//end query
+
+   private void checkAll() {
+      for (Replica replica : replicas) {
+         synchronized (replica) {
+            probe(replica);
+         }
+      }
+   }//end checkAll
+
+   /*
+    * Reconnects if needed and runs a trivial statement; updates and returns
+    * the replica's health.  Caller holds the replica's lock.
+    */
+   private boolean probe(Replica replica) {
+      try {
+         if (replica.conn == null)
+            replica.conn = Resilience.open(replica.url, user, passwd);
+         Statement stmt = Resilience.limit(replica.conn.createStatement());
+         stmt.executeQuery("SELECT 1").close();
+         stmt.close();
+         if (!replica.healthy) System.err.println("[replica] " + replica.url + " is up");
+         replica.healthy = true;
+      } catch (Exception e) {
+         if (replica.healthy) System.err.println("[replica] " + replica.url + " is down: " + e.getMessage());
+         replica.healthy = false;
+         close(replica);
+      }
+      return replica.healthy;
+   }//end probe
+
+   private static void close(Replica replica) {
+      try {
+         if (replica.conn != null) replica.conn.close();
+      } catch (SQLException e) {
+         // ignored.
+      }
+      replica.conn = null;
+   }//end close
+
+   /**
+    * Stops the health checks and closes the replica connections.
+    */
+   public void shutdown() {
+      checker.shutdownNow();
+      for (Replica replica : replicas) {
+         synchronized (replica) {
+            close(replica);
+         }
+      }
+   }//end shutdown
+
+}//end ReplicaRouter
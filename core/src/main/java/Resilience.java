@@ -0,0 +1,286 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class keeps a database problem from hanging or crashing a session.
+ *
+ *  - Timeouts: every connection gets statement_timeout =
+ *    pizzastore.statementTimeoutMs (default 5000), every statement a driver
+ *    query timeout slightly above it, and connects give up after
+ *    pizzastore.connectTimeoutSec (default 5).  Reports (the REPORTS lane of
+ *    AdmissionController) and bulk operations (bulkUsers, rebalance) get
+ *    pizzastore.reportTimeoutMs (default 60000) instead: limit() changes the
+ *    connection's statement_timeout when the operation needs another one,
+ *    with SET LOCAL inside a transaction.
+ *  - Retries: statements that failed with a serialization failure or a
+ *    deadlock are run again, since the server undid them; a lost connection
+ *    is reopened and the statement run again only if it is a plain read.
+ *    Nothing is retried inside a transaction, whose owner decides.  At most
+ *    pizzastore.retries retries (default 2), with jittered exponential
+ *    backoff.
+ *  - Circuit breaker: after pizzastore.breakerFailures (default 5) lost
+ *    connections in a row, statements fail at once for
+ *    pizzastore.breakerOpenMs (default 10000); then one statement is let
+ *    through to probe the database.  A timeout does not count: the database
+ *    answered, and a slow report must not stop orders.
+ *
+ */
+public class Resilience {
+
+   static final long STATEMENT_TIMEOUT_MS = Long.getLong("pizzastore.statementTimeoutMs", 5000L);
+   static final long REPORT_TIMEOUT_MS = Long.getLong("pizzastore.reportTimeoutMs", 60000L);
+   private static final int CONNECT_TIMEOUT_SEC = Integer.getInteger("pizzastore.connectTimeoutSec", 5);
+   private static final int MAX_RETRIES = Integer.getInteger("pizzastore.retries", 2);
+   private static final int CONNECT_ATTEMPTS = Integer.getInteger("pizzastore.connectAttempts", 3);
+   private static final int BREAKER_FAILURES = Integer.getInteger("pizzastore.breakerFailures", 5);
+   private static final long BREAKER_OPEN_MS = Long.getLong("pizzastore.breakerOpenMs", 10000L);
+   private static final long BACKOFF_MS = 100;
+   private static final long MAX_BACKOFF_MS = 2000;
+
+   // operations that may run long besides the REPORTS lane
+   private static final List<String> BULK_OPERATIONS = Arrays.asList("bulkUsers", "rebalance");
+
+   private static final Resilience INSTANCE = new Resilience();
+
+   // statement_timeout of each connection opened by open(), outside transactions
+   private static final Map<Connection, Long> timeouts = new WeakHashMap<Connection, Long>();
+
+   /**
+    * A unit of database work that may be run more than once.
+    */
+   public interface Call<T> {
+      T run() throws SQLException;
+   }//end Call
+
+   // breaker state, guarded by this
+   private int consecutiveFailures = 0;
+   private long openUntil = 0;
+   private boolean probing = false;
+
+   // message for the user about the last failure, shown after the operation
+   private volatile String notice = null;
+
+   public static Resilience get() {
+      return INSTANCE;
+   }//end get
+
+   /**
+    * Opens a connection with the login timeout and statement timeout set.
+    */
+   public static Connection open(String url, String user, String passwd) throws SQLException {
+      try {
+         Class.forName("org.postgresql.Driver");
+      } catch (ClassNotFoundException e) {
+         throw new SQLException("PostgreSQL JDBC driver not found on the classpath");
+      }
+      DriverManager.setLoginTimeout(CONNECT_TIMEOUT_SEC);
+      Connection conn = DriverManager.getConnection(url, user, passwd);
+      Statement stmt = conn.createStatement();
+      try {
+         stmt.execute("SET statement_timeout = " + STATEMENT_TIMEOUT_MS);
+      } finally {
+         stmt.close();
+      }
+      synchronized (timeouts) {
+         timeouts.put(conn, STATEMENT_TIMEOUT_MS);
+      }
+      return conn;
+   }//end open
+
+   /**
+    * Gives a statement the timeout of the running operation: the server's
+    * statement_timeout is changed if the connection has another one, and
+    * the driver-side timeout is set a second past it, so a dead network
+    * cannot block the caller forever.  Drivers that do not support it are
+    * left alone.
+    */
+   public static Statement limit(Statement stmt) {
+      long timeout = timeoutMs();
+      try {
+         Connection conn = stmt.getConnection();
+         Long current;
+         synchronized (timeouts) {
+            current = timeouts.get(conn);
+         }
+         if (current != null && current != timeout) {
+            if (conn.getAutoCommit()) {
+               stmt.execute("SET statement_timeout = " + timeout);
+               synchronized (timeouts) {
+                  timeouts.put(conn, timeout);
+               }
+            } else {
+               // ends with the transaction, leaving the session's value as recorded
+               stmt.execute("SET LOCAL statement_timeout = " + timeout);
+            }
+         }
+      } catch (SQLException e) {
+         // the connection's timeout still applies.
+      }
+      try {
+         stmt.setQueryTimeout((int) (timeout / 1000) + 1);
+      } catch (SQLException | UnsupportedOperationException | AbstractMethodError e) {
+         // server-side statement_timeout still applies.
+      }
+      return stmt;
+   }//end limit
+
+   /**
+    * @return the statement timeout of the running operation, in milliseconds
+    */
+   static long timeoutMs() {
+      String operation = QueryMetrics.currentOperation();
+      boolean slow = AdmissionController.laneOf(operation) == AdmissionController.Lane.REPORTS ||
+                      BULK_OPERATIONS.contains(operation);
+      return slow ? REPORT_TIMEOUT_MS : STATEMENT_TIMEOUT_MS;
+   }//end timeoutMs
+
+   /**
+    * Opens a connection, retrying with backoff while the database cannot be
+    * reached.
+    */
+   public Connection connect(Call<Connection> opener) throws SQLException {
+      for (int attempt = 0; ; attempt++) {
+         before();
+         try {
+            Connection conn = opener.run();
+            succeeded();
+            return conn;
+         } catch (RuntimeException e) {
+            abandoned();
+            throw e;
+         } catch (SQLException e) {
+            failed(e);
+            if (attempt + 1 >= CONNECT_ATTEMPTS) throw e;
+            backoff(attempt);
+         }
+      }
+   }//end connect
+
+   /**
+    * Runs a statement under the breaker, retrying it when that is safe.
+    *
+    * @param readOnly true if running the statement twice does no harm
+    * @param inTransaction true if the statement is part of an open transaction
+    * @param connectionLost called when the connection turned out to be dead,
+    *                       so the next attempt reopens it
+    * @param call the statement
+    */
+   public <T> T run(boolean readOnly, boolean inTransaction, Runnable connectionLost, Call<T> call) throws SQLException {
+      for (int attempt = 0; ; attempt++) {
+         before();
+         try {
+            T result = call.run();
+            succeeded();
+            return result;
+         } catch (RuntimeException e) {
+            abandoned();
+            throw e;
+         } catch (SQLException e) {
+            failed(e);
+            boolean lost = isConnectionError(e);
+            if (lost) connectionLost.run();
+            boolean retry = !inTransaction && attempt < MAX_RETRIES &&
+                            (isTransient(e) || (lost && readOnly));
+            if (!retry) throw e;
+            backoff(attempt);
+         }
+      }
+   }//end run
+
+   /**
+    * @return a message for the user about the last failure, once, or null
+    */
+   public String takeNotice() {
+      String n = notice;
+      notice = null;
+      return n;
+   }//end takeNotice
+
+   /**
+    * @return true for a SELECT that changes nothing when run twice
+    */
+   public static boolean isReadOnly(String sql) {
+      String s = sql.trim().toLowerCase();
+      // SELECTs that call a writing function are not reads
+      return s.startsWith("select") && !s.contains("place_order(") && !s.contains("nextval(");
+   }//end isReadOnly
+
+   static boolean isConnectionError(SQLException e) {
+      if (e instanceof AdmissionController.Rejected) return false;
+      String state = e.getSQLState();
+      if (state != null)
+         return state.startsWith("08") || state.equals("57P01") || state.equals("57P02") || state.equals("57P03");
+      // older drivers report no SQLSTATE for I/O failures
+      String message = String.valueOf(e.getMessage()).toLowerCase();
+      return message.contains("i/o error") || (message.contains("connection") && message.contains("closed"));
+   }//end isConnectionError
+
+   static boolean isTimeout(SQLException e) {
+      return "57014".equals(e.getSQLState()) ||
+             String.valueOf(e.getMessage()).contains("statement timeout");
+   }//end isTimeout
+
+   // the server rolled the statement back; running it again is safe
+   static boolean isTransient(SQLException e) {
+      return "40001".equals(e.getSQLState()) || "40P01".equals(e.getSQLState());
+   }//end isTransient
+
+   private synchronized void before() throws SQLException {
+      if (openUntil == 0) return;
+      if (System.currentTimeMillis() < openUntil || probing) {
+         notice = "The database is not reachable right now. Please try again in a few seconds.";
+         throw new SQLException("Database unavailable (circuit open)", "08006");
+      }
+      // half-open: this statement probes the database
+      probing = true;
+   }//end before
+
+   private synchronized void succeeded() {
+      consecutiveFailures = 0;
+      openUntil = 0;
+      probing = false;
+   }//end succeeded
+
+   // a probe that failed outside the database lets the next one through
+   private synchronized void abandoned() {
+      probing = false;
+   }//end abandoned
+
+   /*
+    * Lost connections count towards opening the breaker.  Any other error,
+    * a timeout included, means the database answered; a timeout only tells
+    * the user.
+    */
+   private synchronized void failed(SQLException e) {
+      if (isTimeout(e)) notice = "The database took too long to answer. Please try again.";
+      if (!isConnectionError(e)) {
+         succeeded();
+         return;
+      }
+      notice = "The connection to the database was lost. Please try again.";
+      consecutiveFailures++;
+      if (probing || consecutiveFailures >= BREAKER_FAILURES) {
+         if (openUntil == 0 || probing)
+            System.err.println("[resilience] database unavailable, failing fast for " + BREAKER_OPEN_MS + " ms");
+         openUntil = System.currentTimeMillis() + BREAKER_OPEN_MS;
+         probing = false;
+      }
+   }//end failed
+
+   private static void backoff(int attempt) {
+      long cap = Math.min(MAX_BACKOFF_MS, BACKOFF_MS << Math.min(attempt, 10));
+      try {
+         Thread.sleep(cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1));
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }//end backoff
+
+}//end Resilience
@@ -0,0 +1,41 @@
+/**
+ * The roles a user can have.  Users.role is the PostgreSQL enum type
+ * user_role with the same labels, so values come back unpadded and compare
+ * in four bytes.
+ *
+ */
+public enum Role {
+
+   CUSTOMER("customer"),
+   DRIVER("driver"),
+   MANAGER("manager");
+
+   public final String label;
+
+   Role(String label) {
+      this.label = label;
+   }//end Role
+
+   /**
+    * @return true for the roles that see every order (managers and drivers)
+    */
+   public boolean isStaff() {
+      return this != CUSTOMER;
+   }//end isStaff
+
+   /**
+    * @param label a role as stored or typed, in any case
+    * @return the role, or null if the label is not one
+    */
+   public static Role parse(String label) {
+      if (label == null) return null;
+      for (Role r : values())
+         if (r.label.equalsIgnoreCase(label.trim())) return r;
+      return null;
+   }//end parse
+
+   public String toString() {
+      return label;
+   }//end toString
+
+}//end Role
@@ -0,0 +1,269 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a zero-copy reader for the seed data files (users.csv,
+ * store.csv, foodorder.csv, itemsinorder.csv, items.csv).  The file is memory
+ * mapped and scanned byte by byte; every row is handed to a RowHandler as
+ * field offsets into the mapped buffer, so no String is built unless the
+ * handler asks for one.
+ *
+ * Rows must be newline terminated and quoted fields may contain commas but
+ * not newlines, which is the layout of every file shipped with the project.
+ *
+ */
+public class SeedCsvReader {
+
+   // chunks smaller than this are not worth a thread of their own
+   private static final long MIN_CHUNK_BYTES = 1L << 20;
+
+   /**
+    * Receives one parsed row.  Field i spans [starts[i], ends[i]) of buf;
+    * quoted fields keep their surrounding quotes, use text() to decode them.
+    * The arrays are reused for the next row, so copy what you want to keep.
+    */
+   public interface RowHandler {
+      void row(ByteBuffer buf, int[] starts, int[] ends, int fieldCount) throws Exception;
+   }//end RowHandler
+
+   /**
+    * Reads the whole file on the calling thread.
+    *
+    * @param file the CSV file
+    * @param skipHeader true if the first row is a header
+    * @param handler receives every row
+    * @return the number of rows handed to the handler
+    * @throws java.lang.Exception when the file cannot be read or the handler fails
+    */
+   public static long read(File file, boolean skipHeader, RowHandler handler) throws Exception {
+      return read(file, skipHeader, 1, handler);
+   }//end read
+
+   /**
+    * Reads the file split into line-aligned chunks parsed in parallel.  The
+    * handler is shared by all chunks and must be thread-safe when threads > 1.
+    *
+    * @param file the CSV file
+    * @param skipHeader true if the first row is a header
+    * @param threads the maximum number of chunks parsed at once
+    * @param handler receives every row
+    * @return the number of rows handed to the handler
+    * @throws java.lang.Exception when the file cannot be read or the handler fails
+    */
+   public static long read(File file, boolean skipHeader, int threads, final RowHandler handler) throws Exception {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         final FileChannel channel = raf.getChannel();
+         long size = channel.size();
+         if (size == 0) return 0;
+
+         long[] bounds = chunkBounds(channel, size, threads);
+         final AtomicLong rows = new AtomicLong();
+         if (bounds.length == 2) {
+            rows.addAndGet(parseChunk(map(channel, bounds[0], bounds[1]), skipHeader, handler));
+            return rows.get();
+         }
+
+         ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, bounds.length - 1));
+         try {
+            List<Future<Long>> parts = new ArrayList<Future<Long>>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+               final MappedByteBuffer chunk = map(channel, bounds[i], bounds[i + 1]);
+               final boolean header = skipHeader && i == 0;
+               parts.add(pool.submit(() -> parseChunk(chunk, header, handler)));
+            }
+            for (Future<Long> part : parts)
+               rows.addAndGet(part.get());
+         } finally {
+            pool.shutdownNow();
+         }
+         return rows.get();
+      } finally {
+         raf.close();
+      }
+   }//end read
+
+   /*
+    * Splits [0, size) into at most `threads` pieces, moving every cut forward
+    * to just after the next newline so no row straddles two chunks.
+    */
+   private static long[] chunkBounds(FileChannel channel, long size, int threads) throws IOException {
+      int pieces = (int) Math.max(1, Math.min(threads, size / MIN_CHUNK_BYTES));
+      // a single mapping cannot exceed 2GB
+      pieces = (int) Math.max(pieces, (size + Integer.MAX_VALUE - 1) / Integer.MAX_VALUE);
+
+      List<Long> cuts = new ArrayList<Long>();
+      cuts.add(0L);
+      ByteBuffer probe = ByteBuffer.allocate(4096);
+      for (int i = 1; i < pieces; i++) {
+         long pos = Math.max(size * i / pieces, cuts.get(cuts.size() - 1));
+         boolean found = false;
+         while (!found && pos < size) {
+            probe.clear();
+            int n = channel.read(probe, pos);
+            if (n <= 0) break;
+            for (int j = 0; j < n; j++) {
+               if (probe.get(j) == '\n') { pos += j + 1; found = true; break; }
+            }
+            if (!found) pos += n;
+         }
+         if (pos < size && pos > cuts.get(cuts.size() - 1))
+            cuts.add(pos);
+      }
+      cuts.add(size);
+
+      long[] bounds = new long[cuts.size()];
+      for (int i = 0; i < bounds.length; i++)
+         bounds[i] = cuts.get(i);
+      return bounds;
+   }//end chunkBounds
+
+   private static MappedByteBuffer map(FileChannel channel, long from, long to) throws IOException {
+      return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+   }//end map
+
+   /*
+    * Scans one chunk and hands every non-blank row to the handler.
+    */
+   private static long parseChunk(ByteBuffer buf, boolean skipHeader, RowHandler handler) throws Exception {
+      int[] starts = new int[16];
+      int[] ends = new int[16];
+      int limit = buf.limit();
+      int pos = 0;
+      long rows = 0;
+      boolean header = skipHeader;
+
+      while (pos < limit) {
+         int n = 0;
+         while (true) {
+            // leading blanks, as in: Cheese Pizza, "Cheese, Bread, Tomato Sauce"
+            while (pos < limit && isBlank(buf.get(pos))) pos++;
+
+            int s = pos, e;
+            if (pos < limit && buf.get(pos) == '"') {
+               pos++;
+               while (pos < limit) {
+                  byte c = buf.get(pos++);
+                  if (c == '"') {
+                     if (pos < limit && buf.get(pos) == '"') pos++; // escaped quote
+                     else break;
+                  }
+               }
+               e = pos;
+               // drop anything between the closing quote and the delimiter
+               while (pos < limit && buf.get(pos) != ',' && buf.get(pos) != '\n') pos++;
+            } else {
+               while (pos < limit && buf.get(pos) != ',' && buf.get(pos) != '\n') pos++;
+               e = pos;
+               while (e > s && (isBlank(buf.get(e - 1)) || buf.get(e - 1) == '\r')) e--;
+            }
+
+            if (n == starts.length) {
+               starts = Arrays.copyOf(starts, n * 2);
+               ends = Arrays.copyOf(ends, n * 2);
+            }
+            starts[n] = s;
+            ends[n] = e;
+            n++;
+
+            if (pos >= limit) break;
+            if (buf.get(pos++) == '\n') break;
+         }
+
+         if (n == 1 && starts[0] == ends[0]) continue; // blank line
+         if (header) { header = false; continue; }
+         handler.row(buf, starts, ends, n);
+         rows++;
+      }
+      return rows;
+   }//end parseChunk
+
+   private static boolean isBlank(byte b) {
+      return b == ' ' || b == '\t';
+   }//end isBlank
+
+   /**
+    * Decodes a field as UTF-8 text, removing surrounding quotes and
+    * un-doubling escaped quotes.
+    */
+   public static String text(ByteBuffer buf, int start, int end) {
+      boolean quoted = end - start >= 2 && buf.get(start) == '"' && buf.get(end - 1) == '"';
+      if (quoted) { start++; end--; }
+      byte[] bytes = new byte[end - start];
+      int n = 0;
+      for (int i = start; i < end; i++) {
+         byte b = buf.get(i);
+         bytes[n++] = b;
+         if (quoted && b == '"' && i + 1 < end && buf.get(i + 1) == '"') i++;
+      }
+      return new String(bytes, 0, n, StandardCharsets.UTF_8);
+   }//end text
+
+   /**
+    * Parses a field as a signed decimal integer without allocating.
+    *
+    * @throws java.lang.NumberFormatException when the field is not an integer
+    */
+   public static int parseInt(ByteBuffer buf, int start, int end) {
+      if (end - start >= 2 && buf.get(start) == '"') { start++; end--; }
+      if (start >= end) throw new NumberFormatException("empty field");
+      boolean negative = buf.get(start) == '-';
+      int i = negative ? start + 1 : start;
+      if (i >= end) throw new NumberFormatException("no digits");
+      int value = 0;
+      for (; i < end; i++) {
+         int d = buf.get(i) - '0';
+         if (d < 0 || d > 9) throw new NumberFormatException("not a number at byte " + i);
+         value = value * 10 + d;
+      }
+      return negative ? -value : value;
+   }//end parseInt
+
+   /**
+    * Compares a field with an ASCII string without decoding it.
+    */
+   public static boolean equalsAscii(ByteBuffer buf, int start, int end, String s) {
+      if (end - start >= 2 && buf.get(start) == '"') { start++; end--; }
+      if (end - start != s.length()) return false;
+      for (int i = 0; i < s.length(); i++) {
+         if (buf.get(start + i) != s.charAt(i)) return false;
+      }
+      return true;
+   }//end equalsAscii
+
+   /**
+    * Counts the rows of the given files and reports the scan rate, which is
+    * handy to check that ingestion runs at disk speed.
+    *
+    * @param args <threads> <csv file>...
+    */
+   public static void main(String[] args) throws Exception {
+      if (args.length < 2) {
+         System.err.println("Usage: java " + SeedCsvReader.class.getName() + " <threads> <csv file>...");
+         return;
+      }
+      int threads = Integer.parseInt(args[0]);
+      for (int i = 1; i < args.length; i++) {
+         File f = new File(args[i]);
+         final AtomicLong fields = new AtomicLong();
+         long start = System.nanoTime();
+         long rows = read(f, true, threads, (buf, starts, ends, n) -> fields.addAndGet(n));
+         double secs = (System.nanoTime() - start) / 1e9;
+         System.out.printf("%-20s %8d rows %10d fields %8.1f MB/s\n",
+               f.getName(), rows, fields.get(), f.length() / 1e6 / Math.max(secs, 1e-9));
+      }
+   }//end main
+
+}//end SeedCsvReader
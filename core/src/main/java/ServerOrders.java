@@ -0,0 +1,62 @@
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * This class places orders through the place_order stored procedure (see
+ * triggers (1).sql).  The database checks the items, prices them from Items
+ * and inserts the order and its lines, so placement is a single statement
+ * and the client never supplies a total.
+ *
+ * PizzaStore uses it instead of OptimisticOrders when pizzastore.serverOrders
+ * is true.  With sharding, place_order must be installed on every shard.
+ *
+ */
+public class ServerOrders {
+
+   // SQLSTATE place_order raises for an item that is not on the menu
+   private static final String NO_DATA_FOUND = "P0002";
+
+   /**
+    * Places an order in one round trip.
+    *
+    * @param esql the database connection, pointed at the store's database
+    * @param login the customer placing the order
+    * @param storeID the store the order is placed at
+    * @param lines the order lines; their prices are only compared with the
+    *              total the database charged
+    * @return the new order, or null when an item is no longer on the menu
+    * @throws java.sql.SQLException when the order could not be placed
+    */
+   public static OptimisticOrders.Placed place(PizzaStore esql, String login, int storeID,
+                                               List<OptimisticOrders.Line> lines) throws SQLException {
+      StringBuilder items = new StringBuilder("ARRAY[");
+      StringBuilder quantities = new StringBuilder("ARRAY[");
+      long seenTotal = 0;
+      for (int i = 0; i < lines.size(); i++) {
+         OptimisticOrders.Line line = lines.get(i);
+         if (i > 0) {
+            items.append(", ");
+            quantities.append(", ");
+         }
+         items.append('\'').append(line.itemName.replace("'", "''")).append('\'');
+         quantities.append(line.quantity);
+         seenTotal += line.price * line.quantity;
+      }
+      items.append("]::varchar[]");
+      quantities.append("]::int[]");
+
+      List<List<String>> result;
+      try {
+         result = esql.executeQueryAndReturnResult("SELECT order_id, total_price FROM place_order('" +
+            login.replace("'", "''") + "', " + storeID + ", " + items + ", " + quantities + ")");
+      } catch (SQLException e) {
+         // older drivers do not report the SQLSTATE, only the message
+         if (NO_DATA_FOUND.equals(e.getSQLState()) || String.valueOf(e.getMessage()).contains("unknown item"))
+            return null;
+         throw e;
+      }
+      long total = Money.parse(result.get(0).get(1));
+      return new OptimisticOrders.Placed(Integer.parseInt(result.get(0).get(0)), total, total != seenTotal);
+   }//end place
+
+}//end ServerOrders
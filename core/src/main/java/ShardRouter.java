@@ -0,0 +1,316 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class spreads FoodOrder and ItemsInOrder over several databases by
+ * storeID.  Shards are configured in the pizzastore.shards system property as
+ * semicolon-separated range=host:port/dbname entries, for example
+ *
+ *    -Dpizzastore.shards=1-500=db1:5432/pizza;501-1000=db2:5432/pizza
+ *
+ * Stores outside every range stay in the home database PizzaStore connects
+ * to.  Users, Items and Store are reference data: the home database holds
+ * the master copy and every shard a replica.  The application writes them
+ * on the home database only and then copies the changed rows to every shard
+ * with replicate(); changes made outside the application (e.g. to Store) are
+ * copied with "ShardRebalancer ... sync", which also repairs a shard that
+ * missed a copy.  "ShardRebalancer ... init" gives every database's
+ * orderID sequence its own residue (INCREMENT BY the number of databases),
+ * so orderIDs are unique across them.
+ *
+ */
+public class ShardRouter {
+
+   /**
+    * One shard: a storeID range and its database.  The interactive
+    * connection is used by the session when it selects the shard; the
+    * scatter connection is shared by scatter-gather reads.
+    */
+   public static class Shard {
+      public final int lowStoreID;
+      public final int highStoreID;
+      public final String url;
+      private final String user;
+      private final String passwd;
+      private Connection interactive = null;
+      private Connection scatter = null;
+
+      Shard(int lowStoreID, int highStoreID, String url, String user, String passwd) {
+         this.lowStoreID = lowStoreID;
+         this.highStoreID = highStoreID;
+         this.url = url;
+         this.user = user;
+         this.passwd = passwd;
+      }
+
+      public boolean owns(int storeID) {
+         return storeID >= lowStoreID && storeID <= highStoreID;
+      }
+
+      /**
+       * @return the session connection, opened on first use
+       */
+      public synchronized Connection connection() throws SQLException {
+         if (interactive == null) interactive = open();
+         return interactive;
+      }
+
+      synchronized List<List<String>> query(String query) throws SQLException {
+         if (scatter == null) scatter = open();
+         return PizzaStore.returnResult(scatter, query);
+      }
+
+      /**
+       * Runs statements in one transaction.
+       */
+      synchronized void apply(List<String> statements) throws SQLException {
+         if (scatter == null) scatter = open();
+         ShardRouter.apply(scatter, statements);
+      }
+
+      Connection open() throws SQLException {
+         return Resilience.open(url, user, passwd);
+      }
+
+      synchronized void close() {
+         for (Connection conn : new Connection[] { interactive, scatter }) {
+            try {
+               if (conn != null) conn.close();
+            } catch (SQLException e) {
+               // ignored.
+            }
+         }
+         interactive = null;
+         scatter = null;
+      }
+   }//end Shard
+
+   private final List<Shard> shards = new ArrayList<Shard>();
+   private final ExecutorService pool;
+
+   /**
+    * Builds a router from the pizzastore.shards property.
+    *
+    * @return the router, or null when no shard is configured
+    */
+   public static ShardRouter fromProperties(String user, String passwd) {
+      String spec = System.getProperty("pizzastore.shards", "").trim();
+      return spec.isEmpty() ? null : new ShardRouter(spec, user, passwd);
+   }//end fromProperties
+
+   public ShardRouter(String spec, String user, String passwd) {
+      for (String entry : spec.split(";")) {
+         if (entry.trim().isEmpty()) continue;
+         String[] parts = entry.trim().split("=", 2);
+         String[] range = parts[0].split("-");
+         shards.add(new Shard(Integer.parseInt(range[0].trim()), Integer.parseInt(range[1].trim()),
+                              "jdbc:postgresql://" + parts[1].trim(), user, passwd));
+      }
+      pool = Executors.newFixedThreadPool(Math.max(1, shards.size()), r -> {
+         Thread t = new Thread(r, "pizzastore-shard");
+         t.setDaemon(true);
+         return t;
+      });
+   }//end ShardRouter
+
+   /**
+    * @return the shard owning the store, or null for the home database
+    */
+   public Shard forStore(int storeID) {
+      for (Shard shard : shards) {
+         if (shard.owns(storeID)) return shard;
+      }
+      return null;
+   }//end forStore
+
+   public List<Shard> shards() {
+      return Collections.unmodifiableList(shards);
+   }//end shards
+
+   /**
+    * Runs a query on the home database and every shard at once and merges
+    * the rows.  Each database should already sort by the same column.
+    *
+    * @param home runs the query on the home database, on the calling thread
+    * @param query the input query string
+    * @param sortColumn column to merge on (compared as text, which orders
+    *        timestamps correctly), or -1 to just concatenate
+    * @param descending true to merge largest first
+    * @param limit maximum number of rows, or -1 for all
+    * @return the merged rows
+    * @throws java.sql.SQLException when any database failed
+    */
+   public List<List<String>> gather(Home home, final String query, final int sortColumn,
+                                    boolean descending, int limit) throws SQLException {
+      List<Future<List<List<String>>>> parts = new ArrayList<Future<List<List<String>>>>();
+      for (final Shard shard : shards)
+         parts.add(pool.submit(() -> shard.query(query)));
+
+      List<List<String>> rows = new ArrayList<List<String>>(home.query(query));
+      for (Future<List<List<String>>> part : parts) {
+         try {
+            rows.addAll(part.get());
+         } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause.getMessage());
+         }
+      }
+
+      if (sortColumn >= 0) {
+         Comparator<List<String>> order = (a, b) -> String.valueOf(a.get(sortColumn)).compareTo(String.valueOf(b.get(sortColumn)));
+         Collections.sort(rows, descending ? order.reversed() : order);
+      }
+      return limit >= 0 && rows.size() > limit ? new ArrayList<List<String>>(rows.subList(0, limit)) : rows;
+   }//end gather
+
+   /**
+    * Runs one query per database at once, for callers that keep a position
+    * in each database (e.g. keyset paging, whose keys are per database).
+    *
+    * @param home runs queries[0] on the home database, on the calling thread
+    * @param queries the home database's query, then one per shard in order
+    * @return the rows of each database, in the order of queries
+    * @throws java.sql.SQLException when any database failed
+    */
+   public List<List<List<String>>> gatherEach(Home home, final String[] queries) throws SQLException {
+      List<Future<List<List<String>>>> parts = new ArrayList<Future<List<List<String>>>>();
+      for (int i = 0; i < shards.size(); i++) {
+         final Shard shard = shards.get(i);
+         final String query = queries[i + 1];
+         parts.add(pool.submit(() -> shard.query(query)));
+      }
+
+      List<List<List<String>>> results = new ArrayList<List<List<String>>>();
+      results.add(home.query(queries[0]));
+      for (Future<List<List<String>>> part : parts) {
+         try {
+            results.add(part.get());
+         } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause.getMessage());
+         }
+      }
+      return results;
+   }//end gatherEach
+
+   /**
+    * Copies rows of a reference table from the home database to every
+    * shard, inserting or overwriting them by key.
+    *
+    * @param home a connection to the home database
+    * @param table Users, Items or Store
+    * @param keyColumn the table's primary key
+    * @param where selects the rows to copy, e.g. "login = 'bob'"
+    * @return the number of rows copied to each shard
+    * @throws java.sql.SQLException when a database failed; shards already
+    *         copied to keep the rows
+    */
+   public int replicate(Connection home, String table, String keyColumn, String where) throws SQLException {
+      List<String> upserts = upserts(home, table, keyColumn, where);
+      if (upserts.isEmpty()) return 0;
+      for (Shard shard : shards)
+         shard.apply(upserts);
+      return upserts.size();
+   }//end replicate
+
+   /**
+    * Reads rows from a database and renders one INSERT ... ON CONFLICT DO
+    * UPDATE per row that recreates it elsewhere.  Values are written as
+    * untyped literals, which PostgreSQL converts to the column types
+    * (enums, booleans and times included).
+    *
+    * The target's triggers stay on, so the statements must leave the same
+    * row behind with them: a version column, which trg_bump_item_version
+    * raises when the price changes, is set again by a separate UPDATE that
+    * does not touch the price.  The other triggers only log or notify.
+    */
+   static List<String> upserts(Connection source, String table, String keyColumn, String where) throws SQLException {
+      List<String> upserts = new ArrayList<String>();
+      Statement stmt = source.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE " + where);
+         ResultSetMetaData meta = rs.getMetaData();
+         StringBuilder columns = new StringBuilder();
+         StringBuilder update = new StringBuilder();
+         int key = 0, version = 0;
+         for (int i = 1; i <= meta.getColumnCount(); i++) {
+            String column = meta.getColumnName(i);
+            columns.append(i > 1 ? ", " : "").append(column);
+            if (column.equalsIgnoreCase(keyColumn)) key = i;
+            if (column.equalsIgnoreCase("version")) version = i;
+            if (column.equalsIgnoreCase(keyColumn)) continue;
+            update.append(update.length() > 0 ? ", " : "").append(column).append(" = EXCLUDED.").append(column);
+         }
+         String prefix = "INSERT INTO " + table + " (" + columns + ") VALUES (";
+         String suffix = ") ON CONFLICT (" + keyColumn + ") DO " + (update.length() == 0 ? "NOTHING" : "UPDATE SET " + update);
+         while (rs.next()) {
+            StringBuilder sql = new StringBuilder(prefix);
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+               sql.append(i > 1 ? ", " : "").append(literal(rs.getString(i)));
+            }
+            upserts.add(sql.append(suffix).toString());
+            if (version > 0 && key > 0) {
+               upserts.add("UPDATE " + table + " SET version = " + literal(rs.getString(version)) +
+                           " WHERE " + keyColumn + " = " + literal(rs.getString(key)));
+            }
+         }
+         rs.close();
+      } finally {
+         stmt.close();
+      }
+      return upserts;
+   }//end upserts
+
+   private static String literal(String value) {
+      return value == null ? "NULL" : "'" + value.replace("'", "''") + "'";
+   }//end literal
+
+   /**
+    * Runs statements on conn in one transaction, as the connection's user.
+    * No special privilege is needed: triggers and foreign keys stay on.
+    */
+   static void apply(Connection conn, List<String> statements) throws SQLException {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      Statement stmt = Resilience.limit(conn.createStatement());
+      try {
+         for (String sql : statements)
+            stmt.addBatch(sql);
+         stmt.executeBatch();
+         conn.commit();
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         stmt.close();
+         conn.setAutoCommit(autoCommit);
+      }
+   }//end apply
+
+   /**
+    * The home database's part of a scatter-gather query.
+    */
+   public interface Home {
+      List<List<String>> query(String query) throws SQLException;
+   }//end Home
+
+   /**
+    * Closes every shard connection.
+    */
+   public void shutdown() {
+      pool.shutdownNow();
+      for (Shard shard : shards)
+         shard.close();
+   }//end shutdown
+
+}//end ShardRouter
@@ -0,0 +1,202 @@
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class keeps the Store table in memory so that listing stores and
+ * checking whether a store takes orders cost no round trip.  Like MenuCache
+ * it is filled at start-up by the warm-up thread and reloaded after it
+ * expires (pizzastore.storeCacheTtlMs, default one minute); in addition
+ * trg_notify_store_change publishes every change of Store on the
+ * store_status channel and OrderEvents drops the cache when it arrives.
+ *
+ * A store takes orders when isOpen is true and, if it has hours, the
+ * current time is within them.  Hours are read on the store's own clock,
+ * Store.timeZone (NULL means the database's TimeZone setting); closesAt
+ * before opensAt means the store is open past midnight.  The database
+ * applies the same rule in store_open_now(), which place_order and
+ * trg_reject_closed_store use, so an order is refused by the server even
+ * when this cache is out of date.
+ *
+ */
+public class StoreAvailability {
+
+   public static final String CHANNEL = "store_status";
+
+   public static final String QUERY =
+      "SELECT storeID, address, city, state, isOpen, opensAt, closesAt, reviewScore," +
+      " COALESCE(timeZone, current_setting('TimeZone')) FROM Store ORDER BY storeID";
+
+   private static final long TTL_MS = Long.getLong("pizzastore.storeCacheTtlMs", 60000L);
+
+   private static volatile List<Store> stores = null;
+   private static volatile long loadedAt = 0;
+
+   /**
+    * One row of Store.
+    */
+   public static class Store {
+      public final int storeID;
+      public final String address;
+      public final String city;
+      public final String state;
+      public final boolean isOpen;
+      public final LocalTime opensAt;
+      public final LocalTime closesAt;
+      public final String reviewScore;
+      public final ZoneId zone;
+
+      Store(List<String> row) {
+         this.storeID = Integer.parseInt(row.get(0).trim());
+         this.address = row.get(1).trim();
+         this.city = row.get(2).trim();
+         this.state = row.get(3).trim();
+         this.isOpen = row.get(4).trim().equals("t") || row.get(4).trim().equalsIgnoreCase("true");
+         this.opensAt = time(row.get(5));
+         this.closesAt = time(row.get(6));
+         this.reviewScore = row.get(7) == null ? "" : row.get(7).trim();
+         this.zone = zone(row.get(8));
+      }
+
+      /**
+       * @return true if the store takes orders now, on its own clock
+       */
+      public boolean isOpenNow() {
+         return isOpenAt(LocalTime.now(zone));
+      }
+
+      /**
+       * @return true if the store takes orders at the given time
+       */
+      public boolean isOpenAt(LocalTime now) {
+         if (!isOpen) return false;
+         if (opensAt == null || closesAt == null) return true;
+         if (opensAt.isBefore(closesAt))
+            return !now.isBefore(opensAt) && now.isBefore(closesAt);
+         return !now.isBefore(opensAt) || now.isBefore(closesAt);
+      }
+
+      /**
+       * @return "Open" or "Closed", followed by the hours if the store has any
+       */
+      public String status() {
+         String hours = opensAt == null || closesAt == null ? "" : " (hours " + opensAt + "-" + closesAt + " " + zone + ")";
+         return (isOpenNow() ? "Open" : "Closed") + hours;
+      }
+
+      private static LocalTime time(String value) {
+         return value == null || value.trim().isEmpty() ? null : LocalTime.parse(value.trim());
+      }
+
+      // a zone PostgreSQL knows but Java does not falls back to this process's zone
+      private static ZoneId zone(String value) {
+         try {
+            return ZoneId.of(value.trim());
+         } catch (DateTimeException | NullPointerException e) {
+            return ZoneId.systemDefault();
+         }
+      }
+   }//end Store
+
+   /**
+    * Returns the cached stores, loading them through esql if they are
+    * missing or have expired.
+    *
+    * @param esql the database connection
+    * @return an unmodifiable list of stores ordered by storeID
+    * @throws java.sql.SQLException when the stores cannot be loaded
+    */
+   public static List<Store> stores(PizzaStore esql) throws SQLException {
+      List<Store> cached = stores;
+      if (cached == null || System.currentTimeMillis() - loadedAt > TTL_MS) {
+         cached = fill(esql.executeQueryAndReturnResult(QUERY));
+      }
+      return cached;
+   }//end stores
+
+   /**
+    * Like stores(), but missing or expired stores are loaded on a pooled
+    * connection so the caller can issue other statements meanwhile.
+    *
+    * @param esql the database connection
+    * @return the stores, once loaded
+    */
+   public static CompletableFuture<List<Store>> storesAsync(PizzaStore esql) {
+      List<Store> cached = stores;
+      if (cached != null && System.currentTimeMillis() - loadedAt <= TTL_MS)
+         return CompletableFuture.completedFuture(cached);
+      return esql.executeQueryAsync(QUERY).thenApply(rows -> fill(rows));
+   }//end storesAsync
+
+   /**
+    * Replaces the cached stores with the result of QUERY.
+    *
+    * @return the newly cached stores
+    */
+   public static List<Store> fill(List<List<String>> rows) {
+      List<Store> loaded = new ArrayList<Store>();
+      for (List<String> row : rows)
+         loaded.add(new Store(row));
+      List<Store> cached = Collections.unmodifiableList(loaded);
+      stores = cached;
+      loadedAt = System.currentTimeMillis();
+      return cached;
+   }//end fill
+
+   /**
+    * @return the store with the given ID, or null
+    */
+   public static Store find(List<Store> stores, int storeID) {
+      for (Store store : stores)
+         if (store.storeID == storeID) return store;
+      return null;
+   }//end find
+
+   /**
+    * Suggests another store for an order that cannot go to a closed one.
+    * Store has no coordinates, so "nearest" means in the same city and
+    * state; among those the best reviewed open store is chosen.
+    *
+    * @param closed the store the customer picked
+    * @return an open store in the same city, or null if there is none
+    */
+   public static Store nearestOpen(List<Store> stores, Store closed) {
+      Store best = null;
+      for (Store store : stores) {
+         if (store.storeID == closed.storeID || !store.isOpenNow()) continue;
+         if (!store.city.equalsIgnoreCase(closed.city) || !store.state.equalsIgnoreCase(closed.state)) continue;
+         if (best == null || score(store) > score(best)) best = store;
+      }
+      return best;
+   }//end nearestOpen
+
+   /**
+    * @return true if the database refused an order because its store is
+    *         closed or being moved (SQLSTATE 55000)
+    */
+   public static boolean refused(SQLException e) {
+      String msg = String.valueOf(e.getMessage());
+      return "55000".equals(e.getSQLState()) || msg.contains("store closed") || msg.contains("being moved");
+   }//end refused
+
+   /**
+    * Forgets the cached stores; the next read goes to the database.
+    */
+   public static void invalidate() {
+      stores = null;
+   }//end invalidate
+
+   private static double score(Store store) {
+      try {
+         return Double.parseDouble(store.reviewScore);
+      } catch (NumberFormatException e) {
+         return -1;
+      }
+   }//end score
+
+}//end StoreAvailability
@@ -34,9 +34,9 @@ CREATE INDEX idx_store_isopen ON Store(isOpen);
 -- Ensures each order has a unique order ID, preventing duplicates.
 CREATE UNIQUE INDEX idx_foodorder_orderid ON FoodOrder(orderID);
 
--- Creates an index on the `login` column in the `FoodOrder` table.
+-- Creates an index on the `userID` column in the `FoodOrder` table.
 -- Speeds up queries that retrieve a user’s order history.
-CREATE INDEX idx_foodorder_login ON FoodOrder(login);
+CREATE INDEX idx_foodorder_userid ON FoodOrder(userID);
 
 -- Creates an index on the `storeID` column in the `FoodOrder` table.
 -- Improves performance for queries retrieving orders placed at a specific store.
@@ -3,13 +3,22 @@ DROP TABLE IF EXISTS Items CASCADE;
 DROP TABLE IF EXISTS FoodOrder CASCADE;
 DROP TABLE IF EXISTS Store CASCADE;
 DROP TABLE IF EXISTS ItemsInOrder CASCADE;
+DROP TYPE IF EXISTS user_role;
+DROP TYPE IF EXISTS order_status;
 
-CREATE TABLE Users ( login varchar(50) NOT NULL,
+-- Enum types store a 4-byte value instead of a padded char(n); the labels
+-- match the Role and OrderStatus Java enums
+CREATE TYPE user_role AS ENUM ('customer', 'driver', 'manager');
+CREATE TYPE order_status AS ENUM ('Processing', 'Out for Delivery', 'Delivered', 'Cancelled');
+
+CREATE TABLE Users ( userID serial NOT NULL, --surrogate key, so a login rename touches one row
+                     login varchar(50) NOT NULL,
                      password varchar(30) NOT NULL,
-                     role char(20) NOT NULL,
+                     role user_role NOT NULL,
                      favoriteItems text,
                      phoneNum varchar(20) NOT NULL,
-                     PRIMARY KEY(login)
+                     PRIMARY KEY(userID),
+                     UNIQUE(login)
 );
 
 CREATE TABLE Items ( itemName varchar(50) NOT NULL,
@@ -17,6 +26,7 @@ CREATE TABLE Items ( itemName varchar(50) NOT NULL,
                        typeOfItem varchar(30) NOT NULL,
                        price decimal(10,2) NOT NULL,
                        description text,
+                       version integer NOT NULL DEFAULT 0, --bumped on every price change
                        PRIMARY KEY(itemName)
 );
 
@@ -24,19 +34,22 @@ CREATE TABLE Store ( storeID integer NOT NULL,
                            address varchar(50) NOT NULL,
                            city varchar(50) NOT NULL,
                            state varchar(60) NOT NULL,
-                           isOpen varchar(60) NOT NULL,
+                           isOpen boolean NOT NULL, --store.csv's yes/no load as true/false
                            reviewScore float,
+                           opensAt time, --hours; both NULL means open whenever isOpen
+                           closesAt time, --before opensAt means open past midnight
+                           timeZone varchar(64), --hours are local to this zone; NULL means the database's TimeZone
                            PRIMARY KEY(storeID)
 );
 
-CREATE TABLE FoodOrder ( orderID integer NOT NULL,
-                           login varchar(50) NOT NULL, --places relationship
+CREATE TABLE FoodOrder ( orderID serial NOT NULL, --new orders take the next ID
+                           userID integer NOT NULL, --places relationship
                            storeID integer NOT NULL, --placedAt relationship
                            totalPrice decimal(10,2) NOT NULL,
                            orderTimestamp timestamp NOT NULL,
-                           orderStatus char(50),
+                           orderStatus order_status,
                            PRIMARY KEY(orderID),
-                           FOREIGN KEY(login) REFERENCES Users(login)
+                           FOREIGN KEY(userID) REFERENCES Users(userID)
                            ON DELETE CASCADE,
                            FOREIGN KEY(storeID) REFERENCES Store(storeID)
                            ON DELETE CASCADE
@@ -1,20 +1,34 @@
 /* Replace the location to where you saved the data files*/
-COPY Users
+COPY Users(login, password, role, favoriteItems, phoneNum)
 FROM '/home/csmajs/sraju007/cs166_project_phase3/data/users.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY Items
+COPY Items(itemName, ingredients, typeOfItem, price, description)
 FROM '/home/csmajs/sraju007/cs166_project_phase3/data/items.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY Store
+COPY Store(storeID, address, city, state, isOpen, reviewScore)
 FROM '/home/csmajs/sraju007/cs166_project_phase3/data/store.csv'
 WITH DELIMITER ',' CSV HEADER;
 
-COPY FoodOrder
+-- foodorder.csv names customers by login; orders reference Users by userID
+-- and use the older complete/incomplete statuses
+CREATE TEMP TABLE FoodOrderLoad (orderID integer, login varchar(50), storeID integer,
+                                 totalPrice decimal(10,2), orderTimestamp timestamp, orderStatus varchar(50));
+
+COPY FoodOrderLoad
 FROM '/home/csmajs/sraju007/cs166_project_phase3/data/foodorder.csv'
 WITH DELIMITER ',' CSV HEADER;
 
+INSERT INTO FoodOrder (orderID, userID, storeID, totalPrice, orderTimestamp, orderStatus)
+SELECT l.orderID, u.userID, l.storeID, l.totalPrice, l.orderTimestamp,
+       CASE l.orderStatus WHEN 'complete' THEN 'Delivered' WHEN 'incomplete' THEN 'Processing'
+                          ELSE l.orderStatus END::order_status
+FROM FoodOrderLoad l JOIN Users u ON u.login = l.login;
+
+-- new orders continue after the loaded ones
+SELECT setval(pg_get_serial_sequence('FoodOrder', 'orderid'), (SELECT MAX(orderID) FROM FoodOrder));
+
 COPY ItemsInOrder
 FROM '/home/csmajs/sraju007/cs166_project_phase3/data/itemsinorder.csv'
 WITH DELIMITER ',' CSV HEADER;
@@ -0,0 +1,100 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+# Stand-in database for development and load tests: a throwaway Postgres
+# cluster owned by this user, started from the local initdb/pg_ctl binaries
+# and loaded with the same schema and CSVs as create_db.sh.  No campus tools
+# and no running server are needed.
+#
+#    local_db.sh start     create (first time) and start the cluster
+#    local_db.sh run       start, build and run the CLI against it
+#    local_db.sh stop      stop the cluster
+#    local_db.sh reset     stop and delete it; the next start reloads the CSVs
+#
+# LOCAL_PGPORT (default 54329) and LOCAL_PGDATA (default
+# /tmp/pizzastore-pg-$USER) choose the port and data directory; set
+# PG_BIN to the directory of the Postgres binaries if they are not on PATH.
+# "run" builds with Maven, so the CLI uses the same pgjdbc 42.x driver as
+# every other build, and stops with a message when that driver is missing.
+
+PORT=${LOCAL_PGPORT:-54329}
+PGDATA=${LOCAL_PGDATA:-/tmp/pizzastore-pg-$USER}
+DB=$USER"_project_phase_3_DB"
+BIN=${PG_BIN:+$PG_BIN/}
+SRC=$DIR/../src
+[ -d $SRC ] || SRC=$DIR
+DATA=$DIR/../data
+[ -d $DATA ] || DATA=$DIR
+
+PSQL="${BIN}psql -q -v ON_ERROR_STOP=1 -h $PGDATA -p $PORT"
+
+# Builds the CLI and checks that it runs on pgjdbc 42.x: initdb gives the
+# Postgres that is installed, and Postgres 14 and later refuse the protocol
+# of older drivers such as pg73jdbc3.jar.
+build() {
+   if command -v mvn > /dev/null; then
+      mvn -q -B -f $DIR/pom.xml package || {
+         echo "Build failed. The first build fetches pgjdbc 42.x and needs network access (or the jar in ~/.m2)." >&2
+         exit 1
+      }
+   elif [ ! -f $DIR/cli/target/pizzastore-cli.jar ]; then
+      echo "Maven (mvn) is needed to build the CLI and fetch its pgjdbc 42.x driver." >&2
+      exit 1
+   fi
+   if ! ls $DIR/cli/target/lib/postgresql-42.*.jar > /dev/null 2>&1; then
+      echo "No postgresql-42.x jar in cli/target/lib; the local Postgres needs pgjdbc 42.x (pgjdbc.version in pom.xml)." >&2
+      exit 1
+   fi
+}
+
+start() {
+   if [ ! -f $PGDATA/PG_VERSION ]; then
+      ${BIN}initdb -D $PGDATA -U $USER -A trust -E UTF8 > /dev/null || exit 1
+      FRESH=1
+   fi
+
+   if ! ${BIN}pg_ctl -D $PGDATA status > /dev/null 2>&1; then
+      # no fsync: the data can always be reloaded from the CSVs
+      ${BIN}pg_ctl -D $PGDATA -l $PGDATA/server.log -w \
+         -o "-p $PORT -k $PGDATA -c listen_addresses=localhost -c fsync=off -c synchronous_commit=off -c full_page_writes=off" \
+         start > /dev/null || { cat $PGDATA/server.log; exit 1; }
+   fi
+
+   if [ -n "$FRESH" ]; then
+      ${BIN}createdb -h $PGDATA -p $PORT $DB || exit 1
+      $PSQL $DB < $SRC/create_tables.sql || exit 1
+      $PSQL $DB < $SRC/create_indexes.sql || exit 1
+      if [ -f $DIR/tools/target/pizzastore-tools.jar ]; then
+         # the CSVs are read here and streamed to the server
+         java -cp $DIR/tools/target/pizzastore-tools.jar SeedLoader $DB $PORT $USER $DATA > /dev/null || exit 1
+      else
+         # load_data.sql names the campus data directory
+         sed "s|/home/csmajs/sraju007/cs166_project_phase3/data|$DATA|" $SRC/load_data.sql | $PSQL $DB || exit 1
+      fi
+      $PSQL $DB < "$SRC/triggers (1).sql" || exit 1
+      $PSQL $DB -c "VACUUM ANALYZE" || exit 1
+   fi
+   echo "Local database $DB on port $PORT (PGPORT=$PORT)"
+}
+
+case "$1" in
+   start)
+      start
+      ;;
+   run)
+      build
+      start
+      java -jar $DIR/cli/target/pizzastore-cli.jar $DB $PORT $USER
+      ;;
+   stop)
+      ${BIN}pg_ctl -D $PGDATA -m fast stop
+      ;;
+   reset)
+      ${BIN}pg_ctl -D $PGDATA -m immediate stop > /dev/null 2>&1
+      rm -rf $PGDATA
+      ;;
+   *)
+      echo "Usage: $0 start|run|stop|reset"
+      exit 1
+      ;;
+esac
@@ -0,0 +1,275 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This program keeps the audit tables (OrderLog, OrderStatusLog and
+ * RoleChangeLog) small.  Rows older than a number of days are written to
+ * gzip-compressed CSV files, one per table and day, under the archive
+ * directory (pizzastore.archiveDir, default ./archive), recorded in
+ * AuditArchive and AuditArchiveOrder by absolute path, deleted, and the
+ * tables vacuumed.
+ *
+ *    java AuditArchiver <dbname> <port> <user> archive [days]
+ *    java AuditArchiver <dbname> <port> <user> order <orderID>
+ *    java AuditArchiver <dbname> <port> <user> range <from> <to>
+ *
+ * "order" and "range" print the matching audit rows from the archive files
+ * (located through the index, so only the relevant files are read) followed
+ * by the rows still in the tables.  Dates are yyyy-mm-dd.
+ *
+ */
+public class AuditArchiver {
+
+   private static final int DEFAULT_DAYS = 30;
+
+   // rows fetched per round trip while archiving
+   private static final int FETCH_SIZE = 5000;
+
+   /*
+    * An audit table, its time column and its orderID column (null when the
+    * table is not about orders).
+    */
+   private static final String[][] TABLES = {
+      { "OrderLog", "orderTimestamp", "orderID" },
+      { "OrderStatusLog", "change_timestamp", "orderID" },
+      { "RoleChangeLog", "change_timestamp", null },
+   };
+
+   private final Connection conn;
+   private final File dir;
+
+   public AuditArchiver(Connection conn, File dir) {
+      this.conn = conn;
+      this.dir = dir;
+   }//end AuditArchiver
+
+   public static void main(String[] args) throws Exception {
+      if (args.length < 4) {
+         System.err.println("Usage: java AuditArchiver <dbname> <port> <user> archive [days] | order <orderID> | range <from> <to>");
+         return;
+      }
+      Class.forName("org.postgresql.Driver");
+      Connection conn = DriverManager.getConnection("jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+      try {
+         AuditArchiver archiver = new AuditArchiver(conn, new File(System.getProperty("pizzastore.archiveDir", "archive")));
+         String command = args[3];
+         if (command.equals("archive")) {
+            archiver.archive(args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_DAYS);
+         } else if (command.equals("order") && args.length == 5) {
+            archiver.print("AuditArchiveOrder o JOIN AuditArchive a USING (archive_id) WHERE o.orderID = " + Integer.parseInt(args[4]),
+                           "orderID = " + Integer.parseInt(args[4]), 2, args[4]);
+         } else if (command.equals("range") && args.length == 6) {
+            String from = java.sql.Date.valueOf(args[4]).toString();
+            String to = java.sql.Date.valueOf(args[5]).toString();
+            archiver.print("AuditArchive a WHERE a.bucket_day BETWEEN '" + from + "' AND '" + to + "'",
+                           "%s::date BETWEEN '" + from + "' AND '" + to + "'", -1, null);
+         } else {
+            System.err.println("Unknown command: " + command);
+         }
+      } finally {
+         conn.close();
+      }
+   }//end main
+
+   /**
+    * Archives, deletes and vacuums every audit row older than days.
+    */
+   public void archive(int days) throws SQLException, IOException {
+      long started = System.currentTimeMillis();
+      for (String[] table : TABLES) {
+         long rows = archiveTable(table[0], table[1], table[2], days);
+         System.out.println(table[0] + ": archived " + rows + " rows");
+      }
+      // VACUUM cannot run inside a transaction
+      conn.setAutoCommit(true);
+      Statement stmt = conn.createStatement();
+      for (String[] table : TABLES)
+         stmt.executeUpdate("VACUUM ANALYZE " + table[0]);
+      stmt.close();
+      System.out.println("Done in " + (System.currentTimeMillis() - started) + " ms");
+   }//end archive
+
+   /*
+    * Moves one table's old rows, one day per transaction: the day's file is
+    * written and synced, then indexed and the rows deleted in one commit.
+    * If the commit fails the file is removed and the rows stay.
+    */
+   private long archiveTable(String table, String timeColumn, String orderColumn, int days) throws SQLException, IOException {
+      conn.setAutoCommit(false);
+      Statement stmt = conn.createStatement();
+      List<String> buckets = new ArrayList<String>();
+      ResultSet rs = stmt.executeQuery(
+         "SELECT DISTINCT " + timeColumn + "::date FROM " + table +
+         " WHERE " + timeColumn + " < CURRENT_DATE - " + days + " ORDER BY 1");
+      while (rs.next())
+         buckets.add(rs.getString(1));
+      rs.close();
+      conn.commit();
+
+      long total = 0;
+      File tableDir = new File(dir, table);
+      if (!buckets.isEmpty() && !tableDir.isDirectory() && !tableDir.mkdirs())
+         throw new IOException("cannot create " + tableDir);
+      for (String day : buckets) {
+         String where = " WHERE " + timeColumn + " >= '" + day + "' AND " + timeColumn + " < DATE '" + day + "' + 1";
+         // a day archived before may get a second file
+         File file = new File(tableDir, day + ".csv.gz");
+         for (int part = 2; file.exists(); part++)
+            file = new File(tableDir, day + "." + part + ".csv.gz");
+
+         long rows = 0;
+         long minLogID = Long.MAX_VALUE, maxLogID = Long.MIN_VALUE;
+         List<Integer> orders = new ArrayList<Integer>();
+         stmt.setFetchSize(FETCH_SIZE);
+         rs = stmt.executeQuery("SELECT * FROM " + table + where + " ORDER BY log_id FOR UPDATE");
+         FileOutputStream fileOut = new FileOutputStream(file);
+         GZIPOutputStream gzip = new GZIPOutputStream(fileOut);
+         Writer out = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+         try {
+            ResultSetMetaData meta = rs.getMetaData();
+            int cols = meta.getColumnCount();
+            for (int i = 1; i <= cols; i++)
+               out.write((i > 1 ? "," : "") + meta.getColumnName(i));
+            out.write("\n");
+            while (rs.next()) {
+               for (int i = 1; i <= cols; i++)
+                  out.write((i > 1 ? "," : "") + csv(rs.getString(i)));
+               out.write("\n");
+               long logID = rs.getLong("log_id");
+               minLogID = Math.min(minLogID, logID);
+               maxLogID = Math.max(maxLogID, logID);
+               if (orderColumn != null) orders.add(rs.getInt(orderColumn));
+               rows++;
+            }
+            rs.close();
+            out.flush();
+            gzip.finish();
+            fileOut.getFD().sync();
+         } finally {
+            out.close();
+         }
+
+         try {
+            PreparedStatement index = conn.prepareStatement(
+               "INSERT INTO AuditArchive (table_name, bucket_day, file_path, row_count, min_log_id, max_log_id)" +
+               " VALUES (?, ?::date, ?, ?, ?, ?) RETURNING archive_id");
+            index.setString(1, table);
+            index.setString(2, day);
+            index.setString(3, file.getAbsolutePath());
+            index.setLong(4, rows);
+            index.setLong(5, minLogID);
+            index.setLong(6, maxLogID);
+            rs = index.executeQuery();
+            rs.next();
+            int archiveID = rs.getInt(1);
+            rs.close();
+            index.close();
+
+            if (!orders.isEmpty()) {
+               PreparedStatement byOrder = conn.prepareStatement(
+                  "INSERT INTO AuditArchiveOrder (archive_id, orderID) VALUES (?, ?) ON CONFLICT DO NOTHING");
+               for (int orderID : orders) {
+                  byOrder.setInt(1, archiveID);
+                  byOrder.setInt(2, orderID);
+                  byOrder.addBatch();
+               }
+               byOrder.executeBatch();
+               byOrder.close();
+            }
+            stmt.executeUpdate("DELETE FROM " + table + where + " AND log_id BETWEEN " + minLogID + " AND " + maxLogID);
+            conn.commit();
+            total += rows;
+         } catch (SQLException e) {
+            conn.rollback();
+            if (!file.delete()) System.err.println("could not remove " + file);
+            throw e;
+         }
+      }
+      stmt.close();
+      return total;
+   }//end archiveTable
+
+   /*
+    * Locates an archive file.  Paths are stored absolute; files indexed
+    * with a path relative to where the archiver ran are looked up in the
+    * archive directory instead.
+    */
+   private File archived(String table, String path) {
+      File file = new File(path);
+      return file.isAbsolute() ? file : new File(new File(dir, table), file.getName());
+   }//end archived
+
+   /*
+    * Prints the archived rows of the files selected by archiveWhere and the
+    * live rows matching liveWhere (%s stands for the table's time column).
+    * With orderColumn >= 0 only archived rows whose column of that index
+    * equals orderID are printed.
+    */
+   private void print(String archiveWhere, String liveWhere, int orderColumn, String orderID) throws SQLException, IOException {
+      conn.setAutoCommit(true);
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(
+         "SELECT a.table_name, a.file_path FROM " + archiveWhere + " ORDER BY a.table_name, a.bucket_day, a.archive_id");
+      List<String[]> files = new ArrayList<String[]>();
+      while (rs.next())
+         files.add(new String[] { rs.getString(1), rs.getString(2) });
+      rs.close();
+
+      for (String[] file : files) {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(new FileInputStream(archived(file[0], file[1]))), StandardCharsets.UTF_8));
+         try {
+            String header = reader.readLine();
+            System.out.println("-- " + file[0] + " (archived, " + file[1] + "): " + header);
+            String line;
+            while ((line = reader.readLine()) != null) {
+               if (orderColumn < 0 || orderID.equals(line.split(",", -1)[orderColumn - 1])) System.out.println(line);
+            }
+         } finally {
+            reader.close();
+         }
+      }
+
+      for (String[] table : TABLES) {
+         if (orderColumn >= 0 && table[2] == null) continue;
+         String where = liveWhere.contains("%s") ? String.format(liveWhere, table[1]) : liveWhere;
+         System.out.println("-- " + table[0] + " (live)");
+         rs = stmt.executeQuery("SELECT * FROM " + table[0] + " WHERE " + where + " ORDER BY log_id");
+         int cols = rs.getMetaData().getColumnCount();
+         while (rs.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= cols; i++)
+               row.append(i > 1 ? "," : "").append(csv(rs.getString(i)));
+            System.out.println(row);
+         }
+         rs.close();
+      }
+      stmt.close();
+   }//end print
+
+   private static String csv(String value) {
+      if (value == null) return "";
+      if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+      return '"' + value.replace("\"", "\"\"") + '"';
+   }//end csv
+
+}//end AuditArchiver
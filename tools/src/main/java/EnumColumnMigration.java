@@ -0,0 +1,247 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This program moves Users.role (char(20)) and FoodOrder.orderStatus
+ * (char(50)) of an existing database to the enum types user_role and
+ * order_status without taking the application down.  Like UserIdMigration,
+ * every step is idempotent and works in short transactions.
+ *
+ *    java EnumColumnMigration <dbname> <port> <user> prepare
+ *       creates the types, adds the nullable columns role_new and
+ *       orderStatus_new, and a trigger that fills them from the old columns
+ *       on every insert and update
+ *    java EnumColumnMigration <dbname> <port> <user> backfill
+ *       fills the new columns, pizzastore.migrationBatch rows per
+ *       transaction (default 5000), builds the role index CONCURRENTLY and
+ *       lists values that match no label
+ *    java EnumColumnMigration <dbname> <port> <user> finish
+ *       once the new application is deployed: swaps the columns in one short
+ *       transaction, recreating the audit triggers that name them
+ *
+ * Old statuses are mapped: complete becomes Delivered and incomplete
+ * becomes Processing.  Labels are matched ignoring case and padding.
+ *
+ */
+public class EnumColumnMigration {
+
+   private static final int BATCH = Integer.getInteger("pizzastore.migrationBatch", 5000);
+
+   private static final String UNMAPPED_ROLES =
+      "SELECT login, role FROM Users WHERE role_new IS NULL";
+   private static final String UNMAPPED_STATUSES =
+      "SELECT orderID, orderStatus FROM FoodOrder WHERE orderStatus IS NOT NULL AND orderStatus_new IS NULL";
+
+   private final Connection conn;
+
+   public EnumColumnMigration(Connection conn) {
+      this.conn = conn;
+   }//end EnumColumnMigration
+
+   public static void main(String[] args) throws Exception {
+      if (args.length != 4) {
+         System.err.println("Usage: java EnumColumnMigration <dbname> <port> <user> prepare|backfill|finish");
+         return;
+      }
+      Class.forName("org.postgresql.Driver");
+      Connection conn = DriverManager.getConnection("jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+      try {
+         EnumColumnMigration migration = new EnumColumnMigration(conn);
+         if (args[3].equals("prepare")) migration.prepare();
+         else if (args[3].equals("backfill")) migration.backfill();
+         else if (args[3].equals("finish")) migration.finish();
+         else System.err.println("Unknown step: " + args[3]);
+      } finally {
+         conn.close();
+      }
+   }//end main
+
+   /**
+    * Adds the types, the columns, the label mapping and the sync triggers.
+    * Only catalog changes: no existing row is rewritten.
+    */
+   public void prepare() throws SQLException {
+      if (!exists("SELECT 1 FROM pg_type WHERE typname = 'user_role'"))
+         run("CREATE TYPE user_role AS ENUM ('customer', 'driver', 'manager')");
+      if (!exists("SELECT 1 FROM pg_type WHERE typname = 'order_status'"))
+         run("CREATE TYPE order_status AS ENUM ('Processing', 'Out for Delivery', 'Delivered', 'Cancelled')");
+      run("ALTER TABLE Users ADD COLUMN IF NOT EXISTS role_new user_role",
+          "ALTER TABLE FoodOrder ADD COLUMN IF NOT EXISTS orderStatus_new order_status",
+          "CREATE OR REPLACE FUNCTION to_user_role(s text) RETURNS user_role AS $$ " +
+          "  SELECT CASE lower(trim(s)) WHEN 'customer' THEN 'customer' WHEN 'driver' THEN 'driver' " +
+          "                             WHEN 'manager' THEN 'manager' END::user_role " +
+          "$$ LANGUAGE sql IMMUTABLE",
+          "CREATE OR REPLACE FUNCTION to_order_status(s text) RETURNS order_status AS $$ " +
+          "  SELECT CASE lower(trim(s)) WHEN 'processing' THEN 'Processing' WHEN 'incomplete' THEN 'Processing' " +
+          "                             WHEN 'out for delivery' THEN 'Out for Delivery' " +
+          "                             WHEN 'delivered' THEN 'Delivered' WHEN 'complete' THEN 'Delivered' " +
+          "                             WHEN 'cancelled' THEN 'Cancelled' END::order_status " +
+          "$$ LANGUAGE sql IMMUTABLE",
+          "CREATE OR REPLACE FUNCTION sync_role_new() RETURNS TRIGGER AS $$ " +
+          "BEGIN NEW.role_new := to_user_role(NEW.role); RETURN NEW; END; $$ LANGUAGE plpgsql",
+          "CREATE OR REPLACE FUNCTION sync_order_status_new() RETURNS TRIGGER AS $$ " +
+          "BEGIN NEW.orderStatus_new := to_order_status(NEW.orderStatus); RETURN NEW; END; $$ LANGUAGE plpgsql",
+          "DROP TRIGGER IF EXISTS trg_sync_role_new ON Users",
+          "CREATE TRIGGER trg_sync_role_new BEFORE INSERT OR UPDATE OF role ON Users " +
+          "FOR EACH ROW EXECUTE PROCEDURE sync_role_new()",
+          "DROP TRIGGER IF EXISTS trg_sync_order_status_new ON FoodOrder",
+          "CREATE TRIGGER trg_sync_order_status_new BEFORE INSERT OR UPDATE OF orderStatus ON FoodOrder " +
+          "FOR EACH ROW EXECUTE PROCEDURE sync_order_status_new()");
+      System.out.println("prepared; run backfill next");
+   }//end prepare
+
+   /**
+    * Fills the new columns in key ranges, so rows with an unknown label do
+    * not stop the pass, then builds the role index without blocking writers.
+    */
+   public void backfill() throws SQLException {
+      long users = 0;
+      long[] range = range("SELECT MIN(userID), MAX(userID) FROM Users WHERE role_new IS NULL");
+      for (long from = range[0]; range[1] >= range[0] && from <= range[1]; from += BATCH) {
+         users += update("UPDATE Users SET role_new = to_user_role(role) WHERE role_new IS NULL" +
+                         " AND userID BETWEEN " + from + " AND " + (from + BATCH - 1));
+      }
+      System.out.println("converted " + users + " roles");
+
+      long orders = 0;
+      range = range("SELECT MIN(orderID), MAX(orderID) FROM FoodOrder WHERE orderStatus_new IS NULL");
+      for (long from = range[0]; range[1] >= range[0] && from <= range[1]; from += BATCH) {
+         orders += update("UPDATE FoodOrder SET orderStatus_new = to_order_status(orderStatus)" +
+                          " WHERE orderStatus_new IS NULL AND orderStatus IS NOT NULL" +
+                          " AND orderID BETWEEN " + from + " AND " + (from + BATCH - 1));
+         System.out.println("orders up to " + Math.min(from + BATCH - 1, range[1]) + ": " + orders + " converted");
+      }
+
+      dropInvalid("idx_users_role_new");
+      run("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_users_role_new ON Users(role_new)");
+
+      if (reportUnmapped()) {
+         System.out.println("fix the values above, then run backfill again");
+      } else {
+         System.out.println("backfilled; deploy the new application and reload triggers (1).sql, then run finish");
+      }
+   }//end backfill
+
+   /**
+    * Replaces the char columns with the enum ones.  Dropping a column takes
+    * an ACCESS EXCLUSIVE lock but rewrites nothing, so the swap is brief;
+    * NOT NULL is proven by a validated CHECK first.
+    */
+   public void finish() throws SQLException {
+      if (reportUnmapped()) {
+         System.err.println("values without a label remain; fix them and run backfill again");
+         return;
+      }
+      if (!exists("SELECT 1 FROM pg_constraint WHERE conname = 'users_role_new_not_null'")) {
+         run("ALTER TABLE Users ADD CONSTRAINT users_role_new_not_null CHECK (role_new IS NOT NULL) NOT VALID");
+      }
+      run("ALTER TABLE Users VALIDATE CONSTRAINT users_role_new_not_null");
+
+      conn.setAutoCommit(false);
+      try {
+         run("DROP TRIGGER IF EXISTS trg_sync_role_new ON Users",
+             "DROP TRIGGER IF EXISTS trg_sync_order_status_new ON FoodOrder",
+             // these name the old columns and would block dropping them
+             "DROP TRIGGER IF EXISTS trg_log_role_change ON Users",
+             "DROP TRIGGER IF EXISTS trg_log_order_status_change ON FoodOrder",
+             "ALTER TABLE Users DROP COLUMN role",
+             "ALTER TABLE Users RENAME COLUMN role_new TO role",
+             "ALTER TABLE Users ALTER COLUMN role SET NOT NULL",
+             "ALTER TABLE Users DROP CONSTRAINT users_role_new_not_null",
+             "ALTER INDEX idx_users_role_new RENAME TO idx_users_role",
+             "ALTER TABLE FoodOrder DROP COLUMN orderStatus",
+             "ALTER TABLE FoodOrder RENAME COLUMN orderStatus_new TO orderStatus",
+             "CREATE TRIGGER trg_log_role_change AFTER UPDATE OF role ON Users FOR EACH ROW " +
+             "WHEN (OLD.role IS DISTINCT FROM NEW.role) EXECUTE PROCEDURE log_role_change()",
+             "CREATE TRIGGER trg_log_order_status_change AFTER UPDATE OF orderStatus ON FoodOrder FOR EACH ROW " +
+             "WHEN (OLD.orderStatus IS DISTINCT FROM NEW.orderStatus) EXECUTE PROCEDURE log_order_status_change()");
+         conn.commit();
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         conn.setAutoCommit(true);
+      }
+      run("DROP FUNCTION IF EXISTS sync_role_new()",
+          "DROP FUNCTION IF EXISTS sync_order_status_new()",
+          "DROP FUNCTION IF EXISTS to_user_role(text)",
+          "DROP FUNCTION IF EXISTS to_order_status(text)");
+      System.out.println("finished; Users.role is user_role and FoodOrder.orderStatus is order_status");
+   }//end finish
+
+   /*
+    * Prints up to 20 rows whose old value matches no label.
+    */
+   private boolean reportUnmapped() throws SQLException {
+      boolean found = false;
+      Statement stmt = conn.createStatement();
+      try {
+         for (String sql : new String[] { UNMAPPED_ROLES, UNMAPPED_STATUSES }) {
+            ResultSet rs = stmt.executeQuery(sql + " LIMIT 20");
+            while (rs.next()) {
+               System.out.println("no label for '" + rs.getString(2) + "' (" + rs.getString(1) + ")");
+               found = true;
+            }
+            rs.close();
+         }
+      } finally {
+         stmt.close();
+      }
+      return found;
+   }//end reportUnmapped
+
+   private void run(String... statements) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         for (String sql : statements)
+            stmt.execute(sql);
+      } finally {
+         stmt.close();
+      }
+   }//end run
+
+   private int update(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         return stmt.executeUpdate(sql);
+      } finally {
+         stmt.close();
+      }
+   }//end update
+
+   private long[] range(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery(sql);
+         rs.next();
+         long[] range = { rs.getLong(1), rs.wasNull() ? -1 : rs.getLong(2) };
+         rs.close();
+         return range;
+      } finally {
+         stmt.close();
+      }
+   }//end range
+
+   private boolean exists(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery(sql + " LIMIT 1");
+         boolean found = rs.next();
+         rs.close();
+         return found;
+      } finally {
+         stmt.close();
+      }
+   }//end exists
+
+   private void dropInvalid(String index) throws SQLException {
+      if (exists("SELECT 1 FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = '" + index +
+                 "' AND NOT i.indisvalid")) {
+         run("DROP INDEX CONCURRENTLY " + index);
+      }
+   }//end dropInvalid
+
+}//end EnumColumnMigration
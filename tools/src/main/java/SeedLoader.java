@@ -0,0 +1,171 @@
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * This program loads the seed data files into an empty database, as
+ * load_data.sql does, but reads them on the client: every file is scanned
+ * with SeedCsvReader (memory mapped, in parallel chunks) and its rows are
+ * streamed to COPY ... FROM STDIN, so the database server needs neither the
+ * files nor the privilege to read them.
+ *
+ *    java SeedLoader <dbname> <port> <user> [data directory, default .]
+ *
+ * Rows are sent as the bytes of the mapped file, unchanged but for blanks
+ * after a row's last field (COPY FROM a file keeps the one that follows
+ * "a classic!" in items.csv), except those of foodorder.csv, which names customers by login and uses the older
+ * complete/incomplete statuses: its logins are looked up in the loaded
+ * Users and its statuses translated, and orders of unknown logins are left
+ * out, like the join in load_data.sql.  Everything is loaded in one
+ * transaction.  Run it after create_tables.sql and before the triggers.
+ *
+ */
+public class SeedLoader {
+
+   // bytes collected before they are sent to the server
+   private static final int BLOCK_BYTES = 1 << 16;
+
+   private static final byte[] COMMA = { ',' };
+   private static final byte[] NEWLINE = { '\n' };
+
+   /*
+    * One COPY FROM STDIN.  Rows are collected in a block that is sent when
+    * full; the chunks parsed in parallel add their rows whole, under the
+    * lock of the batch.
+    */
+   private static final class CopyBatch {
+      private final CopyIn copy;
+      private final byte[] block = new byte[BLOCK_BYTES];
+      private int used = 0;
+
+      CopyBatch(Connection conn, String sql) throws SQLException {
+         this.copy = conn.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+      }
+
+      // appends the bytes [from, to) of a mapped file
+      void add(ByteBuffer buf, int from, int to) throws SQLException {
+         for (int i = from; i < to; i++) {
+            if (used == block.length) flush();
+            block[used++] = buf.get(i);
+         }
+      }
+
+      void add(byte[] bytes) throws SQLException {
+         for (byte b : bytes) {
+            if (used == block.length) flush();
+            block[used++] = b;
+         }
+      }
+
+      void endRow() throws SQLException {
+         add(NEWLINE);
+      }
+
+      private void flush() throws SQLException {
+         copy.writeToCopy(block, 0, used);
+         used = 0;
+      }
+
+      long finish() throws SQLException {
+         flush();
+         return copy.endCopy();
+      }
+   }//end CopyBatch
+
+   public static void main(String[] args) throws Exception {
+      if (args.length != 3 && args.length != 4) {
+         System.err.println("Usage: java SeedLoader <dbname> <port> <user> [data directory]");
+         return;
+      }
+      File dir = new File(args.length == 4 ? args[3] : ".");
+      int threads = Runtime.getRuntime().availableProcessors();
+      Class.forName("org.postgresql.Driver");
+      Connection conn = DriverManager.getConnection("jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+      boolean loaded = false;
+      try {
+         long started = System.currentTimeMillis();
+         conn.setAutoCommit(false);
+         copy(conn, new File(dir, "users.csv"), "Users (login, password, role, favoriteItems, phoneNum)", threads);
+         copy(conn, new File(dir, "items.csv"), "Items (itemName, ingredients, typeOfItem, price, description)", threads);
+         copy(conn, new File(dir, "store.csv"), "Store (storeID, address, city, state, isOpen, reviewScore)", threads);
+         copyOrders(conn, new File(dir, "foodorder.csv"), threads);
+         copy(conn, new File(dir, "itemsinorder.csv"), "ItemsInOrder", threads);
+         conn.commit();
+         loaded = true;
+         System.out.println("Done in " + (System.currentTimeMillis() - started) + " ms");
+      } catch (Exception e) {
+         conn.rollback();
+         System.err.println("Nothing was loaded: " + e.getMessage());
+      } finally {
+         conn.close();
+      }
+      if (!loaded) System.exit(1); // local_db.sh stops on it
+   }//end main
+
+   /*
+    * Streams the rows of a file to a table as they are.
+    */
+   private static void copy(Connection conn, File file, String table, int threads) throws Exception {
+      final CopyBatch batch = new CopyBatch(conn, "COPY " + table + " FROM STDIN WITH (FORMAT csv)");
+      SeedCsvReader.read(file, true, threads, (buf, starts, ends, n) -> {
+         synchronized (batch) {
+            batch.add(buf, starts[0], ends[n - 1]);
+            batch.endRow();
+         }
+      });
+      System.out.println(table.split(" ")[0] + ": " + batch.finish() + " rows");
+   }//end copy
+
+   /*
+    * Streams foodorder.csv (orderID, login, storeID, totalPrice,
+    * orderTimestamp, orderStatus) to FoodOrder with the userID of each login
+    * and the current status names.
+    */
+   private static void copyOrders(Connection conn, File file, int threads) throws Exception {
+      final Map<String, byte[]> userIDs = new HashMap<String, byte[]>();
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery("SELECT login, userID FROM Users");
+      while (rs.next())
+         userIDs.put(rs.getString(1).trim(), rs.getString(2).getBytes(StandardCharsets.US_ASCII));
+      rs.close();
+      stmt.close();
+
+      final byte[] delivered = "Delivered".getBytes(StandardCharsets.US_ASCII);
+      final byte[] processing = "Processing".getBytes(StandardCharsets.US_ASCII);
+      final CopyBatch batch = new CopyBatch(conn,
+         "COPY FoodOrder (orderID, userID, storeID, totalPrice, orderTimestamp, orderStatus) FROM STDIN WITH (FORMAT csv)");
+      SeedCsvReader.read(file, true, threads, (buf, starts, ends, n) -> {
+         byte[] userID = userIDs.get(SeedCsvReader.text(buf, starts[1], ends[1]).trim());
+         if (userID == null) return;
+         synchronized (batch) {
+            batch.add(buf, starts[0], ends[0]);
+            batch.add(COMMA);
+            batch.add(userID);
+            batch.add(COMMA);
+            batch.add(buf, starts[2], ends[4]);
+            batch.add(COMMA);
+            if (SeedCsvReader.equalsAscii(buf, starts[5], ends[5], "complete")) batch.add(delivered);
+            else if (SeedCsvReader.equalsAscii(buf, starts[5], ends[5], "incomplete")) batch.add(processing);
+            else batch.add(buf, starts[5], ends[5]);
+            batch.endRow();
+         }
+      });
+      System.out.println("FoodOrder: " + batch.finish() + " rows");
+
+      // new orders continue after the loaded ones
+      stmt = conn.createStatement();
+      stmt.executeQuery("SELECT setval(pg_get_serial_sequence('FoodOrder', 'orderid'), (SELECT MAX(orderID) FROM FoodOrder))").close();
+      stmt.close();
+   }//end copyOrders
+
+}//end SeedLoader
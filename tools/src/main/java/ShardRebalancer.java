@@ -0,0 +1,412 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This program moves the orders of a range of stores from the database that
+ * currently owns them (according to pizzastore.shards) to another one, and
+ * keeps the reference tables of the shards in step with the home database.
+ *
+ *    java -Dpizzastore.shards=... ShardRebalancer <dbname> <port> <user> <lowStoreID> <highStoreID> <host:port/db|home>
+ *    java -Dpizzastore.shards=... ShardRebalancer <dbname> <port> <user> <lowStoreID> <highStoreID> <old host:port/db|home> cleanup
+ *    java -Dpizzastore.shards=... ShardRebalancer <dbname> <port> <user> sync
+ *    java -Dpizzastore.shards=... ShardRebalancer <dbname> <port> <user> init
+ *
+ * A move runs in three steps:
+ *
+ *  1. copy: the range's orders, their items and their OrderLog and
+ *     OrderStatusLog rows are copied in batches of BATCH_SIZE while the
+ *     stores keep taking orders.  The target runs with
+ *     session_replication_role = replica, so its triggers write no audit
+ *     rows, send no notifications and refuse no copies of closed stores.
+ *     Setting it needs a superuser, or on PostgreSQL 15 and later
+ *     GRANT SET ON PARAMETER session_replication_role; the move stops with
+ *     a message before copying anything when the user lacks it.
+ *  2. freeze: the range is entered in the source's FrozenStores, after which
+ *     trg_reject_frozen_store refuses new orders and status changes for it
+ *     there, and everything is copied once more.  Copies overwrite by key,
+ *     so an interrupted run can simply be started again.
+ *  3. cutover: update pizzastore.shards on every terminal, then run the
+ *     cleanup form against the old database to delete the moved rows.
+ *     Until then the range takes no orders on terminals still using the old
+ *     setting, and listings over every database show its orders twice.
+ *
+ * sync copies Users, Items and Store from the home database to every shard,
+ * for changes made outside the application or copies that failed.  Rows are
+ * inserted or overwritten, never deleted.
+ *
+ * init gives the FoodOrder orderID sequence of the home database and of
+ * every shard its own residue: INCREMENT BY the number of databases, and a
+ * restart above every orderID on any of them, so no two databases hand out
+ * the same orderID.  Run it when shards are added, before orders are moved.
+ *
+ */
+public class ShardRebalancer {
+
+   private static final int BATCH_SIZE = Integer.getInteger("pizzastore.rebalanceBatch", 500);
+
+   // audit tables whose rows move with their orders
+   private static final String[] ORDER_LOGS = { "OrderLog", "OrderStatusLog" };
+
+   public static void main(String[] args) throws Exception {
+      boolean sync = args.length == 4 && args[3].equals("sync");
+      boolean init = args.length == 4 && args[3].equals("init");
+      boolean cleanup = args.length == 7 && args[6].equals("cleanup");
+      if (!sync && !init && !cleanup && args.length != 6) {
+         System.err.println(
+            "Usage: java [-Dpizzastore.shards=...] ShardRebalancer <dbname> <port> <user> <lowStoreID> <highStoreID> <host:port/db|home> [cleanup]\n" +
+            "       java -Dpizzastore.shards=... ShardRebalancer <dbname> <port> <user> sync|init");
+         return;
+      }
+      String user = args[2];
+      String homeUrl = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+      ShardRouter router = ShardRouter.fromProperties(user, "");
+      Class.forName("org.postgresql.Driver");
+      QueryMetrics.setOperation("rebalance"); // shard statements get the long statement timeout
+
+      if (sync) {
+         sync(router, homeUrl, user);
+         return;
+      }
+      if (init) {
+         init(router, homeUrl, user);
+         return;
+      }
+
+      int low = Integer.parseInt(args[3]);
+      int high = Integer.parseInt(args[4]);
+      String namedUrl = args[5].equals("home") ? homeUrl : "jdbc:postgresql://" + args[5];
+      if (cleanup) {
+         cleanup(namedUrl, user, low, high);
+         return;
+      }
+
+      ShardRouter.Shard owner = router == null ? null : router.forStore(low);
+      if (router != null && owner != router.forStore(high)) {
+         System.err.println("Stores " + low + "-" + high + " are not all on the same database; move them range by range.");
+         return;
+      }
+      String sourceUrl = owner == null ? homeUrl : owner.url;
+      String targetUrl = namedUrl;
+      if (sourceUrl.equals(targetUrl)) {
+         System.out.println("Stores " + low + "-" + high + " are already on " + targetUrl);
+         return;
+      }
+
+      Connection source = DriverManager.getConnection(sourceUrl, user, "");
+      Connection target = DriverManager.getConnection(targetUrl, user, "");
+      try {
+         long started = System.currentTimeMillis();
+         // a range moved back to a database it once left is no longer frozen there
+         Statement stmt = target.createStatement();
+         stmt.executeUpdate("DELETE FROM FrozenStores WHERE lowStoreID >= " + low + " AND highStoreID <= " + high);
+         stmt.close();
+
+         if (!replicaRole(target)) {
+            System.err.println("Cannot SET session_replication_role on " + targetUrl + " as " + user + ", so the copies" +
+                               " would fire its triggers.\nRun the move as a superuser, or on PostgreSQL 15 and later" +
+                               " GRANT SET ON PARAMETER session_replication_role TO " + user + ".");
+            return;
+         }
+
+         source.setAutoCommit(false);
+         target.setAutoCommit(false);
+         long copied = copyRange(source, target, low, high);
+         System.out.println("Copied " + copied + " orders while live; freezing stores " + low + "-" + high + " on " + sourceUrl);
+
+         freeze(source, low, high);
+         copied = copyRange(source, target, low, high);
+         System.out.println("Copied " + copied + " orders of stores " + low + "-" + high + " from " + sourceUrl +
+                            " to " + targetUrl + " in " + (System.currentTimeMillis() - started) + " ms.\n" +
+                            "The stores take no orders on " + sourceUrl + " any more. Now point pizzastore.shards at " +
+                            targetUrl + " for them on every terminal, then run:\n" +
+                            "   java ShardRebalancer " + args[0] + " " + args[1] + " " + user + " " + low + " " + high + " " +
+                            (owner == null ? "home" : owner.url.substring("jdbc:postgresql://".length())) + " cleanup");
+      } finally {
+         source.close();
+         target.close();
+      }
+   }//end main
+
+   /*
+    * Copies every order of the range, oldest first, in batches.  Returns
+    * the number of orders copied.
+    */
+   private static long copyRange(Connection source, Connection target, int low, int high) throws SQLException {
+      long copied = 0;
+      int after = Integer.MIN_VALUE;
+      while (true) {
+         List<Object[]> orders = new ArrayList<Object[]>();
+         Statement stmt = source.createStatement();
+         ResultSet rs = stmt.executeQuery(
+            "SELECT orderID, userID, storeID, totalPrice, orderTimestamp, orderStatus FROM FoodOrder" +
+            " WHERE storeID BETWEEN " + low + " AND " + high + " AND orderID > " + after +
+            " ORDER BY orderID LIMIT " + BATCH_SIZE);
+         while (rs.next()) {
+            orders.add(new Object[] { rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getBigDecimal(4),
+                                      rs.getTimestamp(5), rs.getString(6) });
+         }
+         rs.close();
+         stmt.close();
+         if (orders.isEmpty()) {
+            source.rollback();
+            return copied;
+         }
+         int first = (Integer) orders.get(0)[0];
+         after = (Integer) orders.get(orders.size() - 1)[0];
+         String batch = " WHERE orderID IN (SELECT orderID FROM FoodOrder WHERE storeID BETWEEN " + low + " AND " + high +
+                        " AND orderID BETWEEN " + first + " AND " + after + ")";
+         copyBatch(source, target, orders, batch);
+         copied += orders.size();
+         System.out.println("copied " + copied + " orders");
+      }
+   }//end copyRange
+
+   /*
+    * Writes one batch of orders with their items and audit rows to the
+    * target and commits it there.
+    */
+   private static void copyBatch(Connection source, Connection target, List<Object[]> orders, String batch) throws SQLException {
+      Statement targetStmt = target.createStatement();
+      targetStmt.execute("SET LOCAL session_replication_role = replica");
+
+      PreparedStatement insertOrder = target.prepareStatement(
+         "INSERT INTO FoodOrder (orderID, userID, storeID, totalPrice, orderTimestamp, orderStatus)" +
+         " VALUES (?, ?, ?, ?, ?, CAST(? AS order_status)) ON CONFLICT (orderID) DO UPDATE SET" +
+         " userID = EXCLUDED.userID, storeID = EXCLUDED.storeID, totalPrice = EXCLUDED.totalPrice," +
+         " orderTimestamp = EXCLUDED.orderTimestamp, orderStatus = EXCLUDED.orderStatus");
+      for (Object[] order : orders) {
+         for (int i = 0; i < order.length; i++)
+            insertOrder.setObject(i + 1, order[i]);
+         insertOrder.addBatch();
+      }
+      insertOrder.executeBatch();
+      insertOrder.close();
+
+      List<Object[]> items = read(source, "SELECT orderID, itemName, quantity FROM ItemsInOrder" + batch);
+      PreparedStatement insertItem = target.prepareStatement(
+         "INSERT INTO ItemsInOrder (orderID, itemName, quantity) VALUES (?, ?, ?)" +
+         " ON CONFLICT (orderID, itemName) DO UPDATE SET quantity = EXCLUDED.quantity");
+      for (Object[] item : items) {
+         for (int i = 0; i < item.length; i++)
+            insertItem.setObject(i + 1, item[i]);
+         insertItem.addBatch();
+      }
+      insertItem.executeBatch();
+      insertItem.close();
+
+      // the audit rows of these orders are replaced as a whole; log_id is
+      // left to the target's sequence
+      for (String log : ORDER_LOGS) {
+         targetStmt.executeUpdate("DELETE FROM " + log + " WHERE orderID IN (" + ids(orders) + ")");
+         copyRows(source, target, log, batch);
+      }
+      targetStmt.close();
+      target.commit();
+      source.rollback();
+   }//end copyBatch
+
+   // "1, 2, ..." for the orderIDs of a batch
+   private static String ids(List<Object[]> orders) {
+      StringBuilder ids = new StringBuilder();
+      for (Object[] order : orders)
+         ids.append(ids.length() > 0 ? ", " : "").append(order[0]);
+      return ids.toString();
+   }//end ids
+
+   /*
+    * Copies the rows of table matching where, all columns but log_id.
+    */
+   private static void copyRows(Connection source, Connection target, String table, String where) throws SQLException {
+      Statement stmt = source.createStatement();
+      ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + where);
+      ResultSetMetaData meta = rs.getMetaData();
+      List<Integer> columns = new ArrayList<Integer>();
+      StringBuilder names = new StringBuilder();
+      StringBuilder marks = new StringBuilder();
+      for (int i = 1; i <= meta.getColumnCount(); i++) {
+         if (meta.getColumnName(i).equalsIgnoreCase("log_id")) continue;
+         columns.add(i);
+         names.append(names.length() > 0 ? ", " : "").append(meta.getColumnName(i));
+         marks.append(marks.length() > 0 ? ", ?" : "?");
+      }
+      PreparedStatement insert = target.prepareStatement("INSERT INTO " + table + " (" + names + ") VALUES (" + marks + ")");
+      while (rs.next()) {
+         for (int i = 0; i < columns.size(); i++)
+            insert.setObject(i + 1, rs.getObject(columns.get(i)));
+         insert.addBatch();
+      }
+      insert.executeBatch();
+      insert.close();
+      rs.close();
+      stmt.close();
+   }//end copyRows
+
+   private static List<Object[]> read(Connection conn, String query) throws SQLException {
+      List<Object[]> rows = new ArrayList<Object[]>();
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(query);
+      int columns = rs.getMetaData().getColumnCount();
+      while (rs.next()) {
+         Object[] row = new Object[columns];
+         for (int i = 0; i < columns; i++)
+            row[i] = rs.getObject(i + 1);
+         rows.add(row);
+      }
+      rs.close();
+      stmt.close();
+      return rows;
+   }//end read
+
+   /*
+    * Tells whether the user may switch the target's triggers off for the
+    * copies.  The setting is tried in a transaction that is rolled back.
+    */
+   private static boolean replicaRole(Connection target) throws SQLException {
+      target.setAutoCommit(false);
+      Statement stmt = target.createStatement();
+      try {
+         stmt.execute("SET LOCAL session_replication_role = replica");
+         return true;
+      } catch (SQLException e) {
+         if (!"42501".equals(e.getSQLState())) throw e; // insufficient_privilege
+         return false;
+      } finally {
+         stmt.close();
+         target.rollback();
+         target.setAutoCommit(true);
+      }
+   }//end replicaRole
+
+   /*
+    * Enters the range in FrozenStores.  The table lock waits for
+    * transactions that are writing FoodOrder, so no order of the range can
+    * commit on the source after this returns.
+    */
+   private static void freeze(Connection source, int low, int high) throws SQLException {
+      Statement stmt = source.createStatement();
+      stmt.execute("LOCK TABLE FoodOrder IN SHARE ROW EXCLUSIVE MODE");
+      stmt.executeUpdate("INSERT INTO FrozenStores (lowStoreID, highStoreID) VALUES (" + low + ", " + high + ")" +
+                         " ON CONFLICT DO NOTHING");
+      stmt.close();
+      source.commit();
+   }//end freeze
+
+   /*
+    * Deletes a moved range from its old database, in batches, with its
+    * audit rows.  The range must have been frozen there by a move.
+    */
+   private static void cleanup(String sourceUrl, String user, int low, int high) throws SQLException {
+      Connection source = DriverManager.getConnection(sourceUrl, user, "");
+      try {
+         Statement stmt = source.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT 1 FROM FrozenStores WHERE lowStoreID <= " + low + " AND highStoreID >= " + high);
+         boolean frozen = rs.next();
+         rs.close();
+         if (!frozen) {
+            System.err.println("Stores " + low + "-" + high + " are not frozen on " + sourceUrl + "; move them there first.");
+            stmt.close();
+            return;
+         }
+         source.setAutoCommit(false);
+         long deleted = 0;
+         while (true) {
+            String batch = " WHERE orderID IN (SELECT orderID FROM FoodOrder WHERE storeID BETWEEN " + low + " AND " + high +
+                           " ORDER BY orderID LIMIT " + BATCH_SIZE + ")";
+            for (String log : ORDER_LOGS)
+               stmt.executeUpdate("DELETE FROM " + log + batch);
+            // ItemsInOrder rows go with their orders (ON DELETE CASCADE)
+            int n = stmt.executeUpdate("DELETE FROM FoodOrder" + batch);
+            source.commit();
+            if (n == 0) break;
+            deleted += n;
+            System.out.println("deleted " + deleted + " orders");
+         }
+         stmt.close();
+         System.out.println("Deleted " + deleted + " orders of stores " + low + "-" + high + " from " + sourceUrl +
+                            "; they stay frozen there.");
+      } finally {
+         source.close();
+      }
+   }//end cleanup
+
+   /*
+    * Copies the reference tables from the home database to every shard.
+    */
+   private static void sync(ShardRouter router, String homeUrl, String user) throws SQLException {
+      if (router == null) {
+         System.err.println("pizzastore.shards is not set; there is nothing to sync.");
+         return;
+      }
+      Connection home = DriverManager.getConnection(homeUrl, user, "");
+      try {
+         String[][] tables = { { "Users", "userID" }, { "Items", "itemName" }, { "Store", "storeID" } };
+         for (String[] table : tables) {
+            int rows = router.replicate(home, table[0], table[1], "TRUE");
+            System.out.println("copied " + rows + " " + table[0] + " rows to " + router.shards().size() + " shards");
+         }
+      } finally {
+         home.close();
+         router.shutdown();
+      }
+   }//end sync
+
+   /*
+    * Gives every database's orderID sequence its own residue modulo the
+    * number of databases, the home database first.  FoodOrder is locked on
+    * all of them until every sequence is changed, so no order takes an ID
+    * from an old sequence meanwhile.
+    */
+   private static void init(ShardRouter router, String homeUrl, String user) throws SQLException {
+      List<String> urls = new ArrayList<String>();
+      urls.add(homeUrl);
+      for (int i = 0; router != null && i < router.shards().size(); i++) {
+         // several ranges may live in the same database
+         if (!urls.contains(router.shards().get(i).url)) urls.add(router.shards().get(i).url);
+      }
+      if (router != null) router.shutdown();
+
+      List<Connection> conns = new ArrayList<Connection>();
+      try {
+         List<String> sequences = new ArrayList<String>();
+         long highest = 0;
+         for (String url : urls) {
+            Connection conn = DriverManager.getConnection(url, user, "");
+            conns.add(conn);
+            conn.setAutoCommit(false);
+            Statement stmt = conn.createStatement();
+            stmt.execute("LOCK TABLE FoodOrder IN SHARE ROW EXCLUSIVE MODE");
+            ResultSet rs = stmt.executeQuery(
+               "SELECT pg_get_serial_sequence('foodorder', 'orderid'), COALESCE(MAX(orderID), 0) FROM FoodOrder");
+            rs.next();
+            if (rs.getString(1) == null) throw new SQLException("FoodOrder.orderID has no sequence on " + url);
+            sequences.add(rs.getString(1));
+            highest = Math.max(highest, rs.getLong(2));
+            rs.close();
+            stmt.close();
+         }
+
+         int databases = urls.size();
+         long base = (highest / databases + 1) * databases;
+         for (int i = 0; i < databases; i++) {
+            Statement stmt = conns.get(i).createStatement();
+            stmt.execute("ALTER SEQUENCE " + sequences.get(i) + " INCREMENT BY " + databases + " RESTART WITH " + (base + i));
+            stmt.close();
+         }
+         for (int i = 0; i < databases; i++) {
+            conns.get(i).commit();
+            System.out.println(urls.get(i) + ": orderIDs " + (base + i) + ", " + (base + i + databases) + ", ...");
+         }
+      } finally {
+         for (Connection conn : conns)
+            conn.close();
+      }
+   }//end init
+
+}//end ShardRebalancer
@@ -0,0 +1,120 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This program brings Store of an existing database to the layout
+ * StoreAvailability expects: isOpen (char, 'yes'/'no') becomes a boolean and
+ * the hours columns opensAt, closesAt and timeZone are added.  Like
+ * EnumColumnMigration every statement is idempotent, so it can simply be
+ * run again; Store holds one row per store, so rewriting it takes one short
+ * transaction and no batching.
+ *
+ *    java StoreHoursMigration <dbname> <port> <user>
+ *
+ * Values of isOpen other than yes and no (ignoring case and padding) are
+ * listed and nothing is changed.  Reload triggers (1).sql afterwards, which
+ * installs store_open_now() and trg_reject_closed_store.
+ *
+ */
+public class StoreHoursMigration {
+
+   private static final String UNMAPPED =
+      "SELECT storeID, isOpen FROM Store WHERE lower(trim(isOpen)) NOT IN ('yes', 'no') OR isOpen IS NULL";
+
+   private final Connection conn;
+
+   public StoreHoursMigration(Connection conn) {
+      this.conn = conn;
+   }//end StoreHoursMigration
+
+   public static void main(String[] args) throws Exception {
+      if (args.length != 3) {
+         System.err.println("Usage: java StoreHoursMigration <dbname> <port> <user>");
+         return;
+      }
+      Class.forName("org.postgresql.Driver");
+      Connection conn = DriverManager.getConnection("jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+      try {
+         new StoreHoursMigration(conn).migrate();
+      } finally {
+         conn.close();
+      }
+   }//end main
+
+   /**
+    * Converts isOpen unless it already is a boolean, then adds the missing
+    * hours columns, in one transaction.
+    */
+   public void migrate() throws SQLException {
+      boolean convert = !exists("SELECT 1 FROM information_schema.columns WHERE table_name = 'store'" +
+                                " AND column_name = 'isopen' AND data_type = 'boolean'");
+      if (convert && reportUnmapped()) {
+         System.err.println("isOpen values other than yes/no remain; fix them and run again");
+         return;
+      }
+
+      conn.setAutoCommit(false);
+      try {
+         if (convert) {
+            run("ALTER TABLE Store ALTER COLUMN isOpen TYPE boolean USING lower(trim(isOpen)) = 'yes'");
+         }
+         run("ALTER TABLE Store ALTER COLUMN isOpen SET NOT NULL",
+             "ALTER TABLE Store ADD COLUMN IF NOT EXISTS opensAt time",
+             "ALTER TABLE Store ADD COLUMN IF NOT EXISTS closesAt time",
+             "ALTER TABLE Store ADD COLUMN IF NOT EXISTS timeZone varchar(64)");
+         conn.commit();
+      } catch (SQLException e) {
+         conn.rollback();
+         throw e;
+      } finally {
+         conn.setAutoCommit(true);
+      }
+      System.out.println((convert ? "converted isOpen to boolean; " : "isOpen already boolean; ") +
+                         "hours columns present; reload triggers (1).sql next");
+   }//end migrate
+
+   /*
+    * Prints up to 20 stores whose isOpen is neither yes nor no.
+    */
+   private boolean reportUnmapped() throws SQLException {
+      boolean found = false;
+      Statement stmt = conn.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery(UNMAPPED + " LIMIT 20");
+         while (rs.next()) {
+            System.out.println("no yes/no in '" + rs.getString(2) + "' (store " + rs.getString(1) + ")");
+            found = true;
+         }
+         rs.close();
+      } finally {
+         stmt.close();
+      }
+      return found;
+   }//end reportUnmapped
+
+   private void run(String... statements) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         for (String sql : statements)
+            stmt.execute(sql);
+      } finally {
+         stmt.close();
+      }
+   }//end run
+
+   private boolean exists(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery(sql + " LIMIT 1");
+         boolean found = rs.next();
+         rs.close();
+         return found;
+      } finally {
+         stmt.close();
+      }
+   }//end exists
+
+}//end StoreHoursMigration
@@ -0,0 +1,204 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * This program moves an existing database from login-keyed orders
+ * (FoodOrder.login referencing Users.login) to the surrogate Users.userID
+ * without taking the application down.  Every step is idempotent and works
+ * in short transactions, so it can be stopped and run again at any time.
+ *
+ *    java UserIdMigration <dbname> <port> <user> prepare
+ *       adds Users.userID and FoodOrder.userID (both nullable, so no table
+ *       rewrite), a default for new users, and a trigger that keeps
+ *       FoodOrder.login and FoodOrder.userID in step while old and new
+ *       clients run side by side (login becomes nullable for the new ones)
+ *    java UserIdMigration <dbname> <port> <user> backfill
+ *       numbers existing users and copies their userID into their orders,
+ *       pizzastore.migrationBatch rows per transaction (default 5000), then
+ *       builds the indexes CONCURRENTLY and validates the new foreign key
+ *    java UserIdMigration <dbname> <port> <user> finish
+ *       once no old client writes FoodOrder.login: makes userID NOT NULL,
+ *       drops FoodOrder.login with its foreign key and index, and removes
+ *       the trigger.  Users keeps login as its primary key; userID is
+ *       unique, which is all the new foreign key needs.
+ *
+ */
+public class UserIdMigration {
+
+   private static final int BATCH = Integer.getInteger("pizzastore.migrationBatch", 5000);
+
+   private final Connection conn;
+
+   public UserIdMigration(Connection conn) {
+      this.conn = conn;
+   }//end UserIdMigration
+
+   public static void main(String[] args) throws Exception {
+      if (args.length != 4) {
+         System.err.println("Usage: java UserIdMigration <dbname> <port> <user> prepare|backfill|finish");
+         return;
+      }
+      Class.forName("org.postgresql.Driver");
+      Connection conn = DriverManager.getConnection("jdbc:postgresql://localhost:" + args[1] + "/" + args[0], args[2], "");
+      try {
+         UserIdMigration migration = new UserIdMigration(conn);
+         if (args[3].equals("prepare")) migration.prepare();
+         else if (args[3].equals("backfill")) migration.backfill();
+         else if (args[3].equals("finish")) migration.finish();
+         else System.err.println("Unknown step: " + args[3]);
+      } finally {
+         conn.close();
+      }
+   }//end main
+
+   /**
+    * Adds the columns, the default and the transition trigger.  Only catalog
+    * changes: no existing row is rewritten.
+    */
+   public void prepare() throws SQLException {
+      run("CREATE SEQUENCE IF NOT EXISTS users_userid_seq",
+          "ALTER TABLE Users ADD COLUMN IF NOT EXISTS userID integer",
+          "ALTER TABLE Users ALTER COLUMN userID SET DEFAULT nextval('users_userid_seq')",
+          "ALTER SEQUENCE users_userid_seq OWNED BY Users.userID",
+          "ALTER TABLE FoodOrder ADD COLUMN IF NOT EXISTS userID integer",
+          "ALTER TABLE FoodOrder ALTER COLUMN login DROP NOT NULL",
+          "CREATE OR REPLACE FUNCTION fill_order_userid() RETURNS TRIGGER AS $$ " +
+          "BEGIN " +
+          "  IF NEW.userID IS NULL THEN " +
+          "    SELECT userID INTO NEW.userID FROM Users WHERE login = NEW.login; " +
+          "  ELSIF NEW.login IS NULL THEN " +
+          "    SELECT login INTO NEW.login FROM Users WHERE userID = NEW.userID; " +
+          "  END IF; " +
+          "  RETURN NEW; " +
+          "END; $$ LANGUAGE plpgsql",
+          "DROP TRIGGER IF EXISTS trg_fill_order_userid ON FoodOrder",
+          "CREATE TRIGGER trg_fill_order_userid BEFORE INSERT OR UPDATE OF login ON FoodOrder " +
+          "FOR EACH ROW EXECUTE PROCEDURE fill_order_userid()");
+      System.out.println("prepared; run backfill next");
+   }//end prepare
+
+   /**
+    * Numbers the users and copies userID into their orders in batches, then
+    * builds the indexes and the foreign key without blocking writers.
+    */
+   public void backfill() throws SQLException {
+      long users = batches("UPDATE Users SET userID = nextval('users_userid_seq') WHERE login IN " +
+                           "(SELECT login FROM Users WHERE userID IS NULL LIMIT " + BATCH + ")");
+      System.out.println("numbered " + users + " users");
+
+      long orders = 0;
+      long[] range = range("SELECT MIN(orderID), MAX(orderID) FROM FoodOrder WHERE userID IS NULL");
+      for (long from = range[0]; range[1] >= range[0] && from <= range[1]; from += BATCH) {
+         orders += update("UPDATE FoodOrder f SET userID = u.userID FROM Users u WHERE u.login = f.login" +
+                          " AND f.userID IS NULL AND f.orderID BETWEEN " + from + " AND " + (from + BATCH - 1));
+         System.out.println("orders up to " + Math.min(from + BATCH - 1, range[1]) + ": " + orders + " updated");
+      }
+
+      // CONCURRENTLY cannot run inside a transaction block; an interrupted
+      // build leaves an invalid index, which is dropped and rebuilt
+      dropInvalid("users_userid_key");
+      dropInvalid("idx_foodorder_userid");
+      run("CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS users_userid_key ON Users(userID)",
+          "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_foodorder_userid ON FoodOrder(userID)");
+      if (!exists("SELECT 1 FROM pg_constraint WHERE conname = 'foodorder_userid_fkey'")) {
+         run("ALTER TABLE FoodOrder ADD CONSTRAINT foodorder_userid_fkey FOREIGN KEY (userID) " +
+             "REFERENCES Users(userID) ON DELETE CASCADE NOT VALID");
+      }
+      // validation only takes a SHARE UPDATE EXCLUSIVE lock
+      run("ALTER TABLE FoodOrder VALIDATE CONSTRAINT foodorder_userid_fkey");
+      System.out.println("backfilled; deploy the new application, then run finish");
+   }//end backfill
+
+   /**
+    * Makes userID mandatory and drops the old column.  Each statement only
+    * takes a brief lock: NOT NULL is proven by a validated CHECK first.
+    */
+   public void finish() throws SQLException {
+      if (exists("SELECT 1 FROM Users WHERE userID IS NULL") || exists("SELECT 1 FROM FoodOrder WHERE userID IS NULL")) {
+         System.err.println("rows without userID remain; run backfill again");
+         return;
+      }
+      if (!exists("SELECT 1 FROM pg_constraint WHERE conname = 'foodorder_userid_not_null'")) {
+         run("ALTER TABLE FoodOrder ADD CONSTRAINT foodorder_userid_not_null CHECK (userID IS NOT NULL) NOT VALID");
+      }
+      if (!exists("SELECT 1 FROM pg_constraint WHERE conname = 'users_userid_not_null'")) {
+         run("ALTER TABLE Users ADD CONSTRAINT users_userid_not_null CHECK (userID IS NOT NULL) NOT VALID");
+      }
+      run("ALTER TABLE FoodOrder VALIDATE CONSTRAINT foodorder_userid_not_null",
+          "ALTER TABLE FoodOrder ALTER COLUMN userID SET NOT NULL",
+          "ALTER TABLE FoodOrder DROP CONSTRAINT foodorder_userid_not_null",
+          "ALTER TABLE Users VALIDATE CONSTRAINT users_userid_not_null",
+          "ALTER TABLE Users ALTER COLUMN userID SET NOT NULL",
+          "ALTER TABLE Users DROP CONSTRAINT users_userid_not_null",
+          "DROP TRIGGER IF EXISTS trg_fill_order_userid ON FoodOrder",
+          "DROP FUNCTION IF EXISTS fill_order_userid()",
+          "DROP INDEX IF EXISTS idx_foodorder_login",
+          // drops FoodOrder's foreign key to Users(login) with the column
+          "ALTER TABLE FoodOrder DROP COLUMN IF EXISTS login");
+      System.out.println("finished; FoodOrder now references Users(userID)");
+   }//end finish
+
+   private void run(String... statements) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         for (String sql : statements)
+            stmt.execute(sql);
+      } finally {
+         stmt.close();
+      }
+   }//end run
+
+   private int update(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         return stmt.executeUpdate(sql);
+      } finally {
+         stmt.close();
+      }
+   }//end update
+
+   // repeats an UPDATE (auto-committed) until it changes no row
+   private long batches(String sql) throws SQLException {
+      long total = 0;
+      int n;
+      while ((n = update(sql)) > 0)
+         total += n;
+      return total;
+   }//end batches
+
+   private long[] range(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery(sql);
+         rs.next();
+         long[] range = { rs.getLong(1), rs.wasNull() ? -1 : rs.getLong(2) };
+         rs.close();
+         return range;
+      } finally {
+         stmt.close();
+      }
+   }//end range
+
+   private boolean exists(String sql) throws SQLException {
+      Statement stmt = conn.createStatement();
+      try {
+         ResultSet rs = stmt.executeQuery(sql + " LIMIT 1");
+         boolean found = rs.next();
+         rs.close();
+         return found;
+      } finally {
+         stmt.close();
+      }
+   }//end exists
+
+   private void dropInvalid(String index) throws SQLException {
+      if (exists("SELECT 1 FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = '" + index +
+                 "' AND NOT i.indisvalid")) {
+         run("DROP INDEX CONCURRENTLY " + index);
+      }
+   }//end dropInvalid
+
+}//end UserIdMigration
@@ -15,11 +15,17 @@ CREATE TABLE IF NOT EXISTS OrderStatusLog (
     old_status VARCHAR(50), 
     new_status VARCHAR(50), 
     changed_by VARCHAR(50), 
-    change_timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    change_timestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    storeID INT,
+    login VARCHAR(50)
 );
+-- storeID and login of the order, so OrderEvents can poll this table without FoodOrder
+-- (added to tables created before; rows logged earlier keep NULL)
+ALTER TABLE OrderStatusLog ADD COLUMN IF NOT EXISTS storeID INT;
+ALTER TABLE OrderStatusLog ADD COLUMN IF NOT EXISTS login VARCHAR(50);
 
 -- LOG TABLE: OrderLog (Tracks all new orders)
-CREATE TABLE IF NOT EXISTS OrderLog (HS
+CREATE TABLE IF NOT EXISTS OrderLog (
     log_id SERIAL PRIMARY KEY, 
     orderID INT NOT NULL, 
     login VARCHAR(50) NOT NULL, 
@@ -30,7 +36,47 @@ CREATE TABLE IF NOT EXISTS OrderLog (HS
     orderTimestamp TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- AUDIT INDEXES: back the manager audit queries (viewAuditLog), which page with
+-- keyset conditions on log_id / orderTimestamp and never scan the logs.
+-- Status timeline of one order.
+CREATE INDEX IF NOT EXISTS idx_orderstatuslog_order ON OrderStatusLog (orderID, log_id);
+-- Placement row of one order.
+CREATE INDEX IF NOT EXISTS idx_orderlog_order ON OrderLog (orderID);
+-- Orders placed in a time window.
+CREATE INDEX IF NOT EXISTS idx_orderlog_time ON OrderLog (orderTimestamp, log_id);
+-- Role changes of one login.
+CREATE INDEX IF NOT EXISTS idx_rolechangelog_user ON RoleChangeLog (user_updated, log_id);
+
+-- SHARD MOVES: FrozenStores (store ranges moved away from this database, see
+-- ShardRebalancer; their orders can no longer be placed or changed here)
+CREATE TABLE IF NOT EXISTS FrozenStores (
+    lowStoreID INT NOT NULL,
+    highStoreID INT NOT NULL,
+    PRIMARY KEY (lowStoreID, highStoreID)
+);
+
+-- ARCHIVE INDEX: AuditArchive (one row per archived file, see AuditArchiver)
+CREATE TABLE IF NOT EXISTS AuditArchive (
+    archive_id SERIAL PRIMARY KEY,
+    table_name VARCHAR(50) NOT NULL,
+    bucket_day DATE NOT NULL,
+    file_path VARCHAR(500) NOT NULL,
+    row_count BIGINT NOT NULL,
+    min_log_id BIGINT NOT NULL,
+    max_log_id BIGINT NOT NULL,
+    archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS AuditArchive_day ON AuditArchive (bucket_day, table_name);
+
+-- ARCHIVE INDEX: AuditArchiveOrder (which archived files mention an order)
+CREATE TABLE IF NOT EXISTS AuditArchiveOrder (
+    orderID INT NOT NULL,
+    archive_id INT NOT NULL REFERENCES AuditArchive(archive_id) ON DELETE CASCADE,
+    PRIMARY KEY (orderID, archive_id)
+);
+
 -- STORED PROCEDURE: Log Role Change
+-- Every role change is logged; no session setting can turn this off.
 CREATE OR REPLACE FUNCTION log_role_change() RETURNS TRIGGER AS $$
 BEGIN
     INSERT INTO RoleChangeLog (user_updated, old_role, new_role, changed_by, change_timestamp) 
@@ -40,23 +86,158 @@ END;
 $$ LANGUAGE plpgsql;
 
 -- STORED PROCEDURE: Log Order Placement
+-- Also publishes the order (orderID|storeID|totalPrice|orderTimestamp|login) on order_placed,
+-- which feeds the kitchen queues of every running app.
 CREATE OR REPLACE FUNCTION log_order_placement() RETURNS TRIGGER AS $$
 BEGIN
     INSERT INTO OrderLog(orderID, login, storeID, totalPrice, orderStatus, placed_by, orderTimestamp)
-    VALUES (NEW.orderID, NEW.login, NEW.storeID, NEW.totalPrice, NEW.orderStatus, CURRENT_USER, NOW());
+    SELECT NEW.orderID, login, NEW.storeID, NEW.totalPrice, NEW.orderStatus, CURRENT_USER, NOW()
+    FROM Users WHERE userID = NEW.userID;
+    PERFORM pg_notify('order_placed', NEW.orderID || '|' || NEW.storeID || '|' || NEW.totalPrice || '|' ||
+                      NEW.orderTimestamp || '|' || (SELECT login FROM Users WHERE userID = NEW.userID));
     RETURN NEW;
 END;
 $$ LANGUAGE plpgsql;
 
 -- STORED PROCEDURE: Log Order Status Change
+-- Also publishes the change (orderID|status|storeID|login) to sessions listening on order_status.
 CREATE OR REPLACE FUNCTION log_order_status_change() RETURNS TRIGGER AS $$
+DECLARE
+    v_login VARCHAR(50);
+BEGIN
+    SELECT login INTO v_login FROM Users WHERE userID = NEW.userID;
+    INSERT INTO OrderStatusLog(orderID, old_status, new_status, changed_by, change_timestamp, storeID, login)
+    VALUES (NEW.orderID, OLD.orderStatus, NEW.orderStatus, CURRENT_USER, NOW(), NEW.storeID, v_login);
+    PERFORM pg_notify('order_status', NEW.orderID || '|' || COALESCE(NEW.orderStatus::text, '') || '|' ||
+                      NEW.storeID || '|' || v_login);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- STORED PROCEDURE: Bump Item Version
+-- Lets placeOrder detect, at commit time, that a price changed after it was read.
+CREATE OR REPLACE FUNCTION bump_item_version() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- STORED PROCEDURE: Notify Store Change
+-- Tells the running apps to reload their StoreAvailability cache.
+CREATE OR REPLACE FUNCTION notify_store_change() RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('store_status', '');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- STORED PROCEDURE: Store Open Now
+-- True if the store takes orders now: isOpen, and within opensAt/closesAt on the
+-- store's own clock (timeZone; NULL means this database's TimeZone). closesAt before
+-- opensAt means open past midnight. StoreAvailability applies the same rule.
+CREATE OR REPLACE FUNCTION store_open_now(p_store INT) RETURNS BOOLEAN AS $$
+    SELECT COALESCE(bool_or(isOpen AND (opensAt IS NULL OR closesAt IS NULL OR
+               CASE WHEN opensAt < closesAt THEN local_time >= opensAt AND local_time < closesAt
+                    ELSE local_time >= opensAt OR local_time < closesAt END)), false)
+    FROM (SELECT isOpen, opensAt, closesAt,
+                 (NOW() AT TIME ZONE COALESCE(timeZone, current_setting('TimeZone')))::time AS local_time
+          FROM Store WHERE storeID = p_store) s;
+$$ LANGUAGE sql STABLE;
+
+-- STORED PROCEDURE: Reject Closed Store
+-- Refuses new orders of closed stores, whichever client inserts them.
+CREATE OR REPLACE FUNCTION reject_closed_store() RETURNS TRIGGER AS $$
+BEGIN
+    IF NOT store_open_now(NEW.storeID) THEN
+        RAISE EXCEPTION 'store closed: %', NEW.storeID USING ERRCODE = 'object_not_in_prerequisite_state';
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- STORED PROCEDURE: Reject Frozen Store
+-- Refuses orders of stores that are being moved, or were moved, to another database.
+CREATE OR REPLACE FUNCTION reject_frozen_store() RETURNS TRIGGER AS $$
 BEGIN
-    INSERT INTO OrderStatusLog(orderID, old_status, new_status, changed_by, change_timestamp)
-    VALUES (NEW.orderID, OLD.orderStatus, NEW.orderStatus, CURRENT_USER, NOW());
+    IF EXISTS (SELECT 1 FROM FrozenStores WHERE NEW.storeID BETWEEN lowStoreID AND highStoreID) THEN
+        RAISE EXCEPTION 'store % is being moved to another database, try again shortly', NEW.storeID
+              USING ERRCODE = 'object_not_in_prerequisite_state';
+    END IF;
     RETURN NEW;
 END;
 $$ LANGUAGE plpgsql;
 
+-- STORED PROCEDURE: Admission Slots
+-- The slots AdmissionController shares between terminals: slot s of lane l is the session
+-- advisory lock (hashtext('pizzastore.admission'), l * 1024 + s). admission_acquire takes the
+-- first free slot below p_slots that this session does not already hold (p_held) and returns
+-- it, or -1 when all are taken; admission_release, or the end of the session, frees it.
+CREATE OR REPLACE FUNCTION admission_acquire(p_lane INT, p_slots INT, p_held INT[]) RETURNS INT AS $$
+BEGIN
+    FOR s IN 0 .. p_slots - 1 LOOP
+        IF NOT (s = ANY (p_held))
+           AND pg_try_advisory_lock(hashtext('pizzastore.admission'), p_lane * 1024 + s) THEN
+            RETURN s;
+        END IF;
+    END LOOP;
+    RETURN -1;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION admission_release(p_lane INT, p_slot INT) RETURNS BOOLEAN AS $$
+    SELECT pg_advisory_unlock(hashtext('pizzastore.admission'), p_lane * 1024 + p_slot);
+$$ LANGUAGE sql;
+
+-- STORED PROCEDURE: Place Order
+-- Places an order in one call: checks the customer, the store and every item,
+-- prices the lines from Items (repeated items are merged), inserts FoodOrder
+-- and ItemsInOrder, and returns the new orderID with the total it charged.
+-- Unknown items raise no_data_found (P0002) and nothing is inserted.
+--   SELECT * FROM place_order('login', 1, ARRAY['Pepperoni','Lemonade'], ARRAY[2,1]);
+CREATE OR REPLACE FUNCTION place_order(p_login VARCHAR, p_store INT, p_items VARCHAR[], p_quantities INT[],
+                                       OUT order_id INT, OUT total_price DECIMAL(10,2)) AS $$
+DECLARE
+    v_user INT;
+    v_missing VARCHAR;
+BEGIN
+    IF COALESCE(array_length(p_items, 1), 0) = 0
+       OR array_length(p_items, 1) IS DISTINCT FROM array_length(p_quantities, 1) THEN
+        RAISE EXCEPTION 'place_order needs one quantity per item' USING ERRCODE = 'invalid_parameter_value';
+    END IF;
+    IF EXISTS (SELECT 1 FROM unnest(p_quantities) q WHERE q IS NULL OR q <= 0) THEN
+        RAISE EXCEPTION 'quantities must be positive' USING ERRCODE = 'invalid_parameter_value';
+    END IF;
+    SELECT userID INTO v_user FROM Users WHERE login = p_login;
+    IF v_user IS NULL THEN
+        RAISE EXCEPTION 'unknown user: %', p_login USING ERRCODE = 'invalid_parameter_value';
+    END IF;
+    IF NOT EXISTS (SELECT 1 FROM Store WHERE storeID = p_store) THEN
+        RAISE EXCEPTION 'unknown store: %', p_store USING ERRCODE = 'invalid_parameter_value';
+    END IF;
+    IF NOT store_open_now(p_store) THEN
+        RAISE EXCEPTION 'store closed: %', p_store USING ERRCODE = 'object_not_in_prerequisite_state';
+    END IF;
+
+    SELECT l.itemName INTO v_missing
+    FROM unnest(p_items) AS l(itemName) LEFT JOIN Items i ON i.itemName = l.itemName
+    WHERE i.itemName IS NULL LIMIT 1;
+    IF v_missing IS NOT NULL THEN
+        RAISE EXCEPTION 'unknown item: %', v_missing USING ERRCODE = 'no_data_found';
+    END IF;
+
+    -- the total is computed from one snapshot of Items
+    INSERT INTO FoodOrder (userID, storeID, totalPrice, orderStatus, orderTimestamp)
+    SELECT v_user, p_store, SUM(i.price * l.quantity), 'Processing', NOW()
+    FROM unnest(p_items, p_quantities) AS l(itemName, quantity) JOIN Items i ON i.itemName = l.itemName
+    RETURNING orderID, totalPrice INTO order_id, total_price;
+    INSERT INTO ItemsInOrder (orderID, itemName, quantity)
+    SELECT order_id, l.itemName, SUM(l.quantity)
+    FROM unnest(p_items, p_quantities) AS l(itemName, quantity)
+    GROUP BY l.itemName;
+END;
+$$ LANGUAGE plpgsql;
+
 -- TRIGGER: Log Role Changes
 DROP TRIGGER IF EXISTS trg_log_role_change ON Users;
 
@@ -81,4 +262,37 @@ CREATE TRIGGER trg_log_order_status_change
 AFTER UPDATE OF orderStatus ON FoodOrder
 FOR EACH ROW
 WHEN (OLD.orderStatus IS DISTINCT FROM NEW.orderStatus)
-EXECUTE PROCEDURE log_order_status_change();
\ No newline at end of file
+EXECUTE PROCEDURE log_order_status_change();
+
+-- TRIGGER: Version Item Price Changes
+DROP TRIGGER IF EXISTS trg_bump_item_version ON Items;
+
+CREATE TRIGGER trg_bump_item_version
+BEFORE UPDATE OF price ON Items
+FOR EACH ROW
+WHEN (OLD.price IS DISTINCT FROM NEW.price)
+EXECUTE PROCEDURE bump_item_version();
+
+-- TRIGGER: Publish Store Changes
+DROP TRIGGER IF EXISTS trg_notify_store_change ON Store;
+
+CREATE TRIGGER trg_notify_store_change
+AFTER INSERT OR UPDATE OR DELETE ON Store
+FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_store_change();
+
+-- TRIGGER: Reject Orders of Closed Stores
+DROP TRIGGER IF EXISTS trg_reject_closed_store ON FoodOrder;
+
+CREATE TRIGGER trg_reject_closed_store
+BEFORE INSERT ON FoodOrder
+FOR EACH ROW
+EXECUTE PROCEDURE reject_closed_store();
+
+-- TRIGGER: Reject Orders of Moved Stores
+DROP TRIGGER IF EXISTS trg_reject_frozen_store ON FoodOrder;
+
+CREATE TRIGGER trg_reject_frozen_store
+BEFORE INSERT OR UPDATE ON FoodOrder
+FOR EACH ROW
+EXECUTE PROCEDURE reject_frozen_store();